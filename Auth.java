@@ -0,0 +1,528 @@
+//以下是登录令牌模块的代码示例，包含了签名令牌、受保护接口拦截和密码哈希专用线程池：
+//这段代码演示了令牌服务、密码哈希线程池、密码编码器配置、令牌拦截器和统计控制器。登录成功后签发带过期时间的 HMAC 签名令牌，受保护接口只校验令牌，不再重复执行 bcrypt；bcrypt 在有界线程池中执行，登录高峰不会占满请求线程。
+
+auth.token.secret=
+auth.token.ttl-seconds=86400
+auth.hash.threads=0
+auth.hash.queue-capacity=256
+auth.hash.timeout-millis=5000
+auth.bcrypt.min-strength=10
+auth.bcrypt.max-strength=12
+auth.bcrypt.target-millis=100
+//application.properties 配置文件
+//auth.token.secret: 令牌签名密钥，多节点部署时各节点必须相同；留空时启动时随机生成，重启后旧令牌失效。
+//auth.token.ttl-seconds: 令牌有效期（秒）。
+//auth.hash.threads: 密码哈希线程数，0 表示等于 CPU 核数；auth.hash.queue-capacity: 等待队列长度，满了返回 429。
+//auth.bcrypt.*: 启动时在 min-strength 和 max-strength 之间选取单次哈希不超过 target-millis 的最大 bcrypt 强度；较弱的旧哈希在用户下次登录时自动升级。
+
+//角色约定：
+//用户角色保存在 users 集合的 role 字段（STUDENT / CANTEEN_MANAGER / ADMIN），注册接口一律创建 STUDENT，管理员和食堂管理员由运维直接修改数据库指定。
+//角色在登录时写入令牌，修改角色后需要重新登录才生效；/api/admin/** 下的统计、迁移、导入导出和重建接口要求 ADMIN。
+//CANTEEN_MANAGER 只能修改 users.managedCanteenIds 中食堂的数据（例如上传食堂和菜品图片），每次操作时从数据库读取，修改后立即生效。
+
+
+package com.example.canteenapp.exception;                    //未认证异常：令牌缺失、无效或过期，以及密码错误时抛出，返回 401
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.UNAUTHORIZED)
+public class UnauthorizedException extends RuntimeException {
+
+    public UnauthorizedException(String message) {
+        super(message);
+    }
+}
+
+
+package com.example.canteenapp.exception;                    //无权限异常：令牌有效但角色不足时抛出，返回 403
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.FORBIDDEN)
+public class ForbiddenException extends RuntimeException {
+
+    public ForbiddenException(String message) {
+        super(message);
+    }
+}
+
+
+package com.example.canteenapp.model;                        //用户角色：按权限从低到高排列，高级角色包含低级角色的全部权限
+
+public enum Role {
+    STUDENT,
+    CANTEEN_MANAGER,                                         //食堂管理员，只能管理自己负责的食堂
+    ADMIN;
+
+    public boolean includes(Role required) {
+        return compareTo(required) >= 0;
+    }
+}
+
+
+package com.example.canteenapp.model;                        //令牌内容类：校验通过后得到的用户 ID 和角色
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class TokenClaims {
+
+    private String userId;
+    private Role role;
+}
+
+
+package com.example.canteenapp.model;                        //登录结果类
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data                                                        //Lombok 注解，自动生成 getter、setter、toString 等方法。
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoginResponse {
+
+    private String token;                                    //后续请求放在 Authorization: Bearer {token} 请求头中。
+    private Instant expiresAt;
+    private User user;                                       //密码字段只写不读，不会出现在响应中。
+}
+
+
+package com.example.canteenapp.service;                      //令牌服务接口:定义了签发令牌 (issue) 和校验令牌 (verify) 的接口方法。
+
+import com.example.canteenapp.model.LoginResponse;
+import com.example.canteenapp.model.TokenClaims;
+import com.example.canteenapp.model.User;
+
+public interface TokenService {
+
+    LoginResponse issue(User user);
+
+    TokenClaims verify(String token);
+}
+
+
+package com.example.canteenapp.service.impl;                 //令牌服务实现类：令牌格式为 用户ID.角色.过期时间戳.HMAC-SHA256 签名，无需服务端存储
+
+import com.example.canteenapp.exception.UnauthorizedException;
+import com.example.canteenapp.model.LoginResponse;
+import com.example.canteenapp.model.Role;
+import com.example.canteenapp.model.TokenClaims;
+import com.example.canteenapp.model.User;
+import com.example.canteenapp.service.TokenService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+
+@Service                                                     //标识该类为服务类，会被 Spring 容器管理。
+public class TokenServiceImpl implements TokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenServiceImpl.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    @Value("${auth.token.secret:}")
+    private String secret;
+
+    @Value("${auth.token.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    private SecretKeySpec key;
+
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes;
+        if (secret == null || secret.isEmpty()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            log.warn("auth.token.secret is not set, using a random key; tokens will not survive a restart");
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        key = new SecretKeySpec(keyBytes, ALGORITHM);
+    }
+
+    @Override
+    public LoginResponse issue(User user) {
+        Instant expiresAt = Instant.now().plusSeconds(ttlSeconds);
+        String payload = user.getId() + "." + (user.getRole() != null ? user.getRole() : Role.STUDENT) + "." + expiresAt.getEpochSecond();
+        return new LoginResponse(payload + "." + sign(payload), expiresAt, user);
+    }
+
+    @Override
+    public TokenClaims verify(String token) {                //verify 方法: 校验签名和过期时间，返回令牌中的用户 ID 和角色；只做一次 HMAC 计算，不访问数据库。
+        if (token == null) {
+            throw new UnauthorizedException("Missing token");
+        }
+        int second = token.lastIndexOf('.');
+        int first = second > 0 ? token.lastIndexOf('.', second - 1) : -1;
+        int roleStart = first > 0 ? token.lastIndexOf('.', first - 1) : -1;
+        if (roleStart <= 0) {                                //不带角色的旧格式令牌也按格式错误处理，客户端重新登录即可。
+            throw new UnauthorizedException("Malformed token");
+        }
+        String payload = token.substring(0, second);
+        byte[] expected = sign(payload).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = token.substring(second + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            throw new UnauthorizedException("Invalid token");
+        }
+        long expiresAt;
+        try {
+            expiresAt = Long.parseLong(token.substring(first + 1, second));
+        } catch (NumberFormatException e) {
+            throw new UnauthorizedException("Malformed token");
+        }
+        if (Instant.now().getEpochSecond() > expiresAt) {
+            throw new UnauthorizedException("Token expired");
+        }
+        Role role;
+        try {
+            role = Role.valueOf(token.substring(roleStart + 1, first));
+        } catch (IllegalArgumentException e) {
+            throw new UnauthorizedException("Malformed token");
+        }
+        return new TokenClaims(token.substring(0, roleStart), role);
+    }
+
+    private String sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            byte[] signature = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
+
+
+package com.example.canteenapp.security;                     //密码哈希线程池：bcrypt 是 CPU 密集操作，放在固定大小的线程池中执行，队列满时快速失败
+
+import com.example.canteenapp.exception.TooManyRequestsException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component                                                   //标识该类为 Spring 组件，会被 Spring 容器管理。
+public class PasswordHashExecutor {
+
+    @Value("${auth.hash.threads:0}")
+    private int threads;
+
+    @Value("${auth.hash.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${auth.hash.timeout-millis:5000}")
+    private long timeoutMillis;
+
+    private ThreadPoolExecutor executor;
+    private final LongAdder hashCount = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    //run 方法: 提交到哈希线程池并等待结果；队列已满或等待超时时返回 429，而不是让请求线程无限排队。
+    public <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    hashCount.increment();
+                    hashNanos.add(elapsed);
+                    maxHashNanos.accumulateAndGet(elapsed, Math::max);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new TooManyRequestsException("Too many concurrent logins, please retry later");
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new TooManyRequestsException("Too many concurrent logins, please retry later");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public Map<String, Object> stats() {
+        long count = hashCount.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("threads", executor.getMaximumPoolSize());
+        result.put("active", executor.getActiveCount());
+        result.put("queueDepth", getQueueDepth());
+        result.put("hashes", count);
+        result.put("averageHashMillis", count == 0 ? 0 : hashNanos.sum() / 1_000_000.0 / count);
+        result.put("maxHashMillis", maxHashNanos.get() / 1_000_000.0);
+        result.put("rejected", rejected.sum());
+        return result;
+    }
+}
+
+
+package com.example.canteenapp.config;                       //密码编码器配置类
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+@Configuration                                               //@Configuration: 标识该类为配置类。
+public class PasswordEncoderConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordEncoderConfig.class);
+
+    //passwordEncoder 方法: 在 [min, max] 范围内逐级测量单次哈希耗时，选取不超过 target-millis 的最大强度；强度上下限保证安全性和 CPU 成本都有界。
+    @Bean
+    public PasswordEncoder passwordEncoder(@Value("${auth.bcrypt.min-strength:10}") int minStrength,
+                                           @Value("${auth.bcrypt.max-strength:12}") int maxStrength,
+                                           @Value("${auth.bcrypt.target-millis:100}") long targetMillis) {
+        int strength = minStrength;
+        for (int candidate = minStrength; candidate <= maxStrength; candidate++) {
+            BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(candidate);
+            long start = System.nanoTime();
+            encoder.encode("calibration");
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            if (millis > targetMillis && candidate > minStrength) {
+                break;
+            }
+            strength = candidate;
+        }
+        log.info("Using bcrypt strength {}", strength);
+        return new BCryptPasswordEncoder(strength);
+    }
+}
+
+
+package com.example.canteenapp.security;                     //受保护接口注解：标注在控制器方法或控制器类上，请求必须携带有效令牌，且令牌中的角色不低于 value
+
+import com.example.canteenapp.model.Role;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Authenticated {
+
+    Role value() default Role.STUDENT;                       //方法上的注解优先于类上的注解。
+}
+
+
+package com.example.canteenapp.security;                     //令牌拦截器：校验通过后把用户 ID 和角色放入请求属性 userId、userRole
+
+import com.example.canteenapp.exception.ForbiddenException;
+import com.example.canteenapp.exception.UnauthorizedException;
+import com.example.canteenapp.model.TokenClaims;
+import com.example.canteenapp.service.TokenService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+@Component
+public class TokenAuthInterceptor implements HandlerInterceptor {
+
+    public static final String USER_ID = "userId";
+    public static final String USER_ROLE = "userRole";
+    private static final String BEARER = "Bearer ";
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        HandlerMethod method = (HandlerMethod) handler;
+        Authenticated required = method.getMethodAnnotation(Authenticated.class);
+        if (required == null) {
+            required = method.getBeanType().getAnnotation(Authenticated.class);
+        }
+        if (required == null) {
+            return true;
+        }
+        String header = request.getHeader("Authorization");
+        if (header == null || !header.startsWith(BEARER)) {
+            throw new UnauthorizedException("Missing token");
+        }
+        TokenClaims claims = tokenService.verify(header.substring(BEARER.length()));
+        if (!claims.getRole().includes(required.value())) {
+            throw new ForbiddenException("Requires role " + required.value());
+        }
+        request.setAttribute(USER_ID, claims.getUserId());
+        request.setAttribute(USER_ROLE, claims.getRole());
+        return true;
+    }
+}
+
+
+package com.example.canteenapp.security;                     //食堂权限检查：管理员可以修改任意食堂，食堂管理员只能修改自己负责的食堂及其菜品
+
+import com.example.canteenapp.exception.ForbiddenException;
+import com.example.canteenapp.exception.ResourceNotFoundException;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.Role;
+import com.example.canteenapp.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CanteenAccessPolicy {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    public void checkCanteen(String userId, Role role, String canteenId) {
+        if (role == Role.ADMIN) {
+            return;
+        }
+        Query query = new Query(Criteria.where("id").is(userId).and("managedCanteenIds").is(canteenId));
+        if (role != Role.CANTEEN_MANAGER || canteenId == null || !mongoTemplate.exists(query, User.class)) {
+            throw new ForbiddenException("Not allowed to manage canteen " + canteenId);
+        }
+    }
+
+    public void checkDish(String userId, Role role, String dishId) {
+        if (role == Role.ADMIN) {
+            return;
+        }
+        Query query = new Query(Criteria.where("id").is(dishId));
+        query.fields().include("canteenId");
+        Dish dish = mongoTemplate.findOne(query, Dish.class);
+        if (dish == null) {
+            throw new ResourceNotFoundException("Dish not found with id: " + dishId);
+        }
+        checkCanteen(userId, role, dish.getCanteenId());
+    }
+}
+
+
+package com.example.canteenapp.config;                       //Web 配置类：注册令牌拦截器
+
+import com.example.canteenapp.security.TokenAuthInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private TokenAuthInterceptor tokenAuthInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(tokenAuthInterceptor).addPathPatterns("/api/**");
+    }
+}
+
+
+package com.example.canteenapp.controller;                   //认证统计控制器
+
+import com.example.canteenapp.model.Role;
+import com.example.canteenapp.security.Authenticated;
+import com.example.canteenapp.security.PasswordHashExecutor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController                                              //标识该类为 RESTful 风格的控制器。
+@RequestMapping("/api/admin/auth")                           //设置该控制器的根路径为 /api/admin/auth。
+@Authenticated(Role.ADMIN)                                   //该控制器的全部接口只对管理员开放。
+public class AuthStatsController {
+
+    @Autowired
+    private PasswordHashExecutor passwordHashExecutor;
+
+    @GetMapping("")                                          //获取密码哈希耗时和队列深度，请求路径为 /api/admin/auth，请求方式为 GET。
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return new ResponseEntity<>(passwordHashExecutor.stats(), HttpStatus.OK);
+    }
+}
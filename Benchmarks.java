@@ -0,0 +1,601 @@
+//以下是基准测试模块的代码示例，包含了服务层 JMH 基准测试和午餐高峰 HTTP 压测脚本：
+//这段代码演示了基准测试环境、数据生成器、JMH 基准测试类和压测程序。每次性能改动前后各跑一次，对比吞吐量和延迟分位数即可判断是否退化。
+
+//模块结构（Maven 多模块）：
+//canteen-app/pom.xml             父 POM，<modules> 包含 app 和 benchmarks
+//canteen-app/app/                应用模块，即本仓库现有的代码
+//canteen-app/benchmarks/         基准测试模块，依赖 app、org.openjdk.jmh:jmh-core、org.openjdk.jmh:jmh-generator-annprocess（注解处理器）和 org.testcontainers:mongodb，
+//                                用 maven-shade-plugin 打成 benchmarks.jar，Main-Class 为 org.openjdk.jmh.Main
+//运行基准测试: mvn -pl benchmarks -am package && java -jar benchmarks/target/benchmarks.jar -rf json -rff bench_output.json
+//运行压测:     先以 bench profile 启动应用（java -jar app.jar --spring.profiles.active=bench），
+//              再运行 java -cp benchmarks/target/benchmarks.jar com.example.canteenbench.LunchRushLoadTest http://localhost:8080 60 200 bench_output.txt [baseline.txt]
+
+bench.mongo.uri=
+bench.canteens=50
+bench.dishes=20000
+bench.reviews=2000000
+bench.users=10000
+//JVM 系统属性（-D 传入）
+//bench.mongo.uri: 已有 MongoDB 的连接 URI，必须指向空库或此前由基准测试生成的库（带 bench_seed 标记），否则拒绝运行；留空时用 Testcontainers 启动一个临时 MongoDB 容器。
+//bench.canteens / bench.dishes / bench.reviews / bench.users: 生成的数据规模，记录在 bench_seed 标记中；标记与当前规模一致时不重复生成，saveReview 等基准写入的数据不影响判断。
+
+//基准测试类放在 com.example.canteenbench 包中，不在应用的组件扫描范围（com.example.canteenapp）内，不会被生产环境加载。
+
+governor.enabled=false
+//application-bench.properties 配置文件（压测时应用以 bench profile 启动）
+//governor.enabled=false: 压测从同一个 IP 登录上百个用户、反复评价同一批菜品，按生产配置会被限流（429）和重复评价拦截（409），测出的只是拒绝的速度。
+//压测结果中被拒绝的请求（409 / 429）单独计入 rejected，不计入 errors；生产配置下 rejected 不为 0 说明限流配置与压测流量不匹配。
+
+
+package com.example.canteenbench;                            //基准测试用的 Spring Boot 启动类，扫描整个应用包
+
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication(scanBasePackages = "com.example.canteenapp")
+@AutoConfigurationPackage(basePackages = "com.example.canteenapp")   //启动类不在应用包下，仓库接口和 @Document 实体按应用包查找。
+public class BenchmarkApplication {
+}
+
+
+package com.example.canteenbench;                            //基准测试环境：启动 MongoDB 和应用上下文，并生成测试数据
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.MongoDBContainer;
+
+public final class BenchmarkEnvironment {
+
+    private static MongoDBContainer container;
+
+    private BenchmarkEnvironment() {
+    }
+
+    public static synchronized ConfigurableApplicationContext start() {
+        String uri = System.getProperty("bench.mongo.uri", "");
+        if (uri.isEmpty()) {
+            if (container == null) {
+                container = new MongoDBContainer("mongo:7.0");
+                container.start();
+            }
+            uri = container.getReplicaSetUrl("canteenBench");
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.data.mongodb.uri=" + uri,
+                        "review.ingest.spill-dir=target/bench-review-spill",
+                        "catalog.cache.warm-on-startup=false",
+                        "auth.token.secret=benchmark-secret",
+                        "auth.bcrypt.min-strength=10",
+                        "auth.bcrypt.max-strength=10")
+                .run();
+        context.getAutowireCapableBeanFactory().createBean(BenchmarkDataSeeder.class).seedIfNeeded();
+        return context;
+    }
+
+    public static synchronized void stop(ConfigurableApplicationContext context) {
+        context.close();
+    }
+}
+
+
+package com.example.canteenbench;                            //数据生成器：按接近真实的分布生成食堂、菜品、用户和评价；只在空库或自己生成过的库上运行
+
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.CanteenSnapshot;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishSnapshot;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.model.User;
+import com.example.canteenapp.model.UserSnapshot;
+import com.example.canteenapp.search.CatalogSearchIndex;
+import com.example.canteenapp.service.RatingSummaryService;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public class BenchmarkDataSeeder {                           //不是组件：由 BenchmarkEnvironment 通过 createBean 创建并注入依赖。
+
+    public static final String PASSWORD = "bench-password";
+
+    private static final String MARKER_COLLECTION = "bench_seed";
+    private static final String MARKER_ID = "seed";
+
+    private static final int BATCH = 5_000;
+    private static final List<String> STAPLES = Arrays.asList("米饭", "面", "粉", "饺子", "包子", "饼", "粥", "盖饭", "拌面", "汤面");
+    private static final List<String> MAINS = Arrays.asList("宫保鸡丁", "鱼香肉丝", "麻婆豆腐", "红烧肉", "番茄炒蛋", "回锅肉", "糖醋里脊",
+            "青椒土豆丝", "水煮牛肉", "酸菜鱼", "黄焖鸡", "牛肉", "排骨", "鸡腿", "茄子", "豆角", "土豆烧鸡", "小炒肉");
+    private static final List<String> TAGS = Arrays.asList("辣", "甜", "素食", "清淡", "招牌", "新品", "早餐", "夜宵", "低脂", "酸");
+    private static final List<String> COMMENTS = Arrays.asList("好吃", "分量足", "一般般", "太咸了", "排队太久", "性价比高", "还会再来", "偏油");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private RatingSummaryService ratingSummaryService;
+
+    @Autowired
+    private CatalogSearchIndex catalogSearchIndex;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    public void seedIfNeeded() {
+        int canteens = Integer.getInteger("bench.canteens", 50);
+        int dishes = Integer.getInteger("bench.dishes", 20_000);
+        int reviews = Integer.getInteger("bench.reviews", 2_000_000);
+        int users = Integer.getInteger("bench.users", 10_000);
+        Document marker = mongoTemplate.findById(MARKER_ID, Document.class, MARKER_COLLECTION);
+        Document scale = new Document("canteens", canteens).append("dishes", dishes).append("reviews", reviews).append("users", users);
+        if (marker != null && marker.getBoolean("complete", false) && scale.equals(marker.get("scale", Document.class))) {
+            catalogSearchIndex.rebuild();
+            return;
+        }
+        if (marker == null && !isEmpty()) {                  //只清空自己生成过的库，绝不删除 bench.mongo.uri 指向的已有数据。
+            throw new IllegalStateException("Refusing to seed database " + mongoTemplate.getDb().getName()
+                    + ": it already contains data and has no " + MARKER_COLLECTION + " marker");
+        }
+        mongoTemplate.save(new Document("_id", MARKER_ID).append("scale", scale).append("complete", false), MARKER_COLLECTION);
+        for (Class<?> type : Arrays.asList(Canteen.class, Dish.class, Review.class, User.class)) {
+            mongoTemplate.dropCollection(type);
+        }
+
+        List<Canteen> canteenList = new ArrayList<>(canteens);
+        for (int i = 0; i < canteens; i++) {
+            Canteen canteen = new Canteen();
+            canteen.setId(new ObjectId().toHexString());
+            canteen.setName("第" + (i + 1) + "食堂");
+            canteen.setLocation("校区" + (i % 5 + 1) + " " + (i + 1) + "号楼");
+            canteen.setOpenTime("06:30-21:00");
+            canteen.setDescription("提供" + STAPLES.get(i % STAPLES.size()) + "和各类炒菜");
+            canteenList.add(canteen);
+        }
+        mongoTemplate.insertAll(canteenList);
+
+        List<Dish> dishList = new ArrayList<>(dishes);
+        for (int i = 0; i < dishes; i++) {
+            Canteen canteen = canteenList.get(i % canteens);
+            Dish dish = new Dish();
+            dish.setId(new ObjectId().toHexString());
+            dish.setName(pick(MAINS) + pick(STAPLES));
+            dish.setPrice(BigDecimal.valueOf(500 + random.nextInt(2500), 2));
+            dish.setCanteenId(canteen.getId());
+            dish.setCanteen(CanteenSnapshot.of(canteen));
+            dish.setTags(Arrays.asList(pick(TAGS), pick(TAGS)));
+            dishList.add(dish);
+        }
+        insertInBatches(dishList, Dish.class);
+
+        String hash = passwordEncoder.encode(PASSWORD);      //所有用户共用一个哈希，避免生成数据时执行上万次 bcrypt。
+        List<User> userList = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            User user = new User();
+            user.setId(new ObjectId().toHexString());
+            user.setUsername("student" + i);
+            user.setPassword(hash);
+            user.setNickname("同学" + i);
+            userList.add(user);
+        }
+        insertInBatches(userList, User.class);
+
+        //评价按 Zipf 近似分布集中在少数热门菜品上，评分集中在 4 星附近。
+        LocalDateTime start = LocalDateTime.now().minusDays(120);
+        List<Review> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < reviews; i++) {
+            Dish dish = dishList.get(zipf(dishes));
+            User user = userList.get(random.nextInt(users));
+            Review review = new Review();
+            review.setId(new ObjectId().toHexString());
+            review.setContent(pick(COMMENTS));
+            review.setRating(Math.max(1, Math.min(5, (int) Math.round(4 + random.nextDouble() * 2.4 - 1.6))));
+            review.setUserId(user.getId());
+            review.setUser(UserSnapshot.of(user));
+            review.setDishId(dish.getId());
+            review.setDish(DishSnapshot.of(dish));
+            review.setCreatedAt(start.plusSeconds((long) i * 120 * 86400 / reviews));
+            batch.add(review);
+            if (batch.size() == BATCH) {
+                insertInBatches(batch, Review.class);
+                batch.clear();
+            }
+        }
+        insertInBatches(batch, Review.class);
+
+        ratingSummaryService.rebuild();
+        catalogSearchIndex.rebuild();
+        mongoTemplate.save(new Document("_id", MARKER_ID).append("scale", scale).append("complete", true), MARKER_COLLECTION);
+    }
+
+    private boolean isEmpty() {
+        for (Class<?> type : Arrays.asList(Canteen.class, Dish.class, Review.class, User.class)) {
+            if (mongoTemplate.getCollection(mongoTemplate.getCollectionName(type)).estimatedDocumentCount() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private <T> void insertInBatches(List<T> items, Class<T> type) {
+        for (int from = 0; from < items.size(); from += BATCH) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, type);
+            bulk.insert(items.subList(from, Math.min(from + BATCH, items.size())));
+            bulk.execute();
+        }
+    }
+
+    private int zipf(int n) {                                //近似 Zipf(s≈1)：取对数均匀分布，排名越靠前被选中的概率越高。
+        return (int) Math.min(n - 1, Math.floor(Math.exp(random.nextDouble() * Math.log(n + 1)) - 1));
+    }
+
+    private String pick(List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+}
+
+
+package com.example.canteenbench;                            //服务层 JMH 基准测试
+
+import com.example.canteenapp.model.CursorPage;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishWithRating;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.User;
+import com.example.canteenapp.service.CanteenService;
+import com.example.canteenapp.service.DishService;
+import com.example.canteenapp.service.RatingSummaryService;
+import com.example.canteenapp.service.ReviewService;
+import com.example.canteenapp.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(8)
+public class ServiceBenchmarks {
+
+    private static final String[] KEYWORDS = {"鸡", "宫保", "gongbao", "hsr", "niurou", "麻婆豆腐", "土豆", "paigu", "招牌", "mian"};
+
+    private ConfigurableApplicationContext context;
+    private DishService dishService;
+    private CanteenService canteenService;
+    private ReviewService reviewService;
+    private UserService userService;
+    private RatingSummaryService ratingSummaryService;
+    private String[] dishIds;
+    private String[] canteenIds;
+    private String[] userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkEnvironment.start();
+        dishService = context.getBean(DishService.class);
+        canteenService = context.getBean(CanteenService.class);
+        reviewService = context.getBean(ReviewService.class);
+        userService = context.getBean(UserService.class);
+        ratingSummaryService = context.getBean(RatingSummaryService.class);
+        MongoTemplate mongoTemplate = context.getBean(MongoTemplate.class);
+        dishIds = mongoTemplate.find(new Query().limit(2_000), Dish.class).stream().map(Dish::getId).toArray(String[]::new);
+        canteenIds = mongoTemplate.findAll(Canteen.class).stream().map(Canteen::getId).toArray(String[]::new);
+        userIds = mongoTemplate.find(new Query().limit(1_000), User.class).stream().map(User::getId).toArray(String[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkEnvironment.stop(context);
+    }
+
+    @Benchmark
+    public List<Dish> searchDishes() {
+        return dishService.searchDishes(pick(KEYWORDS), 20);
+    }
+
+    @Benchmark
+    public Dish getDishById() {
+        return dishService.getDishById(pick(dishIds));
+    }
+
+    @Benchmark
+    public List<Dish> getDishesByCanteenId() {
+        return dishService.getDishesByCanteenId(pick(canteenIds));
+    }
+
+    @Benchmark
+    public List<DishWithRating> getDishesByCanteenIdWithRating() {
+        return ratingSummaryService.attachToDishes(dishService.getDishesByCanteenId(pick(canteenIds)));
+    }
+
+    @Benchmark
+    public List<Canteen> getAllCanteens() {
+        return canteenService.getAllCanteens();
+    }
+
+    @Benchmark
+    public List<Canteen> searchCanteens() {
+        return canteenService.searchCanteens("食堂", 20);
+    }
+
+    @Benchmark
+    public CursorPage<Review> getReviewsPageByDishId() {
+        return reviewService.getReviewsPageByDishId(pick(dishIds), null, 20);
+    }
+
+    @Benchmark
+    public CursorPage<Review> getReviewsPageByCanteenId() {
+        return reviewService.getReviewsPageByCanteenId(pick(canteenIds), null, 20);
+    }
+
+    @Benchmark
+    public List<Review> saveReview() {                       //同步写入路径：快照补齐 + 批量插入 + 评分汇总累加。
+        Review review = new Review();
+        review.setContent("benchmark");
+        review.setRating(1 + ThreadLocalRandom.current().nextInt(5));
+        review.setUserId(pick(userIds));
+        review.setDishId(pick(dishIds));
+        review.setCreatedAt(LocalDateTime.now());
+        return reviewService.saveReviews(Collections.singletonList(review));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public User login() {                                    //包含一次 bcrypt 校验，主要衡量哈希线程池的排队开销。
+        return userService.login("student" + ThreadLocalRandom.current().nextInt(1_000), BenchmarkDataSeeder.PASSWORD);
+    }
+
+    private static String pick(String[] values) {
+        return values[ThreadLocalRandom.current().nextInt(values.length)];
+    }
+}
+
+
+package com.example.canteenbench;                            //午餐高峰压测：按 搜索 60% / 菜品详情 30% / 发表评价 10% 的比例持续请求，输出吞吐量和延迟分位数
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class LunchRushLoadTest {
+
+    private static final String[] KEYWORDS = {"鸡", "宫保", "gongbao", "niurou", "土豆", "mian", "招牌", "酸菜鱼"};
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\"([0-9a-f]{24})\"");
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final String baseUrl;
+    private final Map<String, Recorder> recorders = new LinkedHashMap<>();
+
+    LunchRushLoadTest(String baseUrl) {
+        this.baseUrl = baseUrl;
+        for (String op : Arrays.asList("search", "dishDetail", "postReview")) {
+            recorders.put(op, new Recorder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("usage: LunchRushLoadTest <baseUrl> <seconds> <concurrency> <output> [baseline]");
+            System.exit(2);
+        }
+        LunchRushLoadTest test = new LunchRushLoadTest(args[0]);
+        Properties result = test.run(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        try (Writer out = Files.newBufferedWriter(Paths.get(args[3]), StandardCharsets.UTF_8)) {
+            result.store(out, "lunch rush " + args[1] + "s x " + args[2]);
+        }
+        if (args.length > 4) {
+            Properties baseline = new Properties();
+            try (Reader in = Files.newBufferedReader(Paths.get(args[4]), StandardCharsets.UTF_8)) {
+                baseline.load(in);
+            }
+            printComparison(result, baseline);
+        }
+    }
+
+    Properties run(int seconds, int concurrency) throws Exception {
+        List<String> dishIds = fetchDishIds();
+        List<String> tokens = login(Math.min(concurrency, 200));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < concurrency; i++) {
+            String token = tokens.get(i % tokens.size());
+            workers.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int roll = random.nextInt(100);
+                    if (roll < 60) {
+                        String keyword = URLEncoder.encode(KEYWORDS[random.nextInt(KEYWORDS.length)], StandardCharsets.UTF_8);
+                        timed("search", get("/api/dishes/search?limit=20&keyword=" + keyword));
+                    } else if (roll < 90) {
+                        timed("dishDetail", get("/api/dishes/" + dishIds.get(random.nextInt(dishIds.size()))));
+                    } else {
+                        String body = "{\"dishId\":\"" + dishIds.get(random.nextInt(dishIds.size()))
+                                + "\",\"rating\":" + (1 + random.nextInt(5)) + ",\"content\":\"load test\"}";
+                        timed("postReview", HttpRequest.newBuilder(URI.create(baseUrl + "/api/reviews"))
+                                .header("Content-Type", "application/json")
+                                .header("Authorization", "Bearer " + token)
+                                .POST(HttpRequest.BodyPublishers.ofString(body)).build());
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+
+        Properties result = new Properties();
+        recorders.forEach((op, recorder) -> recorder.report(op, seconds, result));
+        result.list(System.out);
+        return result;
+    }
+
+    private void timed(String op, HttpRequest request) {
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException | InterruptedException e) {
+            status = -1;
+        }
+        recorders.get(op).record(System.nanoTime() - start, status);
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private List<String> fetchDishIds() throws IOException, InterruptedException {
+        String body = client.send(get("/api/dishes/page?limit=100"), HttpResponse.BodyHandlers.ofString()).body();
+        List<String> ids = new ArrayList<>();
+        Matcher matcher = ID.matcher(body);
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("No dishes found at " + baseUrl);
+        }
+        return ids;
+    }
+
+    private List<String> login(int users) throws IOException, InterruptedException {   //预先登录，压测期间发表评价只携带令牌。
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            String body = "{\"username\":\"student" + i + "\",\"password\":\"" + BenchmarkDataSeeder.PASSWORD + "\"}";
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/users/login"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+            Matcher matcher = TOKEN.matcher(client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            if (matcher.find()) {
+                tokens.add(matcher.group(1));
+            }
+        }
+        if (tokens.isEmpty()) {
+            throw new IllegalStateException("Could not log in any benchmark user");
+        }
+        return tokens;
+    }
+
+    private static void printComparison(Properties result, Properties baseline) {
+        for (String key : result.stringPropertyNames().stream().sorted().toArray(String[]::new)) {
+            String before = baseline.getProperty(key);
+            if (before == null) {
+                continue;
+            }
+            double now = Double.parseDouble(result.getProperty(key));
+            double then = Double.parseDouble(before);
+            double change = then == 0 ? 0 : (now - then) * 100 / then;
+            System.out.printf("%-28s %12.2f -> %12.2f  (%+.1f%%)%n", key, then, now, change);
+        }
+    }
+
+    private static final class Recorder {                    //每个操作一份延迟记录；样本量在分钟级压测中可以直接保存后排序。
+
+        private final List<long[]> chunks = new ArrayList<>();
+        private long[] current = new long[1 << 16];
+        private int size;
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        synchronized void record(long nanos, int status) {
+            if (status == 409 || status == 429) {            //限流和重复评价拦截是预期的拒绝，单独计数，也不计入延迟分位数。
+                rejected.incrementAndGet();
+                return;
+            }
+            if (status < 0 || status >= 400) {
+                errors.incrementAndGet();
+            }
+            if (size == current.length) {
+                chunks.add(current);
+                current = new long[current.length];
+                size = 0;
+            }
+            current[size++] = nanos;
+        }
+
+        synchronized void report(String op, int seconds, Properties out) {
+            int total = chunks.size() * current.length + size;
+            long[] all = new long[total];
+            int offset = 0;
+            for (long[] chunk : chunks) {
+                System.arraycopy(chunk, 0, all, offset, chunk.length);
+                offset += chunk.length;
+            }
+            System.arraycopy(current, 0, all, offset, size);
+            Arrays.sort(all);
+            out.setProperty(op + ".count", String.valueOf(total));
+            out.setProperty(op + ".errors", String.valueOf(errors.get()));
+            out.setProperty(op + ".rejected", String.valueOf(rejected.get()));
+            out.setProperty(op + ".throughput", String.format("%.2f", (double) total / seconds));
+            for (double p : new double[]{50, 90, 99, 99.9}) {
+                out.setProperty(op + ".p" + p + ".ms", String.format("%.3f", percentile(all, p)));
+            }
+            out.setProperty(op + ".max.ms", String.format("%.3f", total == 0 ? 0 : all[total - 1] / 1e6));
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+//以下是目录缓存模块的代码示例，为食堂和菜品的读取提供带淘汰策略的读穿透缓存：
+//这段代码演示了二级缓存接口、内存实现、缓存封装、缓存注册组件、启动预热和统计控制器。一级缓存使用 Caffeine（W-TinyLFU 淘汰 + 写入后过期），二级缓存可替换为 Redis 等共享存储，供多个应用节点共用。
+
+catalog.cache.maximum-size=10000
+catalog.cache.ttl-seconds=600
+catalog.cache.warm-on-startup=true
+catalog.cache.second-tier=none
+catalog.cache.version-refresh-seconds=5
+//application.properties 配置文件
+//catalog.cache.maximum-size: 每个一级缓存的最大条目数，超出后按 W-TinyLFU 淘汰。
+//catalog.cache.ttl-seconds: 写入后过期时间（秒），同时用于二级缓存。
+//catalog.cache.warm-on-startup: 是否在启动完成后预热食堂列表和各食堂菜单。
+//catalog.cache.second-tier: 二级缓存类型，none 表示只用本地缓存，memory 使用进程内实现（测试用）；多节点部署时注册一个 Redis 实现的 CacheTier Bean 即可。
+//catalog.cache.version-refresh-seconds: 本节点缓存版本号的时间（秒）。版本号保存在 catalog_versions 集合中，写入节点修改数据后递增，
+//                                       其他节点最迟在这段时间后（启用领域事件时立即）读到新版本号；数据未变化时各节点、各时刻的版本号相同。
+
+
+package com.example.canteenapp.cache;                        //二级缓存接口：按 Redis 的 GET / SETEX / DEL 语义定义，值为序列化后的字节
+
+import java.time.Duration;
+
+public interface CacheTier {
+
+    byte[] get(String key);
+
+    void set(String key, byte[] value, Duration ttl);
+
+    void delete(String key);
+}
+
+
+package com.example.canteenapp.cache;                        //二级缓存的内存实现：单节点部署和测试时使用，多节点部署时替换为 Redis 实现
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryCacheTier implements CacheTier {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    public void set(String key, byte[] value, Duration ttl) {
+        entries.put(key, new Entry(value, System.currentTimeMillis() + ttl.toMillis()));
+    }
+
+    @Override
+    public void delete(String key) {
+        entries.remove(key);
+    }
+
+    private static final class Entry {
+
+        private final byte[] value;
+        private final long expiresAt;
+
+        Entry(byte[] value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
+
+
+package com.example.canteenapp.cache;                        //版本号存储：每个缓存 key 的数据版本号保存在 catalog_versions 集合中，所有节点读到同一个值
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+@Component
+public class CatalogVersionStore {
+
+    private static final String COLLECTION = "catalog_versions";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    //current 方法: 从未修改过的 key 没有记录，版本号为 0，读取不产生写入。
+    public long current(String key) {
+        Query query = Query.query(Criteria.where("_id").is(key));
+        query.fields().include("version");
+        Document document = mongoTemplate.findOne(query, Document.class, COLLECTION);
+        return document == null ? 0 : ((Number) document.get("version")).longValue();
+    }
+
+    //bump 方法: 原子地把版本号设为 max(原版本号 + 1, 当前时间)，各节点时钟不一致时版本号仍单调递增，同时可以作为 Last-Modified。
+    public long bump(String key) {
+        long now = System.currentTimeMillis();
+        AggregationExpression next = context -> new Document("$max", Arrays.asList(
+                new Document("$add", Arrays.asList(new Document("$ifNull", Arrays.asList("$version", 0L)), 1L)), now));
+        Document document = mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(key)),
+                AggregationUpdate.update().set("version").toValue(next),
+                FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, COLLECTION);
+        return ((Number) document.get("version")).longValue();
+    }
+}
+
+
+package com.example.canteenapp.cache;                        //缓存封装：一级 Caffeine + 可选二级缓存的读穿透缓存
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class CatalogCache<V> {
+
+    private final String name;
+    private final Cache<String, V> local;
+    private final CacheTier secondTier;
+    private final ObjectMapper objectMapper;
+    private final JavaType valueType;
+    private final Duration ttl;
+    private final LongAdder secondTierHits = new LongAdder();
+    private final Cache<String, Long> versions;
+    private final CatalogVersionStore versionStore;
+
+    CatalogCache(String name, long maximumSize, Duration ttl, CacheTier secondTier,
+                 ObjectMapper objectMapper, JavaType valueType, CatalogVersionStore versionStore, Duration versionRefresh) {
+        this.name = name;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.versions = Caffeine.newBuilder()                //过期后重新读取持久化的版本号，数据没有变化时读到的仍是同一个值，ETag 不会因过期而改变。
+                .maximumSize(maximumSize)
+                .expireAfterWrite(versionRefresh)
+                .build();
+        this.versionStore = versionStore;
+        this.ttl = ttl;
+        this.secondTier = secondTier;
+        this.objectMapper = objectMapper;
+        this.valueType = valueType;
+    }
+
+    //get 方法: 依次查一级缓存、二级缓存和 loader；同一 key 的并发未命中只会调用一次 loader。loader 抛出的异常（如资源不存在）原样抛出，不会被缓存。
+    //         二级缓存的 key 带有加载前读到的版本号：其他节点上仍在运行的 loader 在 invalidate 之后写回的旧数据落在旧版本的 key 上，不会被读到；
+    //         加载期间本节点的版本号发生变化时不写二级缓存。返回的是缓存值的深拷贝（列表不可修改），调用方修改返回值不会影响缓存。
+    public V get(String key, Supplier<V> loader) {
+        return copyOf(local.get(key, k -> {
+            long version = version(k);
+            V remote = readSecondTier(k, version);
+            if (remote != null) {
+                secondTierHits.increment();
+                return remote;
+            }
+            V loaded = loader.get();
+            if (loaded != null && version(k) == version) {
+                writeSecondTier(k, version, loaded);
+            }
+            return loaded;
+        }));
+    }
+
+    //version 方法: 返回 key 当前数据的版本号（最后一次修改的毫秒时间戳），用作 HTTP 响应的 ETag 和 Last-Modified；
+    //             版本号只在写入时由 invalidate 递增并持久化，不取决于读取它的节点或读取时间，负载均衡后面的各节点返回相同的验证器。
+    public long version(String key) {
+        return versions.get(key, k -> versionStore.current(tierKey(k)));
+    }
+
+    //invalidate 方法: 由写入数据的节点在写入成功后调用，递增持久化的版本号并清除一级缓存；二级缓存中旧版本的条目不再被读取，到 TTL 后过期。
+    public void invalidate(String key) {
+        local.invalidate(key);
+        versions.put(key, versionStore.bump(tierKey(key)));
+    }
+
+    public void invalidateLocal(String key) {              //只清除本节点的一级缓存，用于处理其他节点发出的失效通知。
+        local.invalidate(key);
+        versions.invalidate(key);
+    }
+
+    public void invalidateAllLocal() {
+        local.invalidateAll();
+        versions.invalidateAll();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Cache<String, V> getLocal() {
+        return local;
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = local.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", local.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("secondTierHits", secondTierHits.sum());
+        result.put("loads", stats.loadCount());
+        result.put("averageLoadMillis", stats.averageLoadPenalty() / 1_000_000.0);
+        return result;
+    }
+
+    private String tierKey(String key) {
+        return "catalog:" + name + ":" + key;
+    }
+
+    private String tierKey(String key, long version) {
+        return tierKey(key) + "@" + version;
+    }
+
+    private V readSecondTier(String key, long version) {
+        if (secondTier == null) {
+            return null;
+        }
+        byte[] bytes = secondTier.get(tierKey(key, version));
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(bytes, valueType);
+        } catch (IOException e) {
+            secondTier.delete(tierKey(key, version));        //无法反序列化（例如实体字段已变更）时丢弃该条目，回源加载。
+            return null;
+        }
+    }
+
+    private void writeSecondTier(String key, long version, V value) {
+        if (secondTier == null) {
+            return;
+        }
+        try {
+            secondTier.set(tierKey(key, version), objectMapper.writeValueAsBytes(value), ttl);
+        } catch (IOException e) {
+            // 二级缓存写入失败不影响本次读取
+        }
+    }
+
+    //copyOf 方法: 经 TokenBuffer 复制（不经过字节编码），比二级缓存的序列化开销小得多；列表再包装为不可修改。
+    @SuppressWarnings("unchecked")
+    private V copyOf(V value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            TokenBuffer buffer = new TokenBuffer(objectMapper, false);
+            objectMapper.writeValue(buffer, value);
+            V copy = objectMapper.readValue(buffer.asParser(), valueType);
+            return copy instanceof List ? (V) Collections.unmodifiableList((List<?>) copy) : copy;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to copy cached value of " + name, e);
+        }
+    }
+}
+
+
+package com.example.canteenapp.cache;                        //缓存注册组件：集中创建目录缓存，提供统一的统计入口
+
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.Dish;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component                                                   //标识该类为 Spring 组件，会被 Spring 容器管理。
+public class CatalogCaches {
+
+    public static final String ALL = "all";                   //canteenList 缓存只有这一个 key。
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)                             //未配置二级缓存时只使用本地缓存。
+    private CacheTier secondTier;
+
+    @Autowired
+    private CatalogVersionStore versionStore;
+
+    @Value("${catalog.cache.version-refresh-seconds:5}")
+    private long versionRefreshSeconds;
+
+    @Value("${catalog.cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${catalog.cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private CatalogCache<List<Canteen>> canteenList;
+    private CatalogCache<Canteen> canteens;
+    private CatalogCache<Dish> dishes;
+    private CatalogCache<List<Dish>> dishesByCanteen;
+
+    @PostConstruct
+    public void init() {
+        TypeFactory types = objectMapper.getTypeFactory();
+        canteenList = create("canteenList", types.constructCollectionType(List.class, Canteen.class));
+        canteens = create("canteens", types.constructType(Canteen.class));
+        dishes = create("dishes", types.constructType(Dish.class));
+        dishesByCanteen = create("dishesByCanteen", types.constructCollectionType(List.class, Dish.class));
+    }
+
+    private <V> CatalogCache<V> create(String name, JavaType type) {
+        return new CatalogCache<>(name, maximumSize, Duration.ofSeconds(ttlSeconds), secondTier, objectMapper, type,
+                versionStore, Duration.ofSeconds(versionRefreshSeconds));
+    }
+
+    public CatalogCache<List<Canteen>> canteenList() {
+        return canteenList;
+    }
+
+    public CatalogCache<Canteen> canteens() {
+        return canteens;
+    }
+
+    public CatalogCache<Dish> dishes() {
+        return dishes;
+    }
+
+    public CatalogCache<List<Dish>> dishesByCanteen() {
+        return dishesByCanteen;
+    }
+
+    public List<CatalogCache<?>> all() {
+        return Arrays.asList(canteenList, canteens, dishes, dishesByCanteen);
+    }
+
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        for (CatalogCache<?> cache : all()) {
+            result.put(cache.getName(), cache.stats());
+        }
+        return result;
+    }
+}
+
+
+package com.example.canteenapp.config;                       //缓存配置类
+
+import com.example.canteenapp.cache.CacheTier;
+import com.example.canteenapp.cache.InMemoryCacheTier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration                                               //@Configuration: 标识该类为配置类。
+public class CacheConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "catalog.cache.second-tier", havingValue = "memory")
+    public CacheTier inMemoryCacheTier() {
+        return new InMemoryCacheTier();
+    }
+}
+
+
+package com.example.canteenapp.cache;                        //缓存预热组件：启动完成后加载食堂列表和每个食堂的菜单
+
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.service.CanteenService;
+import com.example.canteenapp.service.DishService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "catalog.cache.warm-on-startup", havingValue = "true", matchIfMissing = true)
+public class CatalogCacheWarmer {
+
+    @Autowired
+    private CanteenService canteenService;
+
+    @Autowired
+    private DishService dishService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warm() {                                     //通过服务层读取，缓存按正常的读穿透路径填充。
+        for (Canteen canteen : canteenService.getAllCanteens()) {
+            canteenService.getCanteenById(canteen.getId());
+            dishService.getDishesByCanteenId(canteen.getId());
+        }
+    }
+}
+
+
+package com.example.canteenapp.controller;                   //缓存统计控制器
+
+import com.example.canteenapp.cache.CatalogCaches;
+import com.example.canteenapp.model.Role;
+import com.example.canteenapp.security.Authenticated;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController                                              //标识该类为 RESTful 风格的控制器。
+@RequestMapping("/api/admin/caches")                         //设置该控制器的根路径为 /api/admin/caches。
+@Authenticated(Role.ADMIN)                                   //该控制器的全部接口只对管理员开放。
+public class CacheController {
+
+    @Autowired
+    private CatalogCaches catalogCaches;
+
+    @GetMapping("")                                          //获取各缓存的命中、未命中和淘汰统计，请求路径为 /api/admin/caches，请求方式为 GET。
+    public ResponseEntity<Map<String, Map<String, Object>>> getStats() {
+        return new ResponseEntity<>(catalogCaches.stats(), HttpStatus.OK);
+    }
+}
@@ -15,7 +15,7 @@ public class Canteen {
     private String name;
     private String location;
     private String openTime;
-    private String image; // 可选，食堂图片 URL
+    private String image; // 可选，食堂图片内容哈希（见 Images.java），旧数据为图片 URL
     private String description;
 }
 
@@ -23,8 +23,10 @@ public class Canteen {
 package com.example.canteenapp.service;                    //食堂服务接口:定义了获取所有食堂 (getAllCanteens)、根据 ID 获取食堂 (getCanteenById) 和搜索食堂 (searchCanteens) 的接口方法。
 
 import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.CursorPage;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface CanteenService {
 
@@ -32,65 +34,125 @@ public interface CanteenService {
 
     Canteen getCanteenById(String id);
 
-    List<Canteen> searchCanteens(String keyword);
+    List<Canteen> searchCanteens(String keyword, Integer limit);
+
+    CursorPage<Canteen> getCanteensPage(String after, Integer limit);
+
+    Stream<Canteen> streamAllCanteens();
 }
 
 
 package com.example.canteenapp.service.impl;            //食堂服务实现类
 
+import com.example.canteenapp.cache.CatalogCaches;
+import com.example.canteenapp.data.DataTier;
+import com.example.canteenapp.data.MongoRouter;
 import com.example.canteenapp.exception.ResourceNotFoundException;
 import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.CursorPage;
 import com.example.canteenapp.repository.CanteenRepository;
+import com.example.canteenapp.search.CatalogSearchIndex;
 import com.example.canteenapp.service.CanteenService;
+import com.example.canteenapp.util.Cursors;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Service                                              //标识该类为服务类，会被 Spring 容器管理。
 public class CanteenServiceImpl implements CanteenService {
 
-    @Autowired                                       //自动注入 CanteenRepository 和 MongoTemplate 实例。
+    @Autowired                                       //自动注入 CanteenRepository 和数据路由组件。
     private CanteenRepository canteenRepository;
 
     @Autowired
-    private MongoTemplate mongoTemplate;
+    private MongoRouter mongoRouter;
+
+    @Autowired
+    private CatalogSearchIndex catalogSearchIndex;
+
+    @Autowired
+    private CatalogCaches catalogCaches;
 
     @Override
     public List<Canteen> getAllCanteens() {
-        return canteenRepository.findAll();
+        return catalogCaches.canteenList().get(CatalogCaches.ALL, canteenRepository::findAll);
     }
 
     @Override
     public Canteen getCanteenById(String id) {
-        return canteenRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Canteen not found with id: " + id));
+        return catalogCaches.canteens().get(id, () -> canteenRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Canteen not found with id: " + id)));
+    }
+
+    @Override
+    public List<Canteen> searchCanteens(String keyword, Integer limit) {
+        List<String> ids = catalogSearchIndex.searchCanteens(keyword, Cursors.clampLimit(limit)); // 倒排索引检索，按相关度排序
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Canteen> canteens = catalog().find(Query.query(Criteria.where("id").in(ids)), Canteen.class);
+        canteens.sort(Comparator.comparingInt(canteen -> ids.indexOf(canteen.getId())));
+        return canteens;
     }
 
     @Override
-    public List<Canteen> searchCanteens(String keyword) {
-        Query query = new Query();
-        query.addCriteria(Criteria.where("name").regex(keyword, "i")); // 模糊查询，忽略大小写
-        return mongoTemplate.find(query, Canteen.class);
+    public CursorPage<Canteen> getCanteensPage(String after, Integer limit) {
+        int pageSize = Cursors.clampLimit(limit);
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "id")).limit(pageSize + 1);
+        if (after != null && !after.isEmpty()) {
+            query.addCriteria(Criteria.where("id").gt(after));
+        }
+        return Cursors.page(catalog().find(query, Canteen.class), pageSize, Canteen::getId);
+    }
+
+    @Override
+    public Stream<Canteen> streamAllCanteens() {
+        return catalog().stream(new Query().with(Sort.by(Sort.Direction.ASC, "id")), Canteen.class);
+    }
+
+    private MongoTemplate catalog() {                                     //不经过缓存、不带版本号的读取走目录层（默认从节点）；缓存回源和写入仍走 Repository（主节点），避免把从节点上的旧数据写进缓存或配上新的 ETag。
+        return mongoRouter.forTier(DataTier.CATALOG);
     }
 }
-//getAllCanteens 方法: 调用 CanteenRepository 的 findAll 方法获取所有食堂信息。
-//getCanteenById 方法: 根据 ID 查询食堂，如果食堂不存在则抛出异常。
-//searchCanteens 方法: 使用 MongoTemplate 进行模糊查询，根据关键字搜索食堂名称。
+//getAllCanteens 方法: 调用 CanteenRepository 的 findAll 方法获取所有食堂信息，结果经目录缓存读穿透。
+//getCanteenById 方法: 根据 ID 查询食堂（经目录缓存），如果食堂不存在则抛出异常，不存在的结果不会被缓存。
+//searchCanteens 方法: 在内存倒排索引中按名称、位置和简介检索食堂（支持拼音、前缀和容错匹配），再按 ID 一次取回。
+//getCanteensPage 方法: 按 _id 升序的游标分页，after 为上一页最后一个食堂的 ID，不使用 skip。
+//streamAllCanteens 方法: 返回基于数据库游标的流，调用方用完后必须关闭。
 
 
 package com.example.canteenapp.controller;                            //食堂控制器 
 
+import com.example.canteenapp.cache.CatalogCaches;
+import com.example.canteenapp.config.HttpCachePolicies;
+import com.example.canteenapp.menu.CompiledMenu;
+import com.example.canteenapp.menu.MenuCompiler;
 import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.CanteenWithRating;
+import com.example.canteenapp.model.CursorPage;
 import com.example.canteenapp.service.CanteenService;
+import com.example.canteenapp.service.RatingSummaryService;
+import com.example.canteenapp.util.ConditionalResponses;
+import com.example.canteenapp.util.Ndjson;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.Collections;
 import java.util.List;
 
 @RestController                                                      //标识该类为 RESTful 风格的控制器。
@@ -100,21 +162,76 @@ public class CanteenController {
     @Autowired
     private CanteenService canteenService;
 
-    @GetMapping("")                                                 //处理获取所有食堂请求，请求路径为 /api/canteens，请求方式为 GET。
-    public ResponseEntity<List<Canteen>> getAllCanteens() {
+    @Autowired
+    private RatingSummaryService ratingSummaryService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CatalogCaches catalogCaches;
+
+    @Autowired
+    private HttpCachePolicies httpCachePolicies;
+
+    @Autowired
+    private MenuCompiler menuCompiler;
+
+    @GetMapping("")                                                 //处理获取所有食堂请求，请求路径为 /api/canteens，请求方式为 GET。支持 If-None-Match / If-Modified-Since，未修改时返回 304。
+    public ResponseEntity<List<Canteen>> getAllCanteens(WebRequest request) {
+        long version = catalogCaches.canteenList().version(CatalogCaches.ALL);
+        return ConditionalResponses.ofVersion(request, version, httpCachePolicies.catalog(), canteenService::getAllCanteens);
+    }
+
+    @GetMapping("/page")                                            //处理游标分页获取食堂请求，请求路径为 /api/canteens/page?limit={limit}&after={cursor}，请求方式为 GET。
+    public ResponseEntity<CursorPage<Canteen>> getCanteensPage(@RequestParam(required = false) String after,
+                                                               @RequestParam(required = false) Integer limit) {
+        CursorPage<Canteen> page = canteenService.getCanteensPage(after, limit);
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/stream", produces = Ndjson.MEDIA_TYPE)    //处理流式获取食堂请求，请求路径为 /api/canteens/stream，响应为 NDJSON。
+    public ResponseEntity<StreamingResponseBody> streamAllCanteens() {
+        return new ResponseEntity<>(Ndjson.body(objectMapper, canteenService.streamAllCanteens()), HttpStatus.OK);
+    }
+
+    @GetMapping("/with-rating")                                     //处理获取所有食堂及其评分汇总请求，请求路径为 /api/canteens/with-rating，请求方式为 GET。
+    public ResponseEntity<List<CanteenWithRating>> getAllCanteensWithRating() {
         List<Canteen> canteens = canteenService.getAllCanteens();
-        return new ResponseEntity<>(canteens, HttpStatus.OK);
+        return new ResponseEntity<>(ratingSummaryService.attachToCanteens(canteens), HttpStatus.OK);
+    }
+
+    @GetMapping("/{id}")                                            //处理根据 ID 获取食堂请求，请求路径为 /api/canteens/{id}，请求方式为 GET。支持条件请求。
+    public ResponseEntity<Canteen> getCanteenById(@PathVariable String id, WebRequest request) {
+        long version = catalogCaches.canteens().version(id);
+        return ConditionalResponses.ofVersion(request, version, httpCachePolicies.catalog(), () -> canteenService.getCanteenById(id));
     }
 
-    @GetMapping("/{id}")                                            //处理根据 ID 获取食堂请求，请求路径为 /api/canteens/{id}，请求方式为 GET。
-    public ResponseEntity<Canteen> getCanteenById(@PathVariable String id) {
-        Canteen canteen = canteenService.getCanteenById(id);
-        return new ResponseEntity<>(canteen, HttpStatus.OK);
+    //getMenu 方法: 处理获取食堂菜单页请求，请求路径为 /api/canteens/{id}/menu，请求方式为 GET。直接输出预先编译的字节：客户端接受 gzip 时输出压缩字节，
+    //              响应已带 Content-Encoding，Tomcat 不会再次压缩；ETag 由内容计算，未修改时返回 304。
+    @GetMapping("/{id}/menu")
+    public ResponseEntity<byte[]> getMenu(@PathVariable String id, WebRequest request,
+                                          @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        CompiledMenu menu = menuCompiler.get(id);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(menu.getEtag());
+        headers.setCacheControl(httpCachePolicies.menu());
+        headers.setVary(Collections.singletonList(HttpHeaders.ACCEPT_ENCODING));
+        if (request.checkNotModified(menu.getEtag())) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return new ResponseEntity<>(menu.getGzip(), headers, HttpStatus.OK);
+        }
+        return new ResponseEntity<>(menu.getJson(), headers, HttpStatus.OK);
     }
 
-    @GetMapping("/search")                                         //处理搜索食堂请求，请求路径为 /api/canteens/search?keyword={keyword}，请求方式为 GET。
-    public ResponseEntity<List<Canteen>> searchCanteens(@RequestParam String keyword) {
-        List<Canteen> canteens = canteenService.searchCanteens(keyword);
+    @GetMapping("/search")                                         //处理搜索食堂请求，请求路径为 /api/canteens/search?keyword={keyword}&limit={limit}，请求方式为 GET。
+    public ResponseEntity<List<Canteen>> searchCanteens(@RequestParam String keyword,
+                                                        @RequestParam(required = false) Integer limit) {
+        List<Canteen> canteens = canteenService.searchCanteens(keyword, limit);
         return new ResponseEntity<>(canteens, HttpStatus.OK);
     }
 }
@@ -0,0 +1,201 @@
+//以下是数据路由模块的代码示例，按操作类型选择读写节点，并为 reviews 集合提供按食堂分片的配置：
+//这段代码演示了读写分层的 MongoTemplate 配置、按数据层选择 MongoTemplate 的路由组件，以及评价分片的初始化组件。
+//写操作（createReview、register 等）、目录缓存未命中时的回源读取、带 ETag 版本号的读取（如全部菜品列表）以及评价列表和分页走主节点；
+//不带版本号的目录分页、搜索回表、导出和评价流式导出走从节点。刚写入的数据需要立即读到（读己之写）的接口不能路由到从节点。
+
+spring.data.mongodb.uri=mongodb://mongo1:27017,mongo2:27017,mongo3:27017/canteenApp?replicaSet=rs0
+app.mongo.write-concern=majority
+app.mongo.routing.catalog=secondary
+app.mongo.routing.reviews=secondary
+app.mongo.secondary-max-staleness-seconds=90
+app.mongo.sharding.enabled=false
+//application.properties 配置文件
+//spring.data.mongodb.uri: 连接副本集（或分片集群的 mongos）。单节点部署时保持 MongoConfig.java 中的单机 URI 即可，从节点路由会自动回落到主节点。
+//app.mongo.write-concern: 主节点 MongoTemplate 和所有 Repository 的写关注，majority 保证故障切换后已确认的写入不会回滚。
+//app.mongo.routing.catalog / app.mongo.routing.reviews: 目录分页/搜索回表和评价导出使用的节点层，secondary 或 primary。
+//app.mongo.secondary-max-staleness-seconds: 从节点最大允许落后时间（秒，驱动要求不小于 90），落后更多的从节点不会被选中，全部不满足时读主节点。
+//app.mongo.sharding.enabled: 连接 mongos 时设为 true，启动后回填评价的 ownerCanteenId 字段，并以 { ownerCanteenId: 1, createdAt: 1 } 为分片键对 reviews 集合分片；评价查询会带上 ownerCanteenId 以路由到单个分片。
+
+//分片键设计：
+//reviews 的读写几乎都限定在一个食堂内（食堂评价列表、菜品评价列表、最新评价），因此以评价归属的食堂作为分片键前缀，同一食堂的评价落在同一组 chunk 中，查询只访问一个分片。
+//菜品评价的 canteenId 为空（食堂评价和菜品评价互斥），所以新增 ownerCanteenId 字段：食堂评价取 canteenId，菜品评价取菜品所属食堂。
+//只用食堂 ID 做分片键基数太低（一个校区约 30 个食堂），大食堂会形成无法拆分的 jumbo chunk，因此加上 createdAt，同一食堂的评价可以按时间继续拆分。
+//createdAt 单调递增，新评价集中写入每个食堂的最后一个 chunk，但写入按食堂分散在不同分片上，午餐高峰时各食堂同时写入，整体负载是均衡的。
+
+//本地测试：
+//docker run -d --name canteen-rs -p 27017:27017 mongo:7.0 --replSet rs0 && docker exec canteen-rs mongosh --eval "rs.initiate()"
+//然后使用 mongodb://localhost:27017/canteenApp?replicaSet=rs0&directConnection=true；基准测试模块的 Testcontainers MongoDB 同样是单节点副本集。
+
+
+package com.example.canteenapp.data;                         //数据层：每一层对应一个 MongoTemplate
+
+public enum DataTier {
+    PRIMARY,                                                 //写操作、带版本号的读取和需要读己之写的读取
+    CATALOG,                                                 //不经过缓存、不带版本号的食堂、菜品读取
+    REVIEWS                                                  //评价流式导出和离线计算（推荐）读取
+}
+
+
+package com.example.canteenapp.data;                         //数据路由组件：按数据层返回对应读偏好的 MongoTemplate
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class MongoRouter {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    @Qualifier("secondaryMongoTemplate")
+    private MongoTemplate secondaryMongoTemplate;
+
+    @Value("${app.mongo.routing.catalog:secondary}")
+    private String catalogRoute;
+
+    @Value("${app.mongo.routing.reviews:secondary}")
+    private String reviewsRoute;
+
+    public MongoTemplate forTier(DataTier tier) {
+        switch (tier) {
+            case CATALOG:
+                return route(catalogRoute);
+            case REVIEWS:
+                return route(reviewsRoute);
+            default:
+                return mongoTemplate;
+        }
+    }
+
+    private MongoTemplate route(String route) {
+        return "secondary".equalsIgnoreCase(route) ? secondaryMongoTemplate : mongoTemplate;
+    }
+}
+
+
+package com.example.canteenapp.config;                       //读写分层配置类：主节点 MongoTemplate（Repository 默认使用）和从节点 MongoTemplate
+
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration                                               //@Configuration: 标识该类为配置类。
+public class MongoRoutingConfig {
+
+    @Bean
+    @Primary                                                 //替换 Spring Boot 自动创建的 mongoTemplate，所有 Repository 和直接注入 MongoTemplate 的地方都使用主节点。
+    public MongoTemplate mongoTemplate(MongoDatabaseFactory factory, MongoConverter converter,
+                                       @Value("${app.mongo.write-concern:majority}") String writeConcern) {
+        MongoTemplate template = new MongoTemplate(factory, converter);
+        template.setReadPreference(ReadPreference.primary());
+        template.setWriteConcern(WriteConcern.valueOf(writeConcern.toUpperCase()));
+        return template;
+    }
+
+    @Bean
+    public MongoTemplate secondaryMongoTemplate(MongoDatabaseFactory factory, MongoConverter converter,
+                                                @Value("${app.mongo.secondary-max-staleness-seconds:90}") long maxStalenessSeconds) {
+        MongoTemplate template = new MongoTemplate(factory, converter);
+        template.setReadPreference(ReadPreference.secondaryPreferred(maxStalenessSeconds, TimeUnit.SECONDS));
+        return template;
+    }
+}
+
+
+package com.example.canteenapp.config;                       //评价分片初始化组件：回填 ownerCanteenId 后对 reviews 集合分片，只在连接 mongos 时启用
+
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.Review;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.stream.Stream;
+
+@Component
+@ConditionalOnProperty(name = "app.mongo.sharding.enabled", havingValue = "true")
+public class ReviewShardingInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(ReviewShardingInitializer.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    //initialize 方法: 回填和分片命令都是幂等的，每次启动执行一次；集合已分片时 shardCollection 返回 AlreadyInitialized 错误，忽略即可。
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        long canteenReviews = mongoTemplate.updateMulti(
+                new Query(Criteria.where("ownerCanteenId").exists(false).and("canteenId").ne(null)),
+                AggregationUpdate.update().set("ownerCanteenId").toValueOf("$canteenId"), Review.class).getModifiedCount();
+        long dishReviews = backfillDishReviews();
+        log.info("Backfilled ownerCanteenId on {} canteen reviews and {} dish reviews", canteenReviews, dishReviews);
+
+        String database = mongoTemplate.getDb().getName();
+        String collection = mongoTemplate.getCollectionName(Review.class);
+        runAdmin(new Document("enableSharding", database));
+        runAdmin(new Document("shardCollection", database + "." + collection)
+                .append("key", new Document("ownerCanteenId", 1).append("createdAt", 1)));
+    }
+
+    private long backfillDishReviews() {                     //按菜品分组回填：每道菜一条 updateMany，每 500 条组成一次批量写入。
+        Query dishes = new Query();
+        dishes.fields().include("canteenId");
+        long modified = 0;
+        BulkOperations bulk = null;
+        int queued = 0;
+        try (Stream<Dish> stream = mongoTemplate.stream(dishes, Dish.class)) {
+            for (Dish dish : (Iterable<Dish>) stream::iterator) {
+                if (dish.getCanteenId() == null) {
+                    continue;
+                }
+                if (bulk == null) {
+                    bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Review.class);
+                }
+                bulk.updateMulti(new Query(Criteria.where("dishId").is(dish.getId()).and("ownerCanteenId").exists(false)),
+                        new Update().set("ownerCanteenId", dish.getCanteenId()));
+                if (++queued == BATCH_SIZE) {
+                    modified += bulk.execute().getModifiedCount();
+                    bulk = null;
+                    queued = 0;
+                }
+            }
+        }
+        if (bulk != null) {
+            modified += bulk.execute().getModifiedCount();
+        }
+        return modified;
+    }
+
+    private void runAdmin(Document command) {
+        try {
+            mongoTemplate.getMongoDatabaseFactory().getMongoDatabase("admin").runCommand(command);
+        } catch (RuntimeException e) {
+            log.info("Sharding command {} not applied: {}", command.keySet().iterator().next(), e.getMessage());
+        }
+    }
+}
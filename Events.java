@@ -0,0 +1,430 @@
+//以下是领域事件模块的代码示例，用 MongoDB Change Stream 把任意节点的写入通知到所有节点，更新各节点内存中的派生状态：
+//这段代码演示了领域事件类、Change Stream 事件源和派生状态更新组件。每个节点监听 dishes、canteens、reviews 三个集合的变更，转换为 DishCreated、ReviewCreated 等领域事件，
+//通过 Spring 事件发布给本节点的监听器，增量更新目录缓存、搜索索引、筛选索引、菜单快照、最新评价和排行榜，不再依赖短 TTL 或重新查询；
+//每个节点的 resume token 定期保存到 event_offsets 集合，重启后从上次的位置继续，停机期间的写入不会丢失。
+
+events.change-streams.enabled=false
+events.node-id=
+events.offset-flush-millis=1000
+//application.properties 配置文件
+//events.change-streams.enabled: 多节点部署时设为 true。Change Stream 需要副本集或分片集群（见 DataRouting.java），单机 MongoDB 不支持。
+//events.node-id: 节点标识，用作保存 resume token 的 key，需要在重启后保持不变（例如 StatefulSet 的 Pod 名称）；留空时使用主机名。
+//events.offset-flush-millis: 保存 resume token 的间隔（毫秒）。崩溃后会重放最近一次保存之后的事件；缓存、索引、菜单和最新评价的监听器对重放是幂等的。
+//排行榜例外：它只靠 recentIds 按评价 ID 去重，检查点时 recentIds 只保留 watermark 之前 ranking.replay-overlap-minutes 以内的 ID（见 Ranking.java）。
+//重放的评价早于这个窗口时（例如节点停机较久后从旧的 resume token 追赶），会被再计入一次；排行榜是近似的热度统计，多计的部分随时间窗口滑出，不做额外纠正。
+
+//本节点的写入仍在请求线程上直接更新本节点的缓存和索引，保证写后立即可读；这些更新都是幂等的，事件回到本节点时再执行一次没有副作用。
+//排行榜计数不是幂等的，启用事件后所有评价（包括本节点写入的）只通过事件计入，每个节点恰好计入一次。
+
+
+package com.example.canteenapp.events;                       //领域事件：由 Change Stream 中的一条变更转换而来
+
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.Review;
+
+public final class DomainEvent {
+
+    public enum Type {
+        DISH_CREATED,
+        DISH_UPDATED,
+        DISH_DELETED,
+        CANTEEN_CREATED,
+        CANTEEN_UPDATED,
+        CANTEEN_DELETED,
+        REVIEW_CREATED,
+        RESYNC                                               //resume token 已过期（oplog 已被覆盖），中间的变更无法补发，派生状态需要全部重建。
+    }
+
+    private final Type type;
+    private final String id;
+    private final Object document;                           //新增和更新事件为变更后的完整文档，删除和 RESYNC 事件为 null。
+
+    public DomainEvent(Type type, String id, Object document) {
+        this.type = type;
+        this.id = id;
+        this.document = document;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Dish getDish() {
+        return (Dish) document;
+    }
+
+    public Canteen getCanteen() {
+        return (Canteen) document;
+    }
+
+    public Review getReview() {
+        return (Review) document;
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + id;
+    }
+}
+
+
+package com.example.canteenapp.events;                       //Change Stream 事件源：单个后台线程监听数据库变更，发布领域事件并定期保存 resume token
+
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.Review;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@ConditionalOnProperty(name = "events.change-streams.enabled", havingValue = "true")
+public class ChangeStreamEventSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeStreamEventSource.class);
+
+    private static final String OFFSETS = "event_offsets";
+    private static final List<Integer> HISTORY_LOST = Arrays.asList(280, 286);   //ChangeStreamFatalError、ChangeStreamHistoryLost
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher publisher;
+
+    @Value("${events.node-id:}")
+    private String nodeId;
+
+    @Value("${events.offset-flush-millis:1000}")
+    private long offsetFlushMillis;
+
+    private BsonTimestamp startedAt;
+    private BsonDocument resumeToken;
+    private BsonDocument savedToken;
+    private long lastFlush;
+    private volatile boolean running;
+    private Thread worker;
+
+    //init 方法: 在各索引于 ApplicationReadyEvent 全量构建之前记下集群时间，没有已保存的 token 时从这里开始监听，构建期间的写入不会漏掉。
+    @PostConstruct
+    public void init() {
+        if (nodeId == null || nodeId.isEmpty()) {
+            try {
+                nodeId = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException("events.node-id is not set and the host name is unavailable", e);
+            }
+        }
+        startedAt = clusterTime();
+        offsets().createIndex(Indexes.ascending("updatedAt"),                //已下线节点的记录保留 7 天后自动删除。
+                new IndexOptions().name("updatedAt_ttl").expireAfter(7L, TimeUnit.DAYS));
+        Document saved = offsets().find(Filters.eq("_id", nodeId)).first();
+        if (saved != null) {
+            resumeToken = BsonDocument.parse(saved.getString("token"));
+            savedToken = resumeToken;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        worker = Thread.ofPlatform().name("change-stream-events").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                watch();
+            } catch (MongoCommandException e) {
+                if (HISTORY_LOST.contains(e.getErrorCode())) {       //先记下集群时间再重建，下一次 watch 从这里开始，重建期间的写入会作为事件再送达一次（监听器幂等）。
+                    log.warn("Resume token for node {} is no longer in the oplog, rebuilding derived state", nodeId);
+                    resumeToken = null;
+                    startedAt = clusterTime();
+                    publish(new DomainEvent(DomainEvent.Type.RESYNC, null, null));
+                } else {
+                    log.warn("Change stream failed, retrying", e);
+                    pause();
+                }
+            } catch (RuntimeException e) {
+                log.warn("Change stream failed, retrying", e);
+                pause();
+            }
+        }
+        flush(true);
+    }
+
+    //watch 方法: tryNext 最多等待一秒，空闲时也能取到推进后的 resume token，并及时响应停机。
+    private void watch() {
+        List<Bson> pipeline = Collections.singletonList(Aggregates.match(Filters.and(
+                Filters.in("ns.coll", collection(Dish.class), collection(Canteen.class), collection(Review.class)),
+                Filters.in("operationType", "insert", "update", "replace", "delete"))));
+        ChangeStreamIterable<Document> stream = mongoTemplate.getDb().watch(pipeline)
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(1, TimeUnit.SECONDS);
+        if (resumeToken != null) {
+            stream = stream.resumeAfter(resumeToken);
+        } else if (startedAt != null) {
+            stream = stream.startAtOperationTime(startedAt);
+        }
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+            while (running) {
+                ChangeStreamDocument<Document> change = cursor.tryNext();
+                if (change != null) {
+                    DomainEvent event = toEvent(change);
+                    if (event != null) {
+                        publish(event);
+                    }
+                }
+                if (cursor.getResumeToken() != null) {
+                    resumeToken = cursor.getResumeToken();
+                }
+                flush(false);
+            }
+        }
+    }
+
+    private DomainEvent toEvent(ChangeStreamDocument<Document> change) {
+        String collection = change.getNamespace() == null ? null : change.getNamespace().getCollectionName();
+        String id = idOf(change.getDocumentKey() == null ? null : change.getDocumentKey().get("_id"));
+        OperationType operation = change.getOperationType();
+        Document document = change.getFullDocument();
+        boolean deleted = operation == OperationType.DELETE || document == null;   //更新后又被删除时 UPDATE_LOOKUP 取不到文档，按删除处理。
+        boolean created = operation == OperationType.INSERT;
+        if (collection(Dish.class).equals(collection)) {
+            return deleted ? new DomainEvent(DomainEvent.Type.DISH_DELETED, id, null)
+                    : new DomainEvent(created ? DomainEvent.Type.DISH_CREATED : DomainEvent.Type.DISH_UPDATED, id, read(Dish.class, document));
+        }
+        if (collection(Canteen.class).equals(collection)) {
+            return deleted ? new DomainEvent(DomainEvent.Type.CANTEEN_DELETED, id, null)
+                    : new DomainEvent(created ? DomainEvent.Type.CANTEEN_CREATED : DomainEvent.Type.CANTEEN_UPDATED, id, read(Canteen.class, document));
+        }
+        if (collection(Review.class).equals(collection) && created && !deleted) {       //评价只会新增；快照字段的批量更新不需要通知。
+            return new DomainEvent(DomainEvent.Type.REVIEW_CREATED, id, read(Review.class, document));
+        }
+        return null;
+    }
+
+    private void publish(DomainEvent event) {               //单个监听器失败不影响后续事件，派生状态会在下一次相关变更时被修正。
+        try {
+            publisher.publishEvent(event);
+        } catch (RuntimeException e) {
+            log.warn("Failed to apply domain event {}", event, e);
+        }
+    }
+
+    private void flush(boolean force) {
+        long now = System.currentTimeMillis();
+        if (resumeToken == null || resumeToken.equals(savedToken) || (!force && now - lastFlush < offsetFlushMillis)) {
+            return;
+        }
+        offsets().replaceOne(Filters.eq("_id", nodeId),
+                new Document("_id", nodeId).append("token", resumeToken.toJson()).append("updatedAt", new Date(now)),
+                new ReplaceOptions().upsert(true));
+        savedToken = resumeToken;
+        lastFlush = now;
+    }
+
+    private BsonTimestamp clusterTime() {
+        Document ping = mongoTemplate.getDb().runCommand(new Document("ping", 1));
+        BsonTimestamp operationTime = ping.get("operationTime", BsonTimestamp.class);
+        if (operationTime == null) {
+            throw new IllegalStateException("Change streams require a replica set or sharded cluster");
+        }
+        return operationTime;
+    }
+
+    private <T> T read(Class<T> type, Document document) {
+        return mongoTemplate.getConverter().read(type, document);
+    }
+
+    private String collection(Class<?> type) {
+        return mongoTemplate.getCollectionName(type);
+    }
+
+    private MongoCollection<Document> offsets() {
+        return mongoTemplate.getCollection(OFFSETS);
+    }
+
+    private static String idOf(BsonValue value) {
+        if (value == null) {
+            return null;
+        }
+        return value.isObjectId() ? value.asObjectId().getValue().toHexString() : value.asString().getValue();
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
+
+
+package com.example.canteenapp.events;                       //派生状态更新组件：按领域事件增量更新本节点内存中的缓存、索引和计数
+
+import com.example.canteenapp.cache.CatalogCache;
+import com.example.canteenapp.cache.CatalogCaches;
+import com.example.canteenapp.feed.RecentReviewFeed;
+import com.example.canteenapp.filter.DishFacetIndex;
+import com.example.canteenapp.menu.MenuCompiler;
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.ranking.DishRankingEngine;
+import com.example.canteenapp.search.CatalogSearchIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+@Component
+public class DerivedStateUpdater {
+
+    @Autowired
+    private CatalogCaches catalogCaches;
+
+    @Autowired
+    private CatalogSearchIndex catalogSearchIndex;
+
+    @Autowired
+    private DishFacetIndex dishFacetIndex;
+
+    @Autowired
+    private MenuCompiler menuCompiler;
+
+    @Autowired
+    private RecentReviewFeed recentReviewFeed;
+
+    @Autowired
+    private DishRankingEngine dishRankingEngine;
+
+    @EventListener
+    public void onDomainEvent(DomainEvent event) {
+        switch (event.getType()) {
+            case DISH_CREATED:
+            case DISH_UPDATED:
+                dishChanged(event.getDish());
+                break;
+            case DISH_DELETED:
+                dishDeleted(event.getId());
+                break;
+            case CANTEEN_CREATED:
+            case CANTEEN_UPDATED:
+                canteenChanged(event.getCanteen());
+                break;
+            case CANTEEN_DELETED:
+                catalogSearchIndex.removeCanteen(event.getId());
+                catalogCaches.canteens().invalidateLocal(event.getId());
+                catalogCaches.canteenList().invalidateLocal(CatalogCaches.ALL);
+                catalogCaches.dishesByCanteen().invalidateLocal(event.getId());
+                break;
+            case REVIEW_CREATED:
+                reviewCreated(event.getReview());
+                break;
+            case RESYNC:
+                resync();
+                break;
+            default:
+                break;
+        }
+    }
+
+    //只清除本节点的一级缓存：二级缓存由写入节点在写入时清除，这里再清除会与其他节点重复。
+    private void dishChanged(Dish dish) {
+        catalogCaches.dishes().invalidateLocal(dish.getId());
+        catalogCaches.dishes().invalidateLocal(CatalogCaches.ALL);
+        if (dish.getCanteenId() != null) {
+            catalogCaches.dishesByCanteen().invalidateLocal(dish.getCanteenId());
+        }
+        catalogSearchIndex.indexDish(dish);
+        dishFacetIndex.indexDish(dish);
+        menuCompiler.markDirty(dish.getCanteenId());
+    }
+
+    private void dishDeleted(String dishId) {               //删除事件不带文档，无法得知所属食堂，清除全部菜单缓存；筛选接口直接返回内存中的菜品，必须从两个索引中移除。
+        catalogSearchIndex.removeDish(dishId);
+        dishFacetIndex.remove(dishId);
+        catalogCaches.dishes().invalidateLocal(dishId);
+        catalogCaches.dishes().invalidateLocal(CatalogCaches.ALL);
+        catalogCaches.dishesByCanteen().invalidateAllLocal();
+        menuCompiler.markAllDirty();
+    }
+
+    private void canteenChanged(Canteen canteen) {
+        catalogCaches.canteens().invalidateLocal(canteen.getId());
+        catalogCaches.canteenList().invalidateLocal(CatalogCaches.ALL);
+        catalogSearchIndex.indexCanteen(canteen);
+        menuCompiler.markDirty(canteen.getId());
+    }
+
+    private void reviewCreated(Review review) {
+        List<Review> reviews = Collections.singletonList(review);
+        dishRankingEngine.recordReviews(reviews);
+        recentReviewFeed.publish(reviews);                   //按评价 ID 去重，本节点写入的评价不会重复推送。
+        menuCompiler.markDirty(review.getOwnerCanteenId());
+    }
+
+    //resync 方法: 丢失的变更可能涉及任何派生状态，全部从数据库重建：缓存清空，索引全量重建，排行榜计数器从最近一周的评价重放，已加载的最新评价缓冲区重新读取并补推缺失的评价。
+    private void resync() {
+        for (CatalogCache<?> cache : catalogCaches.all()) {
+            cache.invalidateAllLocal();
+        }
+        catalogSearchIndex.rebuild();
+        dishFacetIndex.rebuild();
+        dishRankingEngine.resync();
+        recentReviewFeed.resync();
+        menuCompiler.markAllDirty();
+    }
+}
@@ -0,0 +1,306 @@
+//以下是执行模式模块的代码示例，用于切换请求处理的线程模型：
+//这段代码演示了执行模式配置类，以及基于 ReactiveMongoTemplate 的响应式服务接口、服务实现类和控制器。通过一个配置项即可在平台线程、虚拟线程和响应式三种模式之间切换，便于对比压测。
+
+app.execution-mode=platform
+//application.properties 配置文件
+//app.execution-mode: platform 为默认的每请求一个平台线程；virtual 让 Tomcat 请求线程和 MVC 异步任务（如 NDJSON 流式输出）运行在虚拟线程上，现有控制器无需改动；
+//                    reactive 额外启用 /api/reactive/** 下的只读响应式接口，返回 Flux / Mono（列表以 NDJSON 流式输出），与阻塞接口共用目录缓存和快照补齐，可并行做同口径压测。
+//reactive 模式需要 spring-boot-starter-data-mongodb-reactive 依赖；virtual 模式需要 JDK 21 及以上。
+
+
+package com.example.canteenapp.config;                       //执行模式配置类
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Executors;
+
+@Configuration                                               //@Configuration: 标识该类为配置类。
+@ConditionalOnProperty(name = "app.execution-mode", havingValue = "virtual")
+public class VirtualThreadConfig {
+
+    @Bean                                                    //Tomcat 每个请求分配一个新的虚拟线程，等待 MongoDB I/O 时不再占用平台线程。
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean
+    public AsyncTaskExecutor virtualThreadTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean                                                    //StreamingResponseBody 等 MVC 异步处理同样运行在虚拟线程上。
+    public WebMvcConfigurer virtualThreadAsyncSupport(AsyncTaskExecutor virtualThreadTaskExecutor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(virtualThreadTaskExecutor);
+            }
+        };
+    }
+}
+
+
+package com.example.canteenapp.service;                      //响应式食堂服务接口
+
+import com.example.canteenapp.model.Canteen;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveCanteenService {
+
+    Flux<Canteen> getAllCanteens();
+
+    Mono<Canteen> getCanteenById(String id);
+}
+
+
+package com.example.canteenapp.service;                      //响应式菜品服务接口
+
+import com.example.canteenapp.model.Dish;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveDishService {
+
+    Flux<Dish> getAllDishes();
+
+    Mono<Dish> getDishById(String id);
+
+    Flux<Dish> getDishesByCanteenId(String canteenId);
+}
+
+
+package com.example.canteenapp.service;                      //响应式评价服务接口
+
+import com.example.canteenapp.model.Review;
+import reactor.core.publisher.Flux;
+
+public interface ReactiveReviewService {
+
+    Flux<Review> getReviewsByCanteenId(String canteenId, Integer limit);
+
+    Flux<Review> getReviewsByDishId(String dishId, Integer limit);
+}
+
+
+package com.example.canteenapp.service.impl;                 //响应式食堂服务实现类
+
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.service.CanteenService;
+import com.example.canteenapp.service.ReactiveCanteenService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@Service                                                     //标识该类为服务类，会被 Spring 容器管理。
+@ConditionalOnProperty(name = "app.execution-mode", havingValue = "reactive")
+public class ReactiveCanteenServiceImpl implements ReactiveCanteenService {
+
+    @Autowired
+    private CanteenService canteenService;
+
+    @Override
+    public Flux<Canteen> getAllCanteens() {                  //与阻塞接口走同一条目录缓存路径，未命中时的加载在 boundedElastic 线程上执行。
+        return Mono.fromCallable(canteenService::getAllCanteens)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(canteens -> canteens);
+    }
+
+    @Override
+    public Mono<Canteen> getCanteenById(String id) {
+        return Mono.fromCallable(() -> canteenService.getCanteenById(id))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
+
+
+package com.example.canteenapp.service.impl;                 //响应式菜品服务实现类
+
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.service.DishService;
+import com.example.canteenapp.service.ReactiveDishService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@Service
+@ConditionalOnProperty(name = "app.execution-mode", havingValue = "reactive")
+public class ReactiveDishServiceImpl implements ReactiveDishService {
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private DishService dishService;
+
+    @Override
+    public Flux<Dish> getAllDishes() {                       //阻塞接口同样不经缓存、直接读主节点，这里用响应式驱动逐条读出。
+        return reactiveMongoTemplate.findAll(Dish.class);
+    }
+
+    @Override
+    public Mono<Dish> getDishById(String id) {
+        return Mono.fromCallable(() -> dishService.getDishById(id))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Flux<Dish> getDishesByCanteenId(String canteenId) {      //经目录缓存读穿透（含食堂存在校验和快照补齐），与阻塞接口一致。
+        return Mono.fromCallable(() -> dishService.getDishesByCanteenId(canteenId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapIterable(dishes -> dishes);
+    }
+}
+
+
+package com.example.canteenapp.service.impl;                 //响应式评价服务实现类
+
+import com.example.canteenapp.exception.ResourceNotFoundException;
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.service.ReactiveReviewService;
+import com.example.canteenapp.service.ReferenceResolver;
+import com.example.canteenapp.util.Cursors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+@Service
+@ConditionalOnProperty(name = "app.execution-mode", havingValue = "reactive")
+public class ReactiveReviewServiceImpl implements ReactiveReviewService {
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
+    private static final int FILL_BATCH = 100;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private ReferenceResolver referenceResolver;
+
+    @Override
+    public Flux<Review> getReviewsByCanteenId(String canteenId, Integer limit) {
+        return requireExists(canteenId, Canteen.class, "Canteen not found with id: " + canteenId)
+                .thenMany(newest(Criteria.where("canteenId").is(canteenId), limit));
+    }
+
+    @Override
+    public Flux<Review> getReviewsByDishId(String dishId, Integer limit) {
+        return requireExists(dishId, Dish.class, "Dish not found with id: " + dishId)
+                .thenMany(newest(Criteria.where("dishId").is(dishId), limit));
+    }
+
+    private Flux<Review> newest(Criteria owner, Integer limit) {
+        return reactiveMongoTemplate.find(new Query(owner).with(NEWEST_FIRST).limit(Cursors.clampLimit(limit)), Review.class)
+                .buffer(FILL_BATCH)
+                .concatMap(this::fill)
+                .flatMapIterable(reviews -> reviews);
+    }
+
+    private Mono<List<Review>> fill(List<Review> reviews) {    //与阻塞接口一样为缺少快照的旧评价批量补齐，ReferenceResolver 是阻塞调用，放到 boundedElastic 线程上。
+        return Mono.fromCallable(() -> {
+            referenceResolver.fillReviews(reviews);
+            return reviews;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Flux<Void> requireExists(String id, Class<?> type, String message) {
+        return reactiveMongoTemplate.exists(Query.query(Criteria.where("id").is(id)), type)
+                .flatMapMany(exists -> exists ? Flux.<Void>empty() : Flux.error(new ResourceNotFoundException(message)));
+    }
+}
+//响应式服务只覆盖读接口；评价写入已经由异步写入管道完成，请求线程不会等待数据库。
+//为了与阻塞接口做同口径压测，食堂和菜品读取复用同一套目录缓存服务，评价读取同样做快照批量补齐；两种模式的差别只在线程模型和输出方式上。
+
+
+package com.example.canteenapp.controller;                   //响应式控制器：Spring MVC 直接订阅 Flux / Mono，Flux 接口以 application/x-ndjson 逐条流式输出，不会先在内存中收集成完整列表
+
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.service.ReactiveCanteenService;
+import com.example.canteenapp.service.ReactiveDishService;
+import com.example.canteenapp.service.ReactiveReviewService;
+import com.example.canteenapp.util.Ndjson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RestController                                              //标识该类为 RESTful 风格的控制器。
+@RequestMapping("/api/reactive")                             //设置该控制器的根路径为 /api/reactive。
+@ConditionalOnProperty(name = "app.execution-mode", havingValue = "reactive")
+public class ReactiveCatalogController {
+
+    @Autowired
+    private ReactiveCanteenService reactiveCanteenService;
+
+    @Autowired
+    private ReactiveDishService reactiveDishService;
+
+    @Autowired
+    private ReactiveReviewService reactiveReviewService;
+
+    @GetMapping(value = "/canteens", produces = Ndjson.MEDIA_TYPE) //对应 GET /api/canteens。
+    public Flux<Canteen> getAllCanteens() {
+        return reactiveCanteenService.getAllCanteens();
+    }
+
+    @GetMapping("/canteens/{id}")                            //对应 GET /api/canteens/{id}。
+    public Mono<Canteen> getCanteenById(@PathVariable String id) {
+        return reactiveCanteenService.getCanteenById(id);
+    }
+
+    @GetMapping(value = "/dishes", produces = Ndjson.MEDIA_TYPE) //对应 GET /api/dishes。
+    public Flux<Dish> getAllDishes() {
+        return reactiveDishService.getAllDishes();
+    }
+
+    @GetMapping("/dishes/{id}")                              //对应 GET /api/dishes/{id}。
+    public Mono<Dish> getDishById(@PathVariable String id) {
+        return reactiveDishService.getDishById(id);
+    }
+
+    @GetMapping(value = "/dishes/canteen/{canteenId}", produces = Ndjson.MEDIA_TYPE) //对应 GET /api/dishes/canteen/{canteenId}。
+    public Flux<Dish> getDishesByCanteenId(@PathVariable String canteenId) {
+        return reactiveDishService.getDishesByCanteenId(canteenId);
+    }
+
+    @GetMapping(value = "/reviews/canteen/{canteenId}", produces = Ndjson.MEDIA_TYPE) //获取食堂最新评价，请求路径为 /api/reactive/reviews/canteen/{canteenId}?limit={limit}。
+    public Flux<Review> getReviewsByCanteenId(@PathVariable String canteenId,
+                                              @RequestParam(required = false) Integer limit) {
+        return reactiveReviewService.getReviewsByCanteenId(canteenId, limit);
+    }
+
+    @GetMapping(value = "/reviews/dish/{dishId}", produces = Ndjson.MEDIA_TYPE) //获取菜品最新评价，请求路径为 /api/reactive/reviews/dish/{dishId}?limit={limit}。
+    public Flux<Review> getReviewsByDishId(@PathVariable String dishId,
+                                           @RequestParam(required = false) Integer limit) {
+        return reactiveReviewService.getReviewsByDishId(dishId, limit);
+    }
+}
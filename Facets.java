@@ -0,0 +1,519 @@
+//以下是菜品筛选模块的代码示例，按价格区间、标签、食堂和评分筛选菜品，并返回各筛选项的计数：
+//这段代码演示了筛选条件类、筛选结果类、内存分面索引和索引组件。每个标签和食堂对应一个位图，价格保存为按价格排序的数组，筛选只做位运算和二分查找，不访问数据库；
+//菜品新增或导入时增量更新，评分定期从评分汇总表刷新。
+
+facet.rating-refresh-seconds=60
+//application.properties 配置文件
+//facet.rating-refresh-seconds: 从 rating_summaries 集合刷新菜品平均分的间隔（秒），评分下限筛选和按评分排序使用该数据。
+
+
+package com.example.canteenapp.model;                        //筛选条件类，对应 /api/dishes/filter 的查询参数
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+public class DishFilter {
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private List<String> tags;                               //必须同时包含的标签
+    private List<String> excludeTags;                        //不能包含的标签
+    private List<String> canteenIds;                         //属于其中任意一个食堂
+    private Double minRating;                                //平均分下限，没有评价的菜品不满足任何下限
+    private String sort;                                     //price_asc、price_desc 或 rating_desc（默认）
+    private Integer offset;
+    private Integer limit;
+}
+
+
+package com.example.canteenapp.model;                        //筛选结果类
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class FacetResult {
+    private long total;                                      //满足条件的菜品总数
+    private List<Dish> items;                                //当前页的菜品
+    private Map<String, Long> tags;                          //结果中每个标签的菜品数，用于继续缩小范围
+    private Map<String, Long> canteens;                      //每个食堂的菜品数，不受食堂条件本身限制，用于切换或追加食堂
+    private BigDecimal minPrice;                             //结果中的最低价
+    private BigDecimal maxPrice;                             //结果中的最高价
+}
+
+
+package com.example.canteenapp.filter;                       //分面索引：菜品按内部序号存放，标签和食堂各对应一个位图，价格按序号存放并维护按价格排序的序号数组
+
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishFilter;
+import com.example.canteenapp.model.FacetResult;
+import com.example.canteenapp.util.Cursors;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class FacetIndex {
+
+    private static final int SORT_RATING = 0;
+    private static final int SORT_PRICE_ASC = 1;
+    private static final int SORT_PRICE_DESC = 2;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Dish> docs = new ArrayList<>();
+    private final Map<String, Integer> docIds = new HashMap<>();
+    private final Map<String, BitSet> tagBits = new HashMap<>();
+    private final Map<String, BitSet> canteenBits = new HashMap<>();
+    private final BitSet alive = new BitSet();               //未被删除的序号；删除的菜品保留序号（不再复用），下次全量重建时回收。
+    private long[] prices = new long[1024];                  //单位：分
+    private float[] ratings = new float[1024];
+    private int[] priceOrder = new int[0];                   //按价格升序排列的序号，价格变化后在下次查询时重建
+    private boolean priceOrderDirty;
+
+    public void put(Dish dish) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = docIds.get(dish.getId());
+            int doc;
+            if (existing != null) {
+                doc = existing;
+                clearBits(doc);
+                docs.set(doc, dish);
+            } else {
+                doc = docs.size();
+                docs.add(dish);
+                docIds.put(dish.getId(), doc);
+                ensureCapacity(doc + 1);
+            }
+            if (dish.getTags() != null) {
+                for (String tag : dish.getTags()) {
+                    tagBits.computeIfAbsent(tag, k -> new BitSet()).set(doc);
+                }
+            }
+            if (dish.getCanteenId() != null) {
+                canteenBits.computeIfAbsent(dish.getCanteenId(), k -> new BitSet()).set(doc);
+            }
+            alive.set(doc);
+            long cents = cents(dish.getPrice());
+            if (existing == null || prices[doc] != cents) {
+                prices[doc] = cents;
+                priceOrderDirty = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = docIds.remove(id);
+            if (doc != null) {
+                clearBits(doc);
+                alive.clear(doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void setRatings(Map<String, Double> averages) {   //没有出现在 averages 中的菜品视为没有评价。
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(ratings, 0f);
+            averages.forEach((id, average) -> {
+                Integer doc = docIds.get(id);
+                if (doc != null) {
+                    ratings[doc] = average.floatValue();
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public FacetResult query(DishFilter filter) {
+        lock.readLock().lock();
+        if (priceOrderDirty) {                               //在写锁下重排后直接降级为读锁，检查和查询之间不会漏掉并发的 put。
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                sortByPrice();
+                lock.readLock().lock();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        try {
+            int size = docs.size();
+            BitSet base = priceRange(filter.getMinPrice(), filter.getMaxPrice());
+            if (filter.getMinRating() != null) {
+                float floor = filter.getMinRating().floatValue();
+                for (int doc = base.nextSetBit(0); doc >= 0; doc = base.nextSetBit(doc + 1)) {
+                    if (ratings[doc] == 0f || ratings[doc] < floor) {
+                        base.clear(doc);
+                    }
+                }
+            }
+            if (filter.getTags() != null) {
+                for (String tag : filter.getTags()) {
+                    base.and(tagBits.getOrDefault(tag, new BitSet()));
+                }
+            }
+            if (filter.getExcludeTags() != null) {
+                for (String tag : filter.getExcludeTags()) {
+                    BitSet bits = tagBits.get(tag);
+                    if (bits != null) {
+                        base.andNot(bits);
+                    }
+                }
+            }
+
+            BitSet result = base;
+            if (filter.getCanteenIds() != null && !filter.getCanteenIds().isEmpty()) {
+                BitSet canteens = new BitSet(size);
+                for (String canteenId : filter.getCanteenIds()) {
+                    BitSet bits = canteenBits.get(canteenId);
+                    if (bits != null) {
+                        canteens.or(bits);
+                    }
+                }
+                result = (BitSet) base.clone();
+                result.and(canteens);
+            }
+
+            FacetResult facets = new FacetResult();
+            facets.setTotal(result.cardinality());
+            facets.setTags(counts(tagBits, result));
+            facets.setCanteens(counts(canteenBits, base));     //食堂计数基于除食堂外的其他条件，选中一个食堂后仍能看到其他食堂的数量。
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            int[] matched = new int[(int) facets.getTotal()];
+            int n = 0;
+            for (int doc = result.nextSetBit(0); doc >= 0; doc = result.nextSetBit(doc + 1)) {
+                matched[n++] = doc;
+                min = Math.min(min, prices[doc]);
+                max = Math.max(max, prices[doc]);
+            }
+            if (n > 0) {
+                facets.setMinPrice(BigDecimal.valueOf(min, 2));
+                facets.setMaxPrice(BigDecimal.valueOf(max, 2));
+            }
+            facets.setItems(page(matched, filter));
+            return facets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //page 方法: 只保留排序后的前 offset + limit 个序号，用 int 数组上的大顶堆（堆顶是已保留中排在最后的）选出，再原地堆排序，不装箱也不对全部匹配结果排序。
+    private List<Dish> page(int[] matched, DishFilter filter) {
+        int sort = "price_asc".equals(filter.getSort()) ? SORT_PRICE_ASC
+                : "price_desc".equals(filter.getSort()) ? SORT_PRICE_DESC : SORT_RATING;
+        int offset = filter.getOffset() == null ? 0 : Math.max(0, filter.getOffset());
+        int limit = Cursors.clampLimit(filter.getLimit());
+        int k = (int) Math.min((long) offset + limit, matched.length);
+        List<Dish> items = new ArrayList<>(Math.max(0, k - offset));
+        if (k <= offset) {
+            return items;
+        }
+        int[] heap = new int[k];
+        int size = 0;
+        for (int doc : matched) {
+            if (size < k) {
+                heap[size] = doc;
+                siftUp(heap, size++, sort);
+            } else if (compare(doc, heap[0], sort) < 0) {
+                heap[0] = doc;
+                siftDown(heap, k, sort);
+            }
+        }
+        for (int end = size - 1; end > 0; end--) {
+            int top = heap[0];
+            heap[0] = heap[end];
+            heap[end] = top;
+            siftDown(heap, end, sort);
+        }
+        for (int i = offset; i < size; i++) {
+            items.add(docs.get(heap[i]));
+        }
+        return items;
+    }
+
+    private int compare(int a, int b, int sort) {            //a 排在 b 之前时返回负数，分数相同时按菜品 ID 排序，分页结果稳定。
+        int order;
+        if (sort == SORT_PRICE_ASC) {
+            order = Long.compare(prices[a], prices[b]);
+        } else if (sort == SORT_PRICE_DESC) {
+            order = Long.compare(prices[b], prices[a]);
+        } else {
+            order = Float.compare(ratings[b], ratings[a]);
+        }
+        return order != 0 ? order : docs.get(a).getId().compareTo(docs.get(b).getId());
+    }
+
+    private void siftUp(int[] heap, int i, int sort) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compare(heap[i], heap[parent], sort) <= 0) {
+                return;
+            }
+            int tmp = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = tmp;
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size, int sort) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && compare(heap[child + 1], heap[child], sort) > 0) {
+                child++;
+            }
+            if (compare(heap[child], heap[i], sort) <= 0) {
+                return;
+            }
+            int tmp = heap[i];
+            heap[i] = heap[child];
+            heap[child] = tmp;
+            i = child;
+        }
+    }
+
+    //priceRange 方法: 在按价格排序的序号数组上二分查找区间两端，把区间内的序号置位；没有价格条件时返回全部菜品。
+    private BitSet priceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        if (minPrice == null && maxPrice == null) {
+            return (BitSet) alive.clone();
+        }
+        BitSet bits = new BitSet(docs.size());
+        long low = minPrice == null ? Long.MIN_VALUE : cents(minPrice);
+        long high = maxPrice == null ? Long.MAX_VALUE : cents(maxPrice);
+        for (int i = lowerBound(low); i < priceOrder.length && prices[priceOrder[i]] <= high; i++) {
+            bits.set(priceOrder[i]);
+        }
+        bits.and(alive);
+        return bits;
+    }
+
+    private int lowerBound(long cents) {
+        int lo = 0;
+        int hi = priceOrder.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prices[priceOrder[mid]] < cents) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    //sortByPrice 方法: 批量导入时每道菜都会触发一次 put，排序推迟到查询时一次完成；价格（高 32 位）和序号（低 32 位）打包成 long 排序，不装箱。
+    private void sortByPrice() {                             //调用方持有写锁。超出 int 范围（两千多万元）的价格按边界值参与排序。
+        if (!priceOrderDirty) {
+            return;
+        }
+        int size = docs.size();
+        long[] keys = new long[size];
+        for (int doc = 0; doc < size; doc++) {
+            long price = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, prices[doc]));
+            keys[doc] = (price << 32) | doc;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+        }
+        priceOrder = order;
+        priceOrderDirty = false;
+    }
+
+    private static Map<String, Long> counts(Map<String, BitSet> facets, BitSet within) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        facets.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), (long) intersectionSize(entry.getValue(), within)))
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> counts.put(entry.getKey(), entry.getValue()));
+        return counts;
+    }
+
+    private static int intersectionSize(BitSet a, BitSet b) {   //遍历 a 的置位并检查 b，不复制位图；所有分面的总开销与各标签、食堂的菜品数之和成正比。
+        int size = 0;
+        for (int doc = a.nextSetBit(0); doc >= 0; doc = a.nextSetBit(doc + 1)) {
+            if (b.get(doc)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private void clearBits(int doc) {
+        Dish old = docs.get(doc);
+        if (old.getTags() != null) {
+            for (String tag : old.getTags()) {
+                BitSet bits = tagBits.get(tag);
+                if (bits != null) {
+                    bits.clear(doc);
+                }
+            }
+        }
+        if (old.getCanteenId() != null && canteenBits.containsKey(old.getCanteenId())) {
+            canteenBits.get(old.getCanteenId()).clear(doc);
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > prices.length) {
+            int capacity = Math.max(size, prices.length * 2);
+            prices = Arrays.copyOf(prices, capacity);
+            ratings = Arrays.copyOf(ratings, capacity);
+        }
+    }
+
+    private static long cents(BigDecimal price) {
+        return price == null ? 0 : price.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+}
+
+
+package com.example.canteenapp.filter;                       //菜品分面索引组件：启动时全量构建，菜品变更时增量更新，定期刷新评分
+
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishFilter;
+import com.example.canteenapp.model.FacetResult;
+import com.example.canteenapp.model.RatingSummary;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+@Component                                                   //标识该类为 Spring 组件，会被 Spring 容器管理。
+public class DishFacetIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(DishFacetIndex.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${facet.rating-refresh-seconds:60}")
+    private long ratingRefreshSeconds;
+
+    private final Object swapLock = new Object();            //与 CatalogSearchIndex 相同：保护索引替换和 pending。
+    private volatile FacetIndex index = new FacetIndex();
+    private List<Consumer<FacetIndex>> pending;              //全量构建期间的增量更新，替换前应用到新索引。
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dish-facet-ratings");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void start() {
+        refresher.scheduleWithFixedDelay(this::refreshRatings, ratingRefreshSeconds, ratingRefreshSeconds, TimeUnit.SECONDS);
+    }
+
+    //rebuild 方法: 与搜索索引相同，启动完成后用数据库游标全量构建，构建期间的增量更新记入 pending，替换前按顺序应用到新索引；领域事件要求重建时也调用此方法。
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        synchronized (swapLock) {
+            pending = new ArrayList<>();
+        }
+        try {
+            FacetIndex rebuilt = new FacetIndex();
+            try (Stream<Dish> stream = mongoTemplate.stream(new Query(), Dish.class)) {
+                stream.forEach(rebuilt::put);
+            }
+            rebuilt.setRatings(loadRatings());
+            synchronized (swapLock) {
+                pending.forEach(update -> update.accept(rebuilt));
+                index = rebuilt;
+            }
+        } finally {
+            synchronized (swapLock) {
+                pending = null;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        refresher.shutdownNow();
+    }
+
+    public void indexDish(Dish dish) {
+        apply(target -> target.put(dish));
+    }
+
+    public void remove(String dishId) {
+        apply(target -> target.remove(dishId));
+    }
+
+    private void apply(Consumer<FacetIndex> update) {
+        synchronized (swapLock) {
+            update.accept(index);
+            if (pending != null) {
+                pending.add(update);
+            }
+        }
+    }
+
+    public FacetResult filter(DishFilter filter) {
+        return index.query(filter);
+    }
+
+    private void refreshRatings() {                          //异常不能抛出 scheduleWithFixedDelay 的任务，否则之后的刷新会全部被取消。
+        try {
+            index.setRatings(loadRatings());
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh dish facet ratings, keeping previous ratings", e);
+        }
+    }
+
+    private Map<String, Double> loadRatings() {
+        Query query = new Query(Criteria.where("targetType").is(RatingSummary.TARGET_DISH).and("count").gt(0));
+        query.fields().include("targetId", "count", "sum");
+        Map<String, Double> averages = new HashMap<>();
+        try (Stream<RatingSummary> stream = mongoTemplate.stream(query, RatingSummary.class)) {
+            stream.forEach(summary -> averages.put(summary.getTargetId(), summary.getAverage()));
+        }
+        return averages;
+    }
+}
@@ -0,0 +1,396 @@
+//以下是食堂最新评价模块的代码示例，用内存环形缓冲区保存每个食堂最近的评价，并通过 SSE 实时推送新评价：
+//这段代码演示了环形缓冲区、最新评价组件和 ReviewController 中新增的两个接口。新评价写入数据库后由 ReviewServiceImpl.saveReviews 放入所属食堂的缓冲区，
+//读取最新评价只访问内存；订阅连接由 Servlet 异步请求承载，空闲连接不占用线程，推送时每条评价只序列化一次，再由虚拟线程按订阅者顺序写出。
+
+server.tomcat.max-connections=10000
+review.feed.size=50
+review.feed.max-subscribers=8000
+review.feed.subscriber-buffer=64
+review.feed.timeout-minutes=30
+review.feed.heartbeat-seconds=20
+//application.properties 配置文件
+//review.feed.size: 每个食堂保留的最新评价条数，也是最新评价接口 limit 参数的上限。
+//server.tomcat.max-connections: Tomcat 同时保持的连接数上限（默认 8192），每个订阅连接都占用一个。
+//review.feed.max-subscribers: 本节点同时保持的订阅连接上限，超出时返回 429；必须小于 server.tomcat.max-connections，
+//                             否则连接数先达到 Tomcat 上限，新连接在 accept 队列中等待而不是收到 429，预留的 2000 个连接留给普通请求。
+//review.feed.subscriber-buffer: 每个订阅者待发送事件的队列长度；客户端读取过慢导致队列写满时断开该连接，客户端重连时携带 Last-Event-ID 补发缺失的评价。
+//review.feed.timeout-minutes: 订阅连接的最长保持时间，到期后由客户端（EventSource）自动重连。
+//review.feed.heartbeat-seconds: 心跳间隔，防止代理因连接空闲而断开，同时及时发现已断开的客户端。
+//多节点部署时每个节点只推送本节点写入的评价；跨节点的事件分发见后续的领域事件总线。
+
+
+package com.example.canteenapp.feed;                         //环形缓冲区：保存一个食堂最近的若干条评价
+
+import com.example.canteenapp.model.Review;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+final class ReviewRing {
+
+    private static final Comparator<Review> OLDEST_FIRST = Comparator.comparing(Review::getCreatedAt,
+            Comparator.nullsFirst(Comparator.naturalOrder())).thenComparing(Review::getId);
+
+    private final Review[] items;
+    private final Object loadLock = new Object();
+    private volatile boolean loaded;
+    private int next;                                        //下一条评价写入的位置
+    private int count;
+
+    ReviewRing(int capacity) {
+        this.items = new Review[capacity];
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    //load 方法: 缓冲区先创建再查询数据库，查询期间发布的评价已直接写入缓冲区，查询结果与之合并去重，两边都不会丢失。
+    void load(Supplier<List<Review>> loader) {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (!loaded) {
+                merge(loader.get());
+                loaded = true;
+            }
+        }
+    }
+
+    //merge 方法: 合并后按创建时间保留最新的若干条，返回合并前不在缓冲区中、合并后被保留的评价（旧的在前）。
+    synchronized List<Review> merge(List<Review> recent) {
+        Map<String, Review> byId = new LinkedHashMap<>();
+        recent.forEach(review -> byId.put(review.getId(), review));
+        Set<String> present = new HashSet<>();
+        for (Review review : newestFirst(count)) {
+            byId.put(review.getId(), review);
+            present.add(review.getId());
+        }
+        List<Review> merged = new ArrayList<>(byId.values());
+        merged.sort(OLDEST_FIRST);
+        List<Review> kept = merged.subList(Math.max(0, merged.size() - items.length), merged.size());
+        Arrays.fill(items, null);
+        for (int i = 0; i < kept.size(); i++) {
+            items[i] = kept.get(i);
+        }
+        count = kept.size();
+        next = count % items.length;
+        List<Review> added = new ArrayList<>();
+        for (Review review : kept) {
+            if (!present.contains(review.getId())) {
+                added.add(review);
+            }
+        }
+        return added;
+    }
+
+    synchronized boolean add(Review review) {               //按 ID 去重：初次加载与实时写入可能包含同一条评价。
+        for (int i = 0; i < count; i++) {
+            if (items[i].getId().equals(review.getId())) {
+                return false;
+            }
+        }
+        items[next] = review;
+        next = (next + 1) % items.length;
+        count = Math.min(count + 1, items.length);
+        return true;
+    }
+
+    synchronized List<Review> newestFirst(int limit) {
+        int size = Math.min(limit, count);
+        List<Review> result = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            result.add(items[Math.floorMod(next - i, items.length)]);
+        }
+        return result;
+    }
+
+    synchronized List<Review> after(String id) {             //返回 id 之后写入的评价（旧的在前）；id 已被覆盖时返回全部。
+        List<Review> result = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Review review = items[Math.floorMod(next - i, items.length)];
+            if (review.getId().equals(id)) {
+                break;
+            }
+            result.add(0, review);
+        }
+        return result;
+    }
+}
+
+
+package com.example.canteenapp.feed;                         //最新评价组件：维护各食堂的环形缓冲区和 SSE 订阅者
+
+import com.example.canteenapp.exception.ResourceNotFoundException;
+import com.example.canteenapp.exception.TooManyRequestsException;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.repository.CanteenRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+public class RecentReviewFeed {
+
+    private static final Event HEARTBEAT = new Event(null, null);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CanteenRepository canteenRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${review.feed.size:50}")
+    private int size;
+
+    @Value("${review.feed.max-subscribers:8000}")
+    private int maxSubscribers;
+
+    @Value("${review.feed.subscriber-buffer:64}")
+    private int subscriberBuffer;
+
+    @Value("${review.feed.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    @Value("${review.feed.heartbeat-seconds:20}")
+    private long heartbeatSeconds;
+
+    private final Map<String, ReviewRing> rings = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+    private ScheduledExecutorService heartbeat;
+
+    @PostConstruct
+    public void start() {
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "review-feed-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(() -> subscribers.values().forEach(set -> set.forEach(s -> s.offer(HEARTBEAT))),
+                heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        heartbeat.shutdownNow();
+        subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+        sender.shutdown();
+    }
+
+    //latest 方法: 食堂的缓冲区在首次访问时从主节点加载一次（同时校验食堂存在），之后只读内存。
+    public List<Review> latest(String canteenId, Integer limit) {
+        int count = limit == null ? size : Math.max(1, Math.min(limit, size));
+        return ring(canteenId).newestFirst(count);
+    }
+
+    //publish 方法: 由 ReviewServiceImpl.saveReviews 在评价写入后调用，按归属食堂放入缓冲区并推送给该食堂的订阅者。
+    //缓冲区不存在时不必创建：评价已写入主节点，之后创建缓冲区时的加载查询一定能读到它；缓冲区已创建但仍在加载时直接写入，由 load 合并。
+    //写入缓冲区和推送在缓冲区锁内完成，与 subscribe 的补发互斥，同一条评价不会既被补发又被实时推送。
+    public void publish(List<Review> reviews) {
+        for (Review review : reviews) {
+            String canteenId = review.getOwnerCanteenId();
+            if (canteenId == null) {
+                continue;
+            }
+            ReviewRing ring = rings.get(canteenId);
+            if (ring == null) {                               //订阅者总是先创建缓冲区，没有缓冲区也就没有订阅者。
+                continue;
+            }
+            synchronized (ring) {
+                if (!ring.add(review)) {
+                    continue;
+                }
+                Set<Subscriber> listeners = subscribers.get(canteenId);
+                if (listeners != null && !listeners.isEmpty()) {
+                    Event event = toEvent(review);
+                    listeners.forEach(subscriber -> subscriber.offer(event));
+                }
+            }
+        }
+    }
+
+    //resync 方法: 领域事件要求重建时调用（变更流历史丢失，其他节点的评价没有送达），重新从主节点读取已加载的缓冲区，补推缺失的评价。
+    public void resync() {
+        rings.forEach((canteenId, ring) -> {
+            if (!ring.isLoaded()) {
+                return;
+            }
+            List<Review> recent = loadRecent(canteenId);
+            synchronized (ring) {
+                List<Review> missed = ring.merge(recent);
+                Set<Subscriber> listeners = subscribers.get(canteenId);
+                if (listeners != null && !listeners.isEmpty()) {
+                    for (Review review : missed) {
+                        Event event = toEvent(review);
+                        listeners.forEach(subscriber -> subscriber.offer(event));
+                    }
+                }
+            }
+        });
+    }
+
+    //subscribe 方法: 建立订阅连接；携带 Last-Event-ID 重连时先补发缓冲区中该评价之后的评价。
+    //补发事件入队和注册订阅者在缓冲区锁内一起完成：之前发布的评价只出现在补发中，之后发布的只出现在实时推送中，顺序与缓冲区一致。
+    public SseEmitter subscribe(String canteenId, String lastEventId) {
+        ReviewRing ring = ring(canteenId);
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new TooManyRequestsException("Too many feed subscribers, please retry later");
+        }
+        SseEmitter emitter = new SseEmitter(Duration.ofMinutes(timeoutMinutes).toMillis());
+        Subscriber subscriber = new Subscriber(canteenId, emitter);
+        emitter.onCompletion(subscriber::remove);
+        emitter.onTimeout(subscriber::remove);
+        emitter.onError(e -> subscriber.remove());
+        synchronized (ring) {
+            if (lastEventId != null && !lastEventId.isEmpty()) {
+                for (Review review : ring.after(lastEventId)) {
+                    subscriber.offer(toEvent(review));
+                }
+            }
+            subscribers.computeIfAbsent(canteenId, k -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        }
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    //ring 方法: computeIfAbsent 只创建空缓冲区，不在映射的锁内访问数据库；加载在缓冲区自己的锁内完成，并发的首次读取等待同一次加载。
+    private ReviewRing ring(String canteenId) {
+        ReviewRing ring = rings.get(canteenId);
+        if (ring != null && ring.isLoaded()) {
+            return ring;
+        }
+        if (ring == null && !canteenRepository.existsById(canteenId)) {
+            throw new ResourceNotFoundException("Canteen not found with id: " + canteenId);
+        }
+        ring = rings.computeIfAbsent(canteenId, k -> new ReviewRing(size));
+        ring.load(() -> loadRecent(canteenId));
+        return ring;
+    }
+
+    //loadRecent 方法: 读主节点，从节点落后时刚写入的评价会永久缺失（publish 此时尚无缓冲区可写）。
+    private List<Review> loadRecent(String canteenId) {
+        Query query = new Query(new Criteria().orOperator(            //尚未回填 ownerCanteenId 的旧食堂评价通过 canteenId 匹配。
+                Criteria.where("ownerCanteenId").is(canteenId), Criteria.where("canteenId").is(canteenId)))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt", "id"))
+                .limit(size);
+        return mongoTemplate.find(query, Review.class);
+    }
+
+    private Event toEvent(Review review) {
+        try {
+            return new Event(review.getId(), objectMapper.writeValueAsString(review));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize review " + review.getId(), e);
+        }
+    }
+
+    private static final class Event {
+
+        private final String id;
+        private final String json;
+
+        Event(String id, String json) {
+            this.id = id;
+            this.json = json;
+        }
+    }
+
+    //Subscriber: 每个订阅者一个有界队列，同一时刻最多一个虚拟线程在写出该队列，保证事件顺序，慢客户端不会阻塞发布线程和其他订阅者。
+    private final class Subscriber {
+
+        private final String canteenId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(subscriberBuffer);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean removed = new AtomicBoolean();
+
+        Subscriber(String canteenId, SseEmitter emitter) {
+            this.canteenId = canteenId;
+            this.emitter = emitter;
+        }
+
+        void offer(Event event) {
+            if (!queue.offer(event)) {
+                emitter.complete();
+                remove();
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                Event event;
+                while ((event = queue.poll()) != null) {
+                    if (event == HEARTBEAT) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        emitter.send(SseEmitter.event().id(event.id).name("review").data(event.json, MediaType.APPLICATION_JSON));
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                remove();
+                return;
+            } finally {
+                draining.set(false);
+            }
+            if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        void remove() {
+            if (removed.compareAndSet(false, true)) {
+                Set<Subscriber> set = subscribers.get(canteenId);
+                if (set != null) {
+                    set.remove(this);
+                }
+                subscriberCount.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,433 @@
+//以下是请求限流模块的代码示例，限制单个用户和 IP 的评价发布频率与登录尝试次数，并拦截重复评价：
+//这段代码演示了滑动窗口限流器、重复评价检测器、共享计数接口及其内存实现、限流组件和统计控制器。计数保存在进程内存中，每个 key 的状态压缩在一个 AtomicLong 里用 CAS 更新，
+//被拒绝的请求只做一次内存读取，不访问数据库、不执行 bcrypt；多节点部署时可注册一个 Redis 实现的 RateLimitBackend，在本节点放行后再按全局计数判断。
+
+governor.enabled=true
+governor.review.window-seconds=60
+governor.review.per-user=5
+governor.review.per-ip=30
+governor.login.window-seconds=300
+governor.login.per-ip=20
+governor.login.per-username=5
+governor.duplicate.window-hours=24
+governor.max-keys=200000
+governor.shared-backend=none
+server.forward-headers-strategy=native
+//application.properties 配置文件
+//governor.enabled: 是否启用限流和重复评价拦截；压测环境（bench profile）关闭，见 Benchmarks.java。
+//governor.review.*: 每个窗口内单个用户 / 单个 IP 最多发布的评价数，超出返回 429。
+//governor.login.*: 每个窗口内单个 IP / 单个用户名最多的登录尝试次数，超出返回 429，在密码校验之前拒绝，撞库请求不会占用密码哈希线程池。
+//governor.duplicate.window-hours: 同一用户对同一菜品（或食堂）在该时间内只能发表一条评价，重复提交返回 409。
+//governor.max-keys: 每个限流器最多跟踪的 key 数量，超出后淘汰最久未访问的 key，内存占用有上限。
+//governor.shared-backend: 共享计数存储，none 表示只按本节点计数，memory 使用进程内实现（测试用）；多节点部署时注册一个 Redis 实现的 RateLimitBackend Bean 即可。
+//server.forward-headers-strategy=native: 部署在反向代理之后时按 X-Forwarded-For 取客户端 IP，否则所有请求都会被算作代理的 IP。
+
+//滑动窗口算法：
+//每个 key 只保存当前窗口和上一个窗口的计数，估算值 = 上一窗口计数 × 上一窗口在滑动窗口内的剩余比例 + 当前窗口计数。
+//与保存每次请求时间戳的精确算法相比，每个 key 只占一个 long，误差只出现在窗口交界处，且偏向少放行。
+
+
+package com.example.canteenapp.exception;                    //冲突异常：重复提交时抛出，返回 409
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ConflictException extends RuntimeException {
+
+    public ConflictException(String message) {
+        super(message);
+    }
+}
+
+
+package com.example.canteenapp.governor;                     //共享计数接口：按 Redis 的 INCR + EXPIRE / GET / SET NX EX / DEL 语义定义
+
+import java.time.Duration;
+
+public interface RateLimitBackend {
+
+    long increment(String key, Duration ttl);                //key 不存在时从 0 开始并设置过期时间。
+
+    long get(String key);                                    //key 不存在时返回 0。
+
+    boolean setIfAbsent(String key, Duration ttl);
+
+    void delete(String key);
+}
+
+
+package com.example.canteenapp.governor;                     //共享计数的内存实现：单节点部署和测试时使用，多节点部署时替换为 Redis 实现
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryRateLimitBackend implements RateLimitBackend {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public long increment(String key, Duration ttl) {
+        long now = System.currentTimeMillis();
+        return entries.compute(key, (k, entry) -> entry == null || entry.expiresAt < now
+                ? new Entry(1, now + ttl.toMillis())
+                : new Entry(entry.value + 1, entry.expiresAt)).value;
+    }
+
+    @Override
+    public long get(String key) {
+        Entry entry = entries.get(key);
+        return entry == null || entry.expiresAt < System.currentTimeMillis() ? 0 : entry.value;
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, Duration ttl) {
+        long now = System.currentTimeMillis();
+        Entry created = new Entry(1, now + ttl.toMillis());
+        return entries.compute(key, (k, entry) -> entry == null || entry.expiresAt < now ? created : entry) == created;
+    }
+
+    @Override
+    public void delete(String key) {
+        entries.remove(key);
+    }
+
+    private static final class Entry {
+
+        private final long value;
+        private final long expiresAt;
+
+        Entry(long value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
+
+
+package com.example.canteenapp.governor;                     //滑动窗口限流器：本节点计数用 CAS 更新，配置了共享计数时再按全局计数判断
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SlidingWindowLimiter {
+
+    private static final int MAX_COUNT = 0xFFFF;
+
+    private final String name;
+    private final int limit;
+    private final Duration window;
+    private final long windowMillis;
+    private final RateLimitBackend backend;
+    private final Cache<String, AtomicLong> states;          //状态布局：高 32 位为窗口序号，中间 16 位为上一窗口计数，低 16 位为当前窗口计数。
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public SlidingWindowLimiter(String name, int limit, Duration window, long maxKeys, RateLimitBackend backend) {
+        if (limit < 1 || limit >= MAX_COUNT) {
+            throw new IllegalArgumentException("Rate limit " + name + " must be between 1 and " + (MAX_COUNT - 1));
+        }
+        this.name = name;
+        this.limit = limit;
+        this.window = window;
+        this.windowMillis = window.toMillis();
+        this.backend = backend;
+        this.states = Caffeine.newBuilder()                  //两个窗口内没有访问的 key 计数已归零，可以直接淘汰。
+                .maximumSize(maxKeys)
+                .expireAfterAccess(window.multipliedBy(2))
+                .build();
+    }
+
+    //tryAcquire 方法: 先按本节点计数判断，本节点已超限时全局必然超限，直接拒绝；放行后再查询共享计数。
+    public boolean tryAcquire(String key) {
+        long now = System.currentTimeMillis();
+        if (!acquireLocal(key, now) || !acquireShared(key, now)) {
+            rejected.increment();
+            return false;
+        }
+        allowed.increment();
+        return true;
+    }
+
+    public void reset(String key) {
+        states.invalidate(key);
+    }
+
+    public long retryAfterSeconds() {                        //最坏情况下需要等到当前窗口结束。
+        return Math.max(1, (windowMillis - System.currentTimeMillis() % windowMillis + 999) / 1000);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("limit", limit);
+        result.put("windowSeconds", window.getSeconds());
+        result.put("trackedKeys", states.estimatedSize());
+        result.put("allowed", allowed.sum());
+        result.put("rejected", rejected.sum());
+        return result;
+    }
+
+    private boolean acquireLocal(String key, long now) {
+        AtomicLong state = states.get(key, k -> new AtomicLong());
+        int index = (int) (now / windowMillis);
+        double weight = 1.0 - (double) (now % windowMillis) / windowMillis;
+        while (true) {
+            long packed = state.get();
+            int storedIndex = (int) (packed >>> 32);
+            int previous;
+            int current;
+            if (storedIndex == index) {
+                previous = (int) ((packed >>> 16) & MAX_COUNT);
+                current = (int) (packed & MAX_COUNT);
+            } else if (storedIndex == index - 1) {
+                previous = (int) (packed & MAX_COUNT);
+                current = 0;
+            } else {
+                previous = 0;
+                current = 0;
+            }
+            if (previous * weight + current + 1 > limit) {
+                return false;                                //拒绝时不写入，超限的请求不会继续推高计数。
+            }
+            long next = ((index & 0xFFFFFFFFL) << 32) | ((long) previous << 16) | (current + 1);
+            if (state.compareAndSet(packed, next)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean acquireShared(String key, long now) {
+        if (backend == null) {
+            return true;
+        }
+        long index = now / windowMillis;
+        double weight = 1.0 - (double) (now % windowMillis) / windowMillis;
+        String prefix = "rate:" + name + ":" + key + ":";
+        long current = backend.increment(prefix + index, window.multipliedBy(2));
+        long previous = backend.get(prefix + (index - 1));
+        return previous * weight + current <= limit;
+    }
+}
+
+
+package com.example.canteenapp.governor;                     //重复评价检测器：记录窗口内每个用户评价过的菜品或食堂，判断只查内存，不查询 reviews 集合
+
+import com.example.canteenapp.model.Review;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+
+public class DuplicateReviewDetector {
+
+    private final Duration window;
+    private final RateLimitBackend backend;
+    private final Cache<String, Boolean> claims;
+
+    public DuplicateReviewDetector(Duration window, long maxKeys, RateLimitBackend backend) {
+        this.window = window;
+        this.backend = backend;
+        this.claims = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(window)
+                .build();
+    }
+
+    //claim 方法: 占用 用户 + 评价对象，窗口内已被占用时返回 false。评价写入失败时调用 release 释放。
+    public boolean claim(Review review) {
+        String key = key(review);
+        if (claims.asMap().putIfAbsent(key, Boolean.TRUE) != null) {
+            return false;
+        }
+        if (backend != null && !backend.setIfAbsent("dup:" + key, window)) {
+            return false;                                    //其他节点已接受过同一条评价，本节点保留占用，后续重复提交在内存中直接拒绝。
+        }
+        return true;
+    }
+
+    public void release(Review review) {
+        String key = key(review);
+        claims.invalidate(key);
+        if (backend != null) {
+            backend.delete("dup:" + key);
+        }
+    }
+
+    public long size() {
+        return claims.estimatedSize();
+    }
+
+    private static String key(Review review) {
+        return review.getUserId() + (review.getDishId() != null ? ":d:" + review.getDishId() : ":c:" + review.getCanteenId());
+    }
+}
+
+
+package com.example.canteenapp.governor;                     //限流组件：集中创建各限流器，供控制器在调用服务之前检查
+
+import com.example.canteenapp.exception.ConflictException;
+import com.example.canteenapp.exception.TooManyRequestsException;
+import com.example.canteenapp.model.Review;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Component                                                   //标识该类为 Spring 组件，会被 Spring 容器管理。
+public class RequestGovernor {
+
+    @Autowired(required = false)                             //没有注册共享计数时只按本节点计数。
+    private RateLimitBackend backend;
+
+    @Value("${governor.enabled:true}")
+    private boolean enabled;
+
+    @Value("${governor.review.window-seconds:60}")
+    private long reviewWindowSeconds;
+
+    @Value("${governor.review.per-user:5}")
+    private int reviewsPerUser;
+
+    @Value("${governor.review.per-ip:30}")
+    private int reviewsPerIp;
+
+    @Value("${governor.login.window-seconds:300}")
+    private long loginWindowSeconds;
+
+    @Value("${governor.login.per-ip:20}")
+    private int loginsPerIp;
+
+    @Value("${governor.login.per-username:5}")
+    private int loginsPerUsername;
+
+    @Value("${governor.duplicate.window-hours:24}")
+    private long duplicateWindowHours;
+
+    @Value("${governor.max-keys:200000}")
+    private long maxKeys;
+
+    private SlidingWindowLimiter reviewUser;
+    private SlidingWindowLimiter reviewIp;
+    private SlidingWindowLimiter loginIp;
+    private SlidingWindowLimiter loginUsername;
+    private DuplicateReviewDetector duplicates;
+
+    @PostConstruct
+    public void init() {
+        Duration reviewWindow = Duration.ofSeconds(reviewWindowSeconds);
+        Duration loginWindow = Duration.ofSeconds(loginWindowSeconds);
+        reviewUser = new SlidingWindowLimiter("review-user", reviewsPerUser, reviewWindow, maxKeys, backend);
+        reviewIp = new SlidingWindowLimiter("review-ip", reviewsPerIp, reviewWindow, maxKeys, backend);
+        loginIp = new SlidingWindowLimiter("login-ip", loginsPerIp, loginWindow, maxKeys, backend);
+        loginUsername = new SlidingWindowLimiter("login-username", loginsPerUsername, loginWindow, maxKeys, backend);
+        duplicates = new DuplicateReviewDetector(Duration.ofHours(duplicateWindowHours), maxKeys, backend);
+    }
+
+    //checkReview 方法: 在评价入队或写库之前调用，先检查频率再占用 用户 + 菜品，频率超限的请求不会占用。
+    public void checkReview(Review review, String ip) {
+        if (!enabled) {
+            return;
+        }
+        acquire(reviewUser, review.getUserId(), "Too many reviews, please retry in ");
+        acquire(reviewIp, ip, "Too many reviews, please retry in ");
+        if (!duplicates.claim(review)) {
+            throw new ConflictException("You have already reviewed this recently");
+        }
+    }
+
+    public void releaseReview(Review review) {              //评价最终没有被接受（校验失败、队列已满等）时释放占用，用户可以重新提交。
+        if (enabled) {
+            duplicates.release(review);
+        }
+    }
+
+    //checkLogin 方法: 在密码校验之前调用；同一 IP 尝试多个用户名（撞库）和同一用户名被多个 IP 尝试（暴力破解）分别受限。
+    public void checkLogin(String username, String ip) {
+        if (!enabled) {
+            return;
+        }
+        acquire(loginIp, ip, "Too many login attempts, please retry in ");
+        acquire(loginUsername, username == null ? "" : username.toLowerCase(), "Too many login attempts, please retry in ");
+    }
+
+    public void loginSucceeded(String username) {           //登录成功后清除该用户名的计数，不影响用户随后在其他设备登录。
+        loginUsername.reset(username == null ? "" : username.toLowerCase());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("reviewUser", reviewUser.stats());
+        result.put("reviewIp", reviewIp.stats());
+        result.put("loginIp", loginIp.stats());
+        result.put("loginUsername", loginUsername.stats());
+        result.put("duplicateClaims", duplicates.size());
+        result.put("sharedBackend", backend != null);
+        return result;
+    }
+
+    private static void acquire(SlidingWindowLimiter limiter, String key, String message) {
+        if (!limiter.tryAcquire(key)) {
+            throw new TooManyRequestsException(message + limiter.retryAfterSeconds() + " seconds");
+        }
+    }
+}
+
+
+package com.example.canteenapp.config;                       //限流配置类
+
+import com.example.canteenapp.governor.InMemoryRateLimitBackend;
+import com.example.canteenapp.governor.RateLimitBackend;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration                                               //@Configuration: 标识该类为配置类。
+public class GovernorConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "governor.shared-backend", havingValue = "memory")
+    public RateLimitBackend inMemoryRateLimitBackend() {
+        return new InMemoryRateLimitBackend();
+    }
+}
+
+
+package com.example.canteenapp.controller;                   //限流统计控制器
+
+import com.example.canteenapp.governor.RequestGovernor;
+import com.example.canteenapp.model.Role;
+import com.example.canteenapp.security.Authenticated;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController                                              //标识该类为 RESTful 风格的控制器。
+@RequestMapping("/api/admin/governor")                       //设置该控制器的根路径为 /api/admin/governor。
+@Authenticated(Role.ADMIN)                                   //该控制器的全部接口只对管理员开放。
+public class GovernorStatsController {
+
+    @Autowired
+    private RequestGovernor requestGovernor;
+
+    @GetMapping("")                                          //获取各限流器的放行、拒绝次数和跟踪的 key 数量，请求路径为 /api/admin/governor，请求方式为 GET。
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return new ResponseEntity<>(requestGovernor.stats(), HttpStatus.OK);
+    }
+}
@@ -0,0 +1,77 @@
+//以下是 HTTP 缓存模块的代码示例，为食堂和菜品的 GET 接口提供条件请求 (ETag / Last-Modified) 和 Cache-Control 策略：
+//这段代码演示了缓存策略组件和条件响应工具类。ETag 由 CatalogCache 维护的版本号生成（持久化在 catalog_versions 中，各节点一致），版本号未变时直接返回 304，不读取缓存数据本身；大列表响应由 Tomcat 压缩。
+
+server.compression.enabled=true
+server.compression.mime-types=application/json,application/x-ndjson,text/csv
+server.compression.min-response-size=2KB
+http.cache.catalog-max-age=60
+http.cache.menu-max-age=30
+//application.properties 配置文件
+//server.compression.*: 对超过 2KB 的 JSON / NDJSON / CSV 响应启用 gzip 压缩。Tomcat 不支持 brotli，需要 brotli 时在 Nginx 或 CDN 上开启，应用侧保持 gzip 即可。
+//http.cache.catalog-max-age: 食堂列表、食堂详情和菜品详情的 Cache-Control max-age（秒），过期后客户端携带 If-None-Match 重新验证。
+//http.cache.menu-max-age: 食堂菜单的 max-age（秒），价格调整需要更快生效，因此比其他接口短。
+//全部菜品列表使用 no-cache：每次都重新验证，但数据未变时只返回 304。
+
+
+package com.example.canteenapp.config;                       //HTTP 缓存策略组件：集中定义各接口的 Cache-Control
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+public class HttpCachePolicies {
+
+    @Value("${http.cache.catalog-max-age:60}")
+    private long catalogMaxAge;
+
+    @Value("${http.cache.menu-max-age:30}")
+    private long menuMaxAge;
+
+    public CacheControl catalog() {                          //食堂列表、食堂详情、菜品详情
+        return CacheControl.maxAge(Duration.ofSeconds(catalogMaxAge)).cachePublic();
+    }
+
+    public CacheControl menu() {                             //食堂菜单
+        return CacheControl.maxAge(Duration.ofSeconds(menuMaxAge)).cachePublic();
+    }
+
+    public CacheControl revalidate() {                       //全部菜品列表
+        return CacheControl.noCache();
+    }
+}
+
+
+package com.example.canteenapp.util;                         //条件响应工具类：按版本号生成弱 ETag 和 Last-Modified，请求中的验证器匹配时返回 304
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.function.Supplier;
+
+public final class ConditionalResponses {
+
+    private ConditionalResponses() {
+    }
+
+    //version 必须在读取 body 之前取得：读取期间数据被修改时，客户端拿到的是旧版本号，下次请求会得到完整的新数据，而不会把新数据误判为未修改。
+    //使用弱 ETag，因为压缩后的响应字节与未压缩时不同，只保证语义相同。
+    public static <T> ResponseEntity<T> ofVersion(WebRequest request, long version, CacheControl cacheControl, Supplier<T> body) {
+        String etag = "W/\"" + Long.toString(version, 36) + "\"";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        if (version > 0) {                                   //从未修改过的数据版本号为 0，只使用 ETag。
+            headers.setLastModified(version);
+        }
+        headers.setCacheControl(cacheControl);
+        if (request.checkNotModified(etag, version)) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        return new ResponseEntity<>(body.get(), headers, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,833 @@
+//以下是图片模块的代码示例，包含了菜品、食堂图片和用户头像的上传、缩略图生成和静态文件输出：
+//这段代码演示了图片元数据类、尺寸枚举、本地磁盘和 GridFS 两种存储、缩略图生成器、图片服务和控制器。上传的图片按内容 SHA-256 命名，相同内容只存一份；
+//缩略图在有界的后台线程池中生成，列表页按需请求 thumb / card / detail 尺寸；图片地址随内容变化，响应可以被浏览器和 CDN 永久缓存，本地存储时由 Tomcat sendfile 直接从文件输出。
+
+image.storage=local
+image.local.root=/var/canteen/images
+image.max-bytes=10485760
+image.max-pixels=40000000
+image.jpeg-quality=0.82
+image.workers=2
+image.queue-capacity=200
+spring.servlet.multipart.max-file-size=10MB
+spring.servlet.multipart.max-request-size=11MB
+spring.servlet.multipart.file-size-threshold=0
+//application.properties 配置文件
+//image.storage: 图片存储位置，local 为本地磁盘（多节点部署时放在共享存储上），gridfs 为 MongoDB GridFS（fs.files / fs.chunks 集合）。
+//image.local.root: 本地存储根目录，文件按 哈希前两位/哈希/文件名 分目录存放。
+//image.max-bytes: 单张图片的最大字节数；image.max-pixels: 最大像素数，解码前按图片头中的宽高检查，防止小文件解压成超大位图。
+//image.jpeg-quality: 缩略图 JPEG 压缩质量。
+//image.workers / image.queue-capacity: 缩略图生成线程数和等待队列长度；队列满时上传仍然成功，缩略图在下次启动时补生成，生成前请求缩略图会返回原图。
+//spring.servlet.multipart.file-size-threshold=0: 上传内容直接写入临时文件，不在堆内存中缓存整张图片。
+
+//WebP 缩略图需要在 pom.xml 中加入 WebP 编码插件（例如 org.sejda.imageio:webp-imageio），ImageIO 找到 webp 编码器时才生成 .webp 文件，否则只生成 JPEG。
+
+//图片字段约定：
+//Dish.image、Canteen.image 和 User.avatar 上传后保存图片内容的 SHA-256（64 位十六进制），客户端拼接 /api/images/{hash}/{size}.{jpg|webp} 取对应尺寸，
+//其中 size 为 thumb（160px，列表）、card（480px，卡片）或 detail（1080px，详情页）；不是 64 位十六进制的旧值仍按图片 URL 直接使用。
+
+
+package com.example.canteenapp.model;                        //图片元数据类：_id 即图片内容的 SHA-256
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data                                                        //Lombok 注解，自动生成 getter、setter、toString 等方法。
+@Document(collection = "images")                             //指定该实体类映射到 MongoDB 中名为 "images" 的集合。
+public class ImageAsset {
+
+    @Id
+    private String id;                                       //内容 SHA-256，十六进制小写。
+    private String format;                                   //原图格式：jpg、png、gif 或 webp。
+    private int width;
+    private int height;
+    private long size;                                       //原图字节数。
+    private List<String> variants = new ArrayList<>();       //已生成的文件名，例如 original.png、thumb.jpg、thumb.webp。
+    @Indexed(name = "complete")
+    private boolean complete;                                //所有缩略图是否已生成，启动时补生成未完成的图片。
+    private boolean failed;                                  //原图缺失或无法解码，不再生成缩略图，请求缩略图时返回原图。
+    private LocalDateTime createdAt;
+
+    public String getOriginal() {
+        return "original." + format;
+    }
+}
+
+
+package com.example.canteenapp.image;                        //缩略图尺寸：按最长边缩放，原图更小时保持原尺寸
+
+import com.example.canteenapp.exception.BadRequestException;
+
+public enum ImageSize {
+    THUMB(160),                                              //列表
+    CARD(480),                                               //卡片、食堂菜单
+    DETAIL(1080);                                            //详情页
+
+    private final int maxEdge;
+
+    ImageSize(int maxEdge) {
+        this.maxEdge = maxEdge;
+    }
+
+    public int getMaxEdge() {
+        return maxEdge;
+    }
+
+    public String fileName(String extension) {
+        return name().toLowerCase() + "." + extension;
+    }
+
+    public static ImageSize parse(String value) {
+        for (ImageSize size : values()) {
+            if (size.name().equalsIgnoreCase(value)) {
+                return size;
+            }
+        }
+        throw new BadRequestException("Unknown image size: " + value);
+    }
+}
+
+
+package com.example.canteenapp.image;                        //图片存储接口：key 格式为 哈希/文件名，写入后内容不再改变
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public interface ImageStore {
+
+    boolean exists(String key);
+
+    void put(String key, Path source) throws IOException;   //source 为临时文件，调用后由存储移走或删除。
+
+    Resource load(String key);                               //不存在时返回 null。
+}
+
+
+package com.example.canteenapp.image;                        //本地磁盘存储：先写同目录临时文件再原子改名，读取方不会看到写了一半的文件
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+@Component
+@ConditionalOnProperty(name = "image.storage", havingValue = "local", matchIfMissing = true)
+public class LocalImageStore implements ImageStore {
+
+    private final Path root;
+
+    public LocalImageStore(@Value("${image.local.root:/var/canteen/images}") String root) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.isRegularFile(resolve(key));
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            Files.move(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public Resource load(String key) {
+        Path path = resolve(key);
+        return Files.isRegularFile(path) ? new FileSystemResource(path) : null;
+    }
+
+    private Path resolve(String key) {                       //key 已由调用方校验为 哈希/文件名，这里再检查一次不会越出根目录。
+        Path path = root.resolve(key.substring(0, 2)).resolve(key).normalize();
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException("Invalid image key: " + key);
+        }
+        return path;
+    }
+}
+
+
+package com.example.canteenapp.image;                        //GridFS 存储：文件名即 key，适合没有共享磁盘的多节点部署
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@Component
+@ConditionalOnProperty(name = "image.storage", havingValue = "gridfs")
+public class GridFsImageStore implements ImageStore {
+
+    @Autowired
+    private GridFsTemplate gridFsTemplate;
+
+    @Override
+    public boolean exists(String key) {
+        return find(key) != null;
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        try (InputStream in = Files.newInputStream(source)) {
+            if (find(key) == null) {                         //内容按哈希寻址，同名文件内容必然相同；并发上传时可能存入两份，读取时任取一份即可。
+                gridFsTemplate.store(in, key);
+            }
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Override
+    public Resource load(String key) {
+        GridFSFile file = find(key);
+        return file == null ? null : gridFsTemplate.getResource(file);
+    }
+
+    private GridFSFile find(String key) {
+        return gridFsTemplate.findOne(new Query(Criteria.where("filename").is(key)));
+    }
+}
+
+
+package com.example.canteenapp.image;                        //缩略图生成器：在有界线程池中解码原图，按各尺寸缩放后写入 JPEG（以及可用时的 WebP）
+
+import com.example.canteenapp.model.ImageAsset;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+@Component
+public class ThumbnailGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailGenerator.class);
+
+    @Autowired
+    private ImageStore imageStore;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${image.workers:2}")
+    private int workers;
+
+    @Value("${image.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${image.jpeg-quality:0.82}")
+    private float jpegQuality;
+
+    private ThreadPoolExecutor executor;
+    private boolean webpSupported;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-thumbnail-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        webpSupported = ImageIO.getImageWritersByFormatName("webp").hasNext();
+        if (!webpSupported) {
+            log.info("No WebP ImageWriter on the classpath, generating JPEG thumbnails only");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)              //补生成上次停机或队列满时未完成的缩略图。
+    public void resume() {
+        Query query = new Query(Criteria.where("complete").is(false).and("failed").ne(true));
+        try (Stream<ImageAsset> stream = mongoTemplate.stream(query, ImageAsset.class)) {
+            stream.forEach(this::submit);
+        }
+    }
+
+    //submit 方法: 队列满时不阻塞上传请求，图片保持未完成状态，在此期间请求缩略图会返回原图。
+    public void submit(ImageAsset asset) {
+        try {
+            executor.execute(() -> generate(asset));
+        } catch (RejectedExecutionException e) {
+            log.warn("Thumbnail queue full, image {} will be processed on next start", asset.getId());
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    private void generate(ImageAsset asset) {
+        try {
+            Resource resource = imageStore.load(asset.getId() + "/" + asset.getOriginal());
+            if (resource == null) {
+                log.warn("Original of image {} is missing", asset.getId());
+                markFailed(asset);
+                return;
+            }
+            BufferedImage original;
+            try {
+                original = decode(resource);
+            } catch (IIOException e) {                       //解码器报告的格式错误，重试也不会成功；其他 IOException（存储不可用）保持未完成，下次启动重试。
+                log.warn("Image {} is corrupt", asset.getId(), e);
+                original = null;
+            }
+            if (original == null) {
+                log.warn("Image {} could not be decoded", asset.getId());
+                markFailed(asset);
+                return;
+            }
+            BufferedImage rgb = flatten(original);
+            List<String> written = new ArrayList<>();
+            for (ImageSize size : ImageSize.values()) {
+                BufferedImage scaled = scale(rgb, size.getMaxEdge());
+                written.add(write(asset.getId(), size.fileName("jpg"), scaled, "jpg"));
+                if (webpSupported) {
+                    written.add(write(asset.getId(), size.fileName("webp"), scaled, "webp"));
+                }
+            }
+            mongoTemplate.updateFirst(new Query(Criteria.where("id").is(asset.getId())),
+                    new Update().addToSet("variants").each(written.toArray()).set("complete", true), ImageAsset.class);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to generate thumbnails for image {}", asset.getId(), e);
+        }
+    }
+
+    //decode 方法: 按原图最长边和 DETAIL 尺寸计算采样步长，解码时只读取每 step 行、每 step 列的像素，
+    //4000 万像素的原图在内存中也只生成最长边 1080 到 2160 像素的位图，而不是先完整解码再缩小。
+    private static BufferedImage decode(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream(); ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int step = Math.max(1, longest / ImageSize.DETAIL.getMaxEdge());
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void markFailed(ImageAsset asset) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(asset.getId())), new Update().set("failed", true), ImageAsset.class);
+    }
+
+    private String write(String hash, String fileName, BufferedImage image, String format) throws IOException {
+        String key = hash + "/" + fileName;
+        if (imageStore.exists(key)) {
+            return fileName;
+        }
+        Path temp = Files.createTempFile("thumbnail-", "." + format);
+        try {
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+            ImageWriter writer = writers.next();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(out);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if (param.canWriteCompressed()) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    if (param.getCompressionType() == null) {
+                        param.setCompressionType(param.getCompressionTypes()[0]);
+                    }
+                    param.setCompressionQuality(jpegQuality);
+                }
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            imageStore.put(key, temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return fileName;
+    }
+
+    private static BufferedImage flatten(BufferedImage source) {   //JPEG 没有透明通道，透明背景（PNG、GIF）铺成白色。
+        if (source.getType() == BufferedImage.TYPE_INT_RGB) {
+            return source;
+        }
+        BufferedImage rgb = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, rgb.getWidth(), rgb.getHeight());
+        g.drawImage(source, 0, 0, null);
+        g.dispose();
+        return rgb;
+    }
+
+    //scale 方法: 每次最多缩小一半、逐步缩到目标尺寸，双线性插值在大比例缩小时也不会产生明显锯齿。
+    private static BufferedImage scale(BufferedImage source, int maxEdge) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double ratio = Math.min(1.0, (double) maxEdge / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+        BufferedImage current = source;
+        while (width != targetWidth || height != targetHeight) {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, width, height, null);
+            g.dispose();
+            current = next;
+        }
+        return current;
+    }
+}
+
+
+package com.example.canteenapp.service;                      //图片服务接口:定义了上传菜品图片 (uploadDishImage)、食堂图片 (uploadCanteenImage)、头像 (uploadAvatar) 和读取图片文件 (load) 的接口方法。
+
+import com.example.canteenapp.model.ImageAsset;
+import org.springframework.core.io.Resource;
+import org.springframework.web.multipart.MultipartFile;
+
+public interface ImageService {
+
+    ImageAsset uploadDishImage(String dishId, MultipartFile file);
+
+    ImageAsset uploadCanteenImage(String canteenId, MultipartFile file);
+
+    ImageAsset uploadAvatar(String userId, MultipartFile file);
+
+    Resource load(String hash, String fileName);
+
+    Resource loadOriginal(String hash);
+}
+
+
+package com.example.canteenapp.service.impl;                 //图片服务实现类
+
+import com.example.canteenapp.cache.CatalogCaches;
+import com.example.canteenapp.exception.BadRequestException;
+import com.example.canteenapp.exception.ResourceNotFoundException;
+import com.example.canteenapp.filter.DishFacetIndex;
+import com.example.canteenapp.image.ImageStore;
+import com.example.canteenapp.image.ThumbnailGenerator;
+import com.example.canteenapp.menu.MenuCompiler;
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.ImageAsset;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.model.User;
+import com.example.canteenapp.service.ImageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+@Service                                                     //标识该类为服务类，会被 Spring 容器管理。
+public class ImageServiceImpl implements ImageService {
+
+    private static final Map<String, String> FORMATS = Map.of(   //ImageIO 格式名 -> 文件扩展名，只接受这几种格式。
+            "jpeg", "jpg", "png", "png", "gif", "gif", "webp", "webp");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ImageStore imageStore;
+
+    @Autowired
+    private ThumbnailGenerator thumbnailGenerator;
+
+    @Autowired
+    private CatalogCaches catalogCaches;
+
+    @Autowired
+    private DishFacetIndex dishFacetIndex;
+
+    @Autowired
+    private MenuCompiler menuCompiler;
+
+    @Value("${image.max-bytes:10485760}")
+    private long maxBytes;
+
+    @Value("${image.max-pixels:40000000}")
+    private long maxPixels;
+
+    @Override
+    public ImageAsset uploadDishImage(String dishId, MultipartFile file) {
+        if (!mongoTemplate.exists(new Query(Criteria.where("id").is(dishId)), Dish.class)) {
+            throw new ResourceNotFoundException("Dish not found with id: " + dishId);
+        }
+        ImageAsset asset = store(file);
+        Dish dish = mongoTemplate.findAndModify(new Query(Criteria.where("id").is(dishId)),
+                new Update().set("image", asset.getId()), FindAndModifyOptions.options().returnNew(true), Dish.class);
+        mongoTemplate.updateMulti(new Query(Criteria.where("dishId").is(dishId)),          //评价中的菜品快照同步更新，按 dish_createdAt 索引定位。
+                new Update().set("dish.image", asset.getId()), Review.class);
+        catalogCaches.dishes().invalidate(dishId);
+        catalogCaches.dishes().invalidate(CatalogCaches.ALL);
+        if (dish != null) {
+            dishFacetIndex.indexDish(dish);
+            if (dish.getCanteenId() != null) {
+                catalogCaches.dishesByCanteen().invalidate(dish.getCanteenId());
+            }
+            menuCompiler.markDirty(dish.getCanteenId());
+        }
+        return asset;
+    }
+
+    @Override
+    public ImageAsset uploadCanteenImage(String canteenId, MultipartFile file) {
+        if (!mongoTemplate.exists(new Query(Criteria.where("id").is(canteenId)), Canteen.class)) {
+            throw new ResourceNotFoundException("Canteen not found with id: " + canteenId);
+        }
+        ImageAsset asset = store(file);
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(canteenId)), new Update().set("image", asset.getId()), Canteen.class);
+        Query dishesOfCanteen = new Query(Criteria.where("canteenId").is(canteenId));
+        mongoTemplate.updateMulti(dishesOfCanteen, new Update().set("canteen.image", asset.getId()), Dish.class);
+        mongoTemplate.updateMulti(new Query(Criteria.where("canteenId").is(canteenId)),
+                new Update().set("canteen.image", asset.getId()), Review.class);
+        catalogCaches.canteens().invalidate(canteenId);
+        catalogCaches.canteenList().invalidate(CatalogCaches.ALL);
+        catalogCaches.dishesByCanteen().invalidate(canteenId);
+        List<Dish> dishes = mongoTemplate.find(dishesOfCanteen, Dish.class);              //菜品中的食堂快照已变化，单个菜品缓存和筛选索引一并更新。
+        for (Dish dish : dishes) {
+            catalogCaches.dishes().invalidate(dish.getId());
+            dishFacetIndex.indexDish(dish);
+        }
+        catalogCaches.dishes().invalidate(CatalogCaches.ALL);
+        menuCompiler.markDirty(canteenId);
+        return asset;
+    }
+
+    @Override
+    public ImageAsset uploadAvatar(String userId, MultipartFile file) {
+        ImageAsset asset = store(file);
+        if (mongoTemplate.updateFirst(new Query(Criteria.where("id").is(userId)),
+                new Update().set("avatar", asset.getId()), User.class).getMatchedCount() == 0) {
+            throw new ResourceNotFoundException("User not found with id: " + userId);
+        }
+        return asset;                                        //与昵称相同，已发表评价中的头像快照保持发表时的值，不回写历史评价。
+    }
+
+    @Override
+    public Resource load(String hash, String fileName) {
+        return imageStore.load(hash + "/" + fileName);
+    }
+
+    @Override
+    public Resource loadOriginal(String hash) {
+        ImageAsset asset = mongoTemplate.findById(hash, ImageAsset.class);
+        if (asset == null) {
+            throw new ResourceNotFoundException("Image not found with id: " + hash);
+        }
+        return imageStore.load(hash + "/" + asset.getOriginal());
+    }
+
+    //store 方法: 边写临时文件边计算 SHA-256，只读取图片头校验格式和尺寸；相同内容已存在时直接复用，不重复存储和生成缩略图。
+    private ImageAsset store(MultipartFile file) {
+        if (file.isEmpty()) {
+            throw new BadRequestException("Image file is empty");
+        }
+        if (file.getSize() > maxBytes) {
+            throw new BadRequestException("Image exceeds " + maxBytes + " bytes");
+        }
+        Path temp = null;
+        try {
+            temp = Files.createTempFile("image-upload-", ".tmp");
+            String hash = copyAndHash(file, temp);
+            ImageAsset existing = mongoTemplate.findById(hash, ImageAsset.class);
+            if (existing != null) {
+                if (!existing.isComplete() && !existing.isFailed()) {
+                    thumbnailGenerator.submit(existing);
+                }
+                return existing;
+            }
+
+            ImageAsset asset = inspect(temp);
+            asset.setId(hash);
+            asset.setSize(Files.size(temp));
+            asset.setCreatedAt(LocalDateTime.now());
+            asset.getVariants().add(asset.getOriginal());
+            imageStore.put(hash + "/" + asset.getOriginal(), temp);
+            try {
+                mongoTemplate.insert(asset);
+            } catch (DuplicateKeyException e) {              //同一张图片被并发上传，以先写入的一份为准。
+                return mongoTemplate.findById(hash, ImageAsset.class);
+            }
+            thumbnailGenerator.submit(asset);
+            return asset;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to store image", e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // 临时文件由系统清理
+                }
+            }
+        }
+    }
+
+    private static String copyAndHash(MultipartFile file, Path target) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+             OutputStream out = Files.newOutputStream(target)) {
+            in.transferTo(out);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private ImageAsset inspect(Path file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new BadRequestException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                String format = FORMATS.get(reader.getFormatName().toLowerCase());
+                if (format == null) {
+                    throw new BadRequestException("Unsupported image format: " + reader.getFormatName());
+                }
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new BadRequestException("Image dimensions " + width + "x" + height + " are too large");
+                }
+                ImageAsset asset = new ImageAsset();
+                asset.setFormat(format);
+                asset.setWidth(width);
+                asset.setHeight(height);
+                return asset;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
+
+
+package com.example.canteenapp.controller;                   //图片控制器
+
+import com.example.canteenapp.image.ImageSize;
+import com.example.canteenapp.model.ImageAsset;
+import com.example.canteenapp.model.Role;
+import com.example.canteenapp.security.Authenticated;
+import com.example.canteenapp.security.CanteenAccessPolicy;
+import com.example.canteenapp.security.TokenAuthInterceptor;
+import com.example.canteenapp.service.ImageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+@RestController                                              //标识该类为 RESTful 风格的控制器。
+@RequestMapping("/api/images")                               //设置该控制器的根路径为 /api/images。
+public class ImageController {
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern FILE_NAME = Pattern.compile("[a-z]+\\.(jpg|webp)");
+    private static final String IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable().getHeaderValue();
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private CanteenAccessPolicy canteenAccessPolicy;
+
+    @Authenticated(Role.CANTEEN_MANAGER)
+    @PostMapping("/dish/{dishId}")                           //上传菜品图片，请求路径为 /api/images/dish/{dishId}，multipart 字段名为 file，需要管理员或该菜品所属食堂的管理员。
+    public ResponseEntity<ImageAsset> uploadDishImage(@PathVariable String dishId, @RequestParam("file") MultipartFile file,
+                                                      @RequestAttribute(TokenAuthInterceptor.USER_ID) String userId,
+                                                      @RequestAttribute(TokenAuthInterceptor.USER_ROLE) Role role) {
+        canteenAccessPolicy.checkDish(userId, role, dishId);
+        return new ResponseEntity<>(imageService.uploadDishImage(dishId, file), HttpStatus.CREATED);
+    }
+
+    @Authenticated(Role.CANTEEN_MANAGER)
+    @PostMapping("/canteen/{canteenId}")                     //上传食堂图片，请求路径为 /api/images/canteen/{canteenId}，需要管理员或该食堂的管理员。
+    public ResponseEntity<ImageAsset> uploadCanteenImage(@PathVariable String canteenId, @RequestParam("file") MultipartFile file,
+                                                         @RequestAttribute(TokenAuthInterceptor.USER_ID) String userId,
+                                                         @RequestAttribute(TokenAuthInterceptor.USER_ROLE) Role role) {
+        canteenAccessPolicy.checkCanteen(userId, role, canteenId);
+        return new ResponseEntity<>(imageService.uploadCanteenImage(canteenId, file), HttpStatus.CREATED);
+    }
+
+    @Authenticated
+    @PostMapping("/avatar")                                  //上传当前用户的头像，请求路径为 /api/images/avatar。
+    public ResponseEntity<ImageAsset> uploadAvatar(@RequestAttribute(TokenAuthInterceptor.USER_ID) String userId,
+                                                   @RequestParam("file") MultipartFile file) {
+        return new ResponseEntity<>(imageService.uploadAvatar(userId, file), HttpStatus.CREATED);
+    }
+
+    //getImage 方法: 获取图片，请求路径为 /api/images/{hash}/{size}.{jpg|webp}。内容由地址中的哈希决定，响应可永久缓存；
+    //               缩略图尚未生成时返回原图，并要求客户端每次重新验证，缩略图生成后即可拿到正确尺寸。
+    @GetMapping("/{hash}/{fileName:.+}")
+    public void getImage(@PathVariable String hash, @PathVariable String fileName,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!HASH.matcher(hash).matches() || !FILE_NAME.matcher(fileName).matches()) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        ImageSize.parse(fileName.substring(0, fileName.indexOf('.')));
+        Resource resource = imageService.load(hash, fileName);
+        String cacheControl = IMMUTABLE;
+        String etag = "\"" + hash + "/" + fileName + "\"";
+        if (resource == null) {
+            resource = imageService.loadOriginal(hash);
+            if (resource == null) {
+                response.sendError(HttpStatus.NOT_FOUND.value());
+                return;
+            }
+            cacheControl = CacheControl.noCache().getHeaderValue();
+            etag = "\"" + hash + "/original\"";
+        }
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return;
+        }
+        String name = resource.getFilename() == null ? fileName : resource.getFilename();
+        response.setContentType(MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+        long length = resource.contentLength();
+        response.setContentLengthLong(length);
+        if (resource instanceof FileSystemResource && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            sendfile(request, ((FileSystemResource) resource).getFile().getCanonicalPath(), length);
+            return;
+        }
+        try (InputStream in = resource.getInputStream(); OutputStream out = response.getOutputStream()) {
+            in.transferTo(out);
+        }
+    }
+
+    //sendfile 方法: 交给 Tomcat NIO 连接器在响应结束后用 FileChannel.transferTo 输出，文件内容不经过 JVM 堆和用户态缓冲区。
+    private static void sendfile(HttpServletRequest request, String path, long length) {
+        request.setAttribute("org.apache.tomcat.sendfile.filename", path);
+        request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+        request.setAttribute("org.apache.tomcat.sendfile.end", length);
+    }
+}
@@ -0,0 +1,539 @@
+//以下是评价写入管道的代码示例，把评价写入从请求线程移到后台批量写入：
+//这段代码演示了异常类、本地溢写日志、写入服务接口和实现类。请求线程只做校验、写本地日志和入队，立即返回 202；后台线程按批大小或等待时间凑批后用无序批量插入写库，队列满时返回 429，进程重启后从本地日志恢复未写库的评价。
+
+review.ingest.async=true
+review.ingest.queue-capacity=10000
+review.ingest.batch-size=500
+review.ingest.linger-millis=50
+review.ingest.spill-dir=data/review-spill
+review.ingest.spill-fsync=false
+review.ingest.max-attempts=5
+//application.properties 配置文件
+//review.ingest.async: 为 true 时 POST /api/reviews 走异步写入管道并返回 202，为 false 时保持同步写入并返回 201。
+//review.ingest.queue-capacity: 已接收但尚未写库的评价上限，超出后返回 429。
+//review.ingest.batch-size / review.ingest.linger-millis: 凑满一批或等待超时即写库，以先到者为准。
+//review.ingest.spill-dir: 本地溢写日志目录；review.ingest.spill-fsync 为 true 时请求返回前记录已强制落盘，并发请求按组提交，一次 fsync 覆盖等待中的所有记录。
+//review.ingest.max-attempts: 评价因数据本身的错误（例如文档校验失败）写库失败的最大尝试次数，超过后转入 spill-dir/dead-letter 目录等待人工处理；
+//                            无法定位到单条评价的错误会先把批次二分，只有出错的评价计次并转入死信，同批的有效评价照常写入；
+//                            数据库连接类错误不计次数，一直重试。dead-letter 中的文件不参与启动回放。
+
+
+package com.example.canteenapp.exception;                    //请求过载异常：写入队列已满时抛出，返回 429
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class TooManyRequestsException extends RuntimeException {
+
+    public TooManyRequestsException(String message) {
+        super(message);
+    }
+}
+
+
+package com.example.canteenapp.exception;                    //请求参数异常：校验失败时抛出，返回 400
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class BadRequestException extends RuntimeException {
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
+
+
+package com.example.canteenapp.ingest;                       //本地溢写日志：每条已接收的评价先追加到日志分段文件，分段内的评价全部写库后删除该分段
+
+import com.example.canteenapp.model.Review;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReviewSpillJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(ReviewSpillJournal.class);
+
+    private static final int SEGMENT_SIZE = 10_000;         //每个分段最多记录的评价数。
+    private static final String SUFFIX = ".ndjson";
+    private static final String DEAD_LETTER = "dead-letter";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final boolean fsync;
+
+    private final Map<Long, Integer> pending = new HashMap<>();   //分段号 -> 尚未写库的记录数。
+    private long currentSegment;
+    private int currentCount;
+    private FileOutputStream currentFile;
+    private OutputStream currentOut;                         //currentFile 外层的缓冲流，组提交时一次写出。
+    private long appended;                                   //已追加到缓冲区的记录序号。
+    private List<Path> recovered = new ArrayList<>();
+
+    private final Object syncLock = new Object();            //组提交锁：同一时间只有一个线程执行 flush / fsync，其余线程在此等待。
+    private long synced;                                     //已落盘的最大记录序号，由 syncLock 保护。
+    private final AtomicLong deadLetterSequence = new AtomicLong();
+
+    public ReviewSpillJournal(String directory, ObjectMapper objectMapper, boolean fsync) {
+        this.directory = Paths.get(directory);
+        this.objectMapper = objectMapper;
+        this.fsync = fsync;
+    }
+
+    //recover 方法: 启动时读取上次未删除的所有分段，只读文件、不写库；返回的评价写库成功后调用 discardRecovered 删除这些分段。
+    public synchronized List<Review> recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Review> reviews = new ArrayList<>();
+        List<String> corrupt = new ArrayList<>();
+        long maxSegment = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                recovered.add(file);
+                String name = file.getFileName().toString();
+                maxSegment = Math.max(maxSegment, Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                byte[] content = Files.readAllBytes(file);
+                boolean complete = content.length == 0 || content[content.length - 1] == '\n';
+                String[] lines = new String(content, StandardCharsets.UTF_8).split("\n");
+                for (int i = 0; i < lines.length; i++) {
+                    if (lines[i].isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        reviews.add(objectMapper.readValue(lines[i], Review.class));
+                    } catch (IOException e) {
+                        if (complete || i < lines.length - 1) {      //只有没有换行结尾的最后一行是崩溃时写了一半的记录，可以丢弃；其他无法解析的行转入死信文件。
+                            corrupt.add(lines[i]);
+                        }
+                    }
+                }
+            }
+        }
+        if (!corrupt.isEmpty()) {
+            log.warn("Moved {} unreadable spill journal lines to {}", corrupt.size(), writeDeadLetter(corrupt));
+        }
+        currentSegment = maxSegment + 1;
+        return reviews;
+    }
+
+    public synchronized void discardRecovered() throws IOException {
+        for (Path file : recovered) {
+            Files.deleteIfExists(file);
+        }
+        recovered = new ArrayList<>();
+    }
+
+    //append 方法: 追加一条记录并返回所在分段号，返回时记录已写出（fsync 为 true 时已落盘），写满 SEGMENT_SIZE 条后切换到新分段。
+    //序列化在锁外完成，追加只占用很短的对象锁；随后按组提交等待落盘，并发请求共享同一次 flush 和 fsync。
+    public long append(Review review) {
+        try {
+            byte[] line = objectMapper.writeValueAsBytes(review);
+            long segment;
+            long sequence;
+            synchronized (this) {
+                if (currentFile == null || currentCount >= SEGMENT_SIZE) {
+                    roll();
+                }
+                currentOut.write(line);
+                currentOut.write('\n');
+                currentCount++;
+                pending.merge(currentSegment, 1, Integer::sum);
+                segment = currentSegment;
+                sequence = ++appended;
+            }
+            sync(sequence);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //sync 方法: 组提交。拿到 syncLock 的线程把缓冲区中全部已追加的记录一次写出并 fsync，之后等待的线程发现自己的记录已被覆盖，直接返回。
+    private void sync(long sequence) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= sequence) {
+                return;
+            }
+            long target;
+            FileChannel channel;
+            synchronized (this) {
+                if (currentOut == null) {
+                    throw new IOException("Spill journal is closed");
+                }
+                currentOut.flush();
+                target = appended;
+                channel = currentFile.getChannel();
+            }
+            if (fsync) {
+                try {
+                    channel.force(false);                    //fsync 期间不持有对象锁，其他请求可以继续追加，进入下一组。
+                } catch (ClosedChannelException e) {
+                    // 期间已切换分段，旧分段在 roll 中关闭前已经落盘
+                }
+            }
+            synced = target;
+        }
+    }
+
+    //deadLetter 方法: 把多次写库失败的评价写入 dead-letter 目录下的单独文件，之后照常 acknowledge，不再阻塞所在分段的删除。
+    public Path deadLetter(List<Review> reviews) throws IOException {
+        List<String> lines = new ArrayList<>(reviews.size());
+        for (Review review : reviews) {
+            lines.add(objectMapper.writeValueAsString(review));
+        }
+        return writeDeadLetter(lines);
+    }
+
+    private Path writeDeadLetter(List<String> lines) throws IOException {
+        Path dir = directory.resolve(DEAD_LETTER);
+        Files.createDirectories(dir);
+        Path file = dir.resolve(System.currentTimeMillis() + "-" + deadLetterSequence.incrementAndGet() + SUFFIX);
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    //acknowledge 方法: 记录某分段中已有 count 条写库成功；已关闭且全部写库的分段会被删除。
+    public synchronized void acknowledge(long segment, int count) {
+        int left = pending.merge(segment, -count, Integer::sum);
+        if (left <= 0 && segment != currentSegment) {
+            pending.remove(segment);
+            try {
+                Files.deleteIfExists(segmentPath(segment));
+            } catch (IOException e) {
+                // 删除失败只会导致重启时重复回放，插入按 ID 去重，不影响正确性
+            }
+        }
+    }
+
+    private void roll() throws IOException {
+        long previous = currentSegment;
+        if (currentFile != null) {
+            currentOut.flush();
+            if (fsync) {
+                currentFile.getChannel().force(false);
+            }
+            currentOut.close();
+            currentSegment++;
+        }
+        currentFile = new FileOutputStream(segmentPath(currentSegment).toFile(), true);
+        currentOut = new BufferedOutputStream(currentFile, 64 * 1024);
+        currentCount = 0;
+        Integer left = pending.get(previous);
+        if (previous != currentSegment && left != null && left <= 0) {
+            pending.remove(previous);
+            Files.deleteIfExists(segmentPath(previous));
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (currentFile != null) {
+            currentOut.close();
+            currentOut = null;
+            currentFile = null;
+        }
+        Integer left = pending.get(currentSegment);
+        if (left == null || left <= 0) {
+            Files.deleteIfExists(segmentPath(currentSegment));
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%012d", segment) + SUFFIX);
+    }
+}
+
+
+package com.example.canteenapp.service;                      //评价写入管道接口:定义了提交评价 (submit) 和查询队列深度 (getQueueDepth) 的接口方法。
+
+import com.example.canteenapp.model.Review;
+
+public interface ReviewIngestionService {
+
+    Review submit(Review review);
+
+    int getQueueDepth();
+}
+
+
+package com.example.canteenapp.service.impl;                 //评价写入管道实现类
+
+import com.example.canteenapp.exception.BadRequestException;
+import com.example.canteenapp.exception.TooManyRequestsException;
+import com.example.canteenapp.ingest.ReviewSpillJournal;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.service.ReviewIngestionService;
+import com.example.canteenapp.service.ReviewService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+@Service                                                     //标识该类为服务类，会被 Spring 容器管理。
+public class ReviewIngestionServiceImpl implements ReviewIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReviewIngestionServiceImpl.class);
+
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 5_000;
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${review.ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${review.ingest.batch-size:500}")
+    private int batchSize;
+
+    @Value("${review.ingest.linger-millis:50}")
+    private long lingerMillis;
+
+    @Value("${review.ingest.spill-dir:data/review-spill}")
+    private String spillDir;
+
+    @Value("${review.ingest.spill-fsync:false}")
+    private boolean spillFsync;
+
+    @Value("${review.ingest.max-attempts:5}")
+    private int maxAttempts;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private Semaphore capacity;                              //容量许可：入队前获取，写库后归还，获取失败即返回 429。
+    private ReviewSpillJournal journal;
+    private Thread writer;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() throws IOException {                 //启动时只读取本地日志，回放写库交给后台写入线程，MongoDB 不可用时也不会阻塞应用启动。
+        capacity = new Semaphore(queueCapacity);
+        journal = new ReviewSpillJournal(spillDir, objectMapper, spillFsync);
+        List<Review> recovered = journal.recover();
+
+        running = true;
+        writer = new Thread(() -> drainLoop(recovered), "review-ingest-writer");
+        writer.setDaemon(true);                                      //不阻止 JVM 退出；正常关闭时由 stop() 等待队列写完，未写完的评价仍在本地日志中。
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {   //停止接收后等待队列写完；仍未写完的评价保留在本地日志中，下次启动时回放。
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        journal.close();
+    }
+
+    @Override
+    public Review submit(Review review) {                    //submit 方法: 在请求线程上完成校验、分配 ID 和写本地日志，随后入队并立即返回。
+        Set<ConstraintViolation<Review>> violations = validator.validate(review);
+        if (!violations.isEmpty()) {
+            throw new BadRequestException(violations.iterator().next().getMessage());
+        }
+        if (review.getDishId() == null && review.getCanteenId() == null) {
+            throw new BadRequestException("Review must target a dish or a canteen");
+        }
+        if (!running || !capacity.tryAcquire()) {
+            throw new TooManyRequestsException("Review queue is full, please retry later");
+        }
+        review.setId(new ObjectId().toHexString());          //预先分配 ID：调用方立即拿到 ID，日志回放时也能按 ID 去重。
+        review.setCreatedAt(LocalDateTime.now());
+        review.setUser(null);
+        review.setCanteen(null);
+        review.setDish(null);
+        review.setOwnerCanteenId(null);
+        try {
+            long segment = journal.append(review);
+            queue.add(new Pending(review, segment));
+        } catch (RuntimeException e) {
+            capacity.release();
+            throw e;
+        }
+        return review;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void drainLoop(List<Review> recovered) {
+        try {
+            if (!replay(recovered)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    //replay 方法: 在写入线程上回放上次未写库的评价，回放期间新提交的评价照常入队；停机前没有回放完时保留日志，下次启动继续。
+    private boolean replay(List<Review> recovered) throws InterruptedException {
+        for (int from = 0; from < recovered.size(); from += batchSize) {
+            if (!persist(recovered.subList(from, Math.min(from + batchSize, recovered.size())))) {
+                return false;
+            }
+        }
+        try {
+            journal.discardRecovered();
+        } catch (IOException e) {
+            log.warn("Failed to delete replayed spill journal segments, they will be replayed again", e);
+        }
+        if (!recovered.isEmpty()) {
+            log.info("Recovered {} reviews from spill journal", recovered.size());
+        }
+        return true;
+    }
+
+    private void write(List<Pending> batch) throws InterruptedException {
+        List<Review> reviews = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            reviews.add(pending.review);
+        }
+        if (!persist(reviews)) {
+            return;                                          //正在停机：保留日志，下次启动回放。
+        }
+        Map<Long, Integer> perSegment = new HashMap<>();
+        for (Pending pending : batch) {
+            perSegment.merge(pending.segment, 1, Integer::sum);
+        }
+        perSegment.forEach(journal::acknowledge);
+        capacity.release(batch.size());
+    }
+
+    //persist 方法: 写库失败时退避重试，重试期间队列持续积压，最终由 429 向调用方施加背压。连接类错误一直重试；
+    //批量写错误只重试本批中失败的评价；其他错误先把批次二分，直到单条评价，再对单条重试。达到 max-attempts 次后转入死信文件，写入线程继续处理后面的评价。
+    //返回 false 表示正在停机且没有写完。
+    private boolean persist(List<Review> reviews) throws InterruptedException {
+        long backoff = 100;
+        int attempts = 0;
+        while (true) {
+            try {
+                reviewService.saveReviews(reviews);
+                return true;
+            } catch (DataAccessResourceFailureException | TransientDataAccessException e) {
+                log.warn("Writing {} reviews failed, retrying in {} ms", reviews.size(), backoff, e);
+            } catch (RuntimeException e) {
+                if (e instanceof BulkOperationException) {
+                    reviews = failedReviews(reviews, (BulkOperationException) e);   //其余评价已写入，不再重试。
+                } else if (reviews.size() > 1) {             //无法确定是哪条评价出错（例如快照补齐时的校验失败），二分后分别写入，有效的评价不会随坏数据一起转入死信。
+                    log.warn("Writing {} reviews failed, splitting the batch", reviews.size(), e);
+                    int half = reviews.size() / 2;
+                    return persist(reviews.subList(0, half)) && persist(reviews.subList(half, reviews.size()));
+                }
+                if (++attempts >= maxAttempts) {
+                    try {
+                        Path file = journal.deadLetter(reviews);
+                        log.error("Giving up on {} reviews after {} attempts, moved them to {}", reviews.size(), attempts, file, e);
+                        return true;
+                    } catch (IOException io) {
+                        log.error("Failed to write {} reviews to the dead-letter directory", reviews.size(), io);
+                    }
+                }
+                log.warn("Writing {} reviews failed (attempt {} of {}), retrying in {} ms", reviews.size(), attempts, maxAttempts, backoff, e);
+            }
+            if (!running) {
+                return false;
+            }
+            Thread.sleep(backoff);
+            backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS);
+        }
+    }
+
+    private static List<Review> failedReviews(List<Review> reviews, BulkOperationException e) {
+        List<Review> failed = new ArrayList<>();
+        for (BulkWriteError error : e.getErrors()) {
+            if (error.getCode() != DUPLICATE_KEY) {
+                failed.add(reviews.get(error.getIndex()));
+            }
+        }
+        return failed;
+    }
+
+    private static final class Pending {
+
+        private final Review review;
+        private final long segment;
+
+        Pending(Review review, long segment) {
+            this.review = review;
+            this.segment = segment;
+        }
+    }
+}
+//submit 方法: 请求线程上的开销只有一次 Bean Validation、一次本地文件追加和一次入队。
+//drainLoop 方法: 单个写入线程按 batch-size / linger-millis 凑批，写库由 ReviewService.saveReviews 用无序批量插入完成。
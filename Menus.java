@@ -0,0 +1,246 @@
+//以下是食堂菜单快照模块的代码示例，把食堂信息、菜品和评分汇总预先编译成一份 JSON，按字节直接输出：
+//这段代码演示了菜单快照类、编译结果类、菜单编译组件，以及 CanteenController 中新增的菜单接口。菜单页原来需要分别请求食堂详情、菜单和各菜品评分，
+//现在一次请求即可拿到全部内容；快照在首次访问时编译，菜品、图片或评价变化后延迟合并重编译，编译时同时生成 gzip 字节，请求时不再经过 Jackson 序列化和 Tomcat 压缩。
+
+menu.compile-delay-millis=500
+//application.properties 配置文件
+//menu.compile-delay-millis: 收到变更后等待多久再重编译（毫秒），期间同一食堂的多次变更（批量导入、午餐高峰的评价）只编译一次，编译完成前继续输出旧快照。
+//多节点部署时每个节点只感知本节点的写入，跨节点的变更通知见后续的领域事件总线。
+
+
+package com.example.canteenapp.model;                        //菜单快照类：一个食堂菜单页需要的全部数据
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+public class MenuSnapshot {
+
+    private Canteen canteen;
+    private RatingSummary rating;                            //食堂评分汇总
+    private List<DishWithRating> dishes;                     //菜品及其评分汇总，按名称排序
+    private Instant compiledAt;
+}
+
+
+package com.example.canteenapp.menu;                         //编译结果：未压缩和 gzip 两份字节，以及由内容计算的 ETag
+
+import java.time.Instant;
+
+public final class CompiledMenu {
+
+    private final byte[] json;
+    private final byte[] gzip;
+    private final String etag;
+    private final Instant compiledAt;
+
+    CompiledMenu(byte[] json, byte[] gzip, String etag, Instant compiledAt) {
+        this.json = json;
+        this.gzip = gzip;
+        this.etag = etag;
+        this.compiledAt = compiledAt;
+    }
+
+    public byte[] getJson() {
+        return json;
+    }
+
+    public byte[] getGzip() {
+        return gzip;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public Instant getCompiledAt() {
+        return compiledAt;
+    }
+}
+
+
+package com.example.canteenapp.menu;                         //菜单编译组件：按食堂保存编译好的菜单，变更时延迟重编译后整体替换
+
+import com.example.canteenapp.exception.ResourceNotFoundException;
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishWithRating;
+import com.example.canteenapp.model.MenuSnapshot;
+import com.example.canteenapp.model.RatingSummary;
+import com.example.canteenapp.service.CanteenService;
+import com.example.canteenapp.service.DishService;
+import com.example.canteenapp.service.RatingSummaryService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+@Component
+public class MenuCompiler {
+
+    private static final Logger log = LoggerFactory.getLogger(MenuCompiler.class);
+
+    @Autowired
+    @Lazy                                                    //DishServiceImpl 在写入后调用 markDirty，延迟注入以避开循环依赖。
+    private CanteenService canteenService;
+
+    @Autowired
+    @Lazy
+    private DishService dishService;
+
+    @Autowired
+    private RatingSummaryService ratingSummaryService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${menu.compile-delay-millis:500}")
+    private long compileDelayMillis;
+
+    private final Map<String, CompiledMenu> menus = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<CompiledMenu>> loading = new ConcurrentHashMap<>();   //正在首次编译的食堂，同一食堂的并发首次访问等待同一次编译。
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "menu-compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    //get 方法: 首次访问时在请求线程上编译（同时校验食堂存在，不存在时抛出 404 且不缓存），之后只读内存。
+    //         编译在 ConcurrentHashMap 之外进行（按食堂一个 future），数据库和目录缓存的读取不会占住映射的桶锁、阻塞其他食堂。
+    public CompiledMenu get(String canteenId) {
+        CompiledMenu menu = menus.get(canteenId);
+        if (menu != null) {
+            return menu;
+        }
+        CompletableFuture<CompiledMenu> future = new CompletableFuture<>();
+        CompletableFuture<CompiledMenu> running = loading.putIfAbsent(canteenId, future);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            menus.putIfAbsent(canteenId, compile(canteenId));   //编译期间排入的重编译可能已经写入更新的结果，不覆盖它。
+            menu = menus.get(canteenId);
+            future.complete(menu);
+            return menu;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(canteenId, future);
+        }
+    }
+
+    private static CompiledMenu await(CompletableFuture<CompiledMenu> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();       //例如食堂不存在时的 ResourceNotFoundException，保持 404。
+            }
+            throw e;
+        }
+    }
+
+    //markDirty 方法: 由菜品写入、图片上传和评价写入调用；尚未编译过的食堂不需要处理（正在首次编译的除外，编译可能读到了变更前的数据），同一食堂在延迟期间只排一次重编译。
+    public void markDirty(String canteenId) {
+        if (canteenId != null && (menus.containsKey(canteenId) || loading.containsKey(canteenId)) && dirty.add(canteenId)) {
+            scheduler.schedule(() -> recompile(canteenId), compileDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void markAllDirty() {
+        menus.keySet().forEach(this::markDirty);
+    }
+
+    private void recompile(String canteenId) {
+        dirty.remove(canteenId);                             //先移除标记，编译期间的新变更会再排一次。
+        try {
+            menus.put(canteenId, compile(canteenId));
+        } catch (ResourceNotFoundException e) {
+            menus.remove(canteenId);
+        } catch (RuntimeException e) {
+            log.warn("Failed to compile menu of canteen {}, next request recompiles it", canteenId, e);
+            menus.remove(canteenId);
+        }
+    }
+
+    //compile 方法: 通过服务层读取，食堂和菜单走目录缓存，评分汇总一次批量查询。
+    //             ETag 只由菜单内容计算（不含 compiledAt）；内容与当前快照相同时沿用当前快照，重编译不会改变 ETag，也不必重新压缩。
+    private CompiledMenu compile(String canteenId) {
+        Canteen canteen = canteenService.getCanteenById(canteenId);
+        List<Dish> dishes = new ArrayList<>(dishService.getDishesByCanteenId(canteenId));
+        dishes.sort(Comparator.comparing(Dish::getName, Comparator.nullsLast(Comparator.naturalOrder())));
+        List<DishWithRating> rated = ratingSummaryService.attachToDishes(dishes);
+        RatingSummary rating = ratingSummaryService.getCanteenSummaries(Collections.singletonList(canteenId)).get(canteenId);
+
+        MenuSnapshot snapshot = new MenuSnapshot();
+        snapshot.setCanteen(canteen);
+        snapshot.setRating(rating != null ? rating : RatingSummary.empty(RatingSummary.TARGET_CANTEEN, canteenId));
+        snapshot.setDishes(rated);
+        try {
+            String etag = "W/\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(snapshot)) + "\"";
+            CompiledMenu current = menus.get(canteenId);
+            if (current != null && current.getEtag().equals(etag)) {
+                return current;
+            }
+            snapshot.setCompiledAt(Instant.now());
+            byte[] json = objectMapper.writeValueAsBytes(snapshot);
+            return new CompiledMenu(json, gzip(json), etag, snapshot.getCompiledAt());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize menu of canteen " + canteenId, e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {                //只在编译时压缩一次，因此使用最高压缩级别。
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,221 @@
+//以下是运行指标模块的代码示例，使用 Micrometer 记录接口、服务方法和 MongoDB 命令的耗时，并以 Prometheus 格式暴露：
+//这段代码演示了 MongoDB 命令监听器、服务方法计时切面和指标配置类。接口耗时和连接池指标由 Spring Boot Actuator 自动提供，本模块只补充它没有的部分；所有计时器默认只记录次数、总耗时和最大值，开销很小，可以在生产环境常开。
+
+management.server.port=9090
+management.endpoints.web.exposure.include=health,prometheus
+management.metrics.tags.application=canteen-app
+management.metrics.distribution.percentiles-histogram.http.server.requests=true
+management.metrics.distribution.minimum-expected-value.http.server.requests=1ms
+management.metrics.distribution.maximum-expected-value.http.server.requests=5s
+management.metrics.mongo.command.enabled=false
+management.metrics.mongo.connectionpool.enabled=true
+//application.properties 配置文件（需要 spring-boot-starter-actuator、spring-boot-starter-aop 和 micrometer-registry-prometheus 依赖）
+//management.server.port: 指标和健康检查使用单独的端口，只对内网的 Prometheus 开放，不经过 /api/** 的令牌拦截器。
+//management.endpoints.web.exposure.include: 暴露 /actuator/prometheus 抓取端点。
+//management.metrics.distribution.*.http.server.requests: 为每个接口（按 URI 模板区分）的耗时生成直方图桶，桶的范围限制在 1ms~5s 以控制时间序列数量。
+//management.metrics.mongo.command.enabled: 关闭 Actuator 自带的命令监听器，由 MongoCommandMetrics 代替（额外记录集合名和返回文档数）。
+//management.metrics.mongo.connectionpool.enabled: 连接池指标 mongodb.driver.pool.size / checkedout / waitqueuesize，由 Actuator 为 spring.data.mongodb.uri 创建的客户端自动注册。
+//需要服务方法或 MongoDB 命令的分位数时，同样用 management.metrics.distribution.percentiles-histogram.canteen.service.calls=true 之类的配置按需打开。
+
+
+package com.example.canteenapp.metrics;                      //MongoDB 命令监听器：按集合和命令记录次数、耗时和返回的文档数
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class MongoCommandMetrics implements CommandListener {
+
+    private static final String UNKNOWN = "unknown";
+
+    private final MeterRegistry registry;
+    private final Map<Integer, String> started = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> documents = new ConcurrentHashMap<>();
+
+    public MongoCommandMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {   //命令文档在回调返回后会被驱动复用，这里只保存集合名。
+        started.put(event.getRequestId(), collectionOf(event.getCommandName(), event.getCommand()));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        String collection = started.remove(event.getRequestId());
+        if (collection == null) {
+            return;
+        }
+        String command = event.getCommandName();
+        timer(command, collection, "success").record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        long count = documentCount(event.getResponse());
+        if (count >= 0) {
+            documents.computeIfAbsent(command + '|' + collection, k -> DistributionSummary.builder("canteen.mongo.documents")
+                    .description("Documents returned or affected per MongoDB command")
+                    .tag("command", command)
+                    .tag("collection", collection)
+                    .register(registry)).record(count);
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        String collection = started.remove(event.getRequestId());
+        if (collection != null) {
+            timer(event.getCommandName(), collection, "failed").record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(String command, String collection, String status) {   //按标签组合缓存计时器，避免每条命令都走注册表查找。
+        return timers.computeIfAbsent(command + '|' + collection + '|' + status, k -> Timer.builder("canteen.mongo.commands")
+                .description("MongoDB command latency by collection")
+                .tag("command", command)
+                .tag("collection", collection)
+                .tag("status", status)
+                .register(registry));
+    }
+
+    private static String collectionOf(String commandName, BsonDocument command) {
+        BsonValue value = command.get("getMore".equals(commandName) ? "collection" : commandName);
+        return value != null && value.isString() ? value.asString().getValue() : UNKNOWN;
+    }
+
+    private static long documentCount(BsonDocument response) {  //find / aggregate / getMore 取本批文档数，count 和写命令取 n；其他命令返回 -1 不记录。
+        BsonValue cursor = response.get("cursor");
+        if (cursor != null && cursor.isDocument()) {
+            BsonValue batch = cursor.asDocument().get("firstBatch", cursor.asDocument().get("nextBatch"));
+            return batch instanceof BsonArray ? ((BsonArray) batch).size() : -1;
+        }
+        BsonValue n = response.get("n");
+        return n != null && n.isNumber() ? n.asNumber().longValue() : -1;
+    }
+}
+
+
+package com.example.canteenapp.metrics;                      //服务方法计时切面：为 service.impl 包下每个公开方法记录调用次数和耗时
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@Aspect
+public class ServiceMetricsAspect {
+
+    private final MeterRegistry registry;
+    private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+    public ServiceMetricsAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    //响应式服务返回的 Mono / Flux 在订阅时才执行查询，计时没有意义，因此排除；返回 Stream 的方法只计入打开游标的耗时。
+    @Around("execution(public * com.example.canteenapp.service.impl..*(..)) && !within(com.example.canteenapp.service.impl.Reactive*)")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            timers.computeIfAbsent(((MethodSignature) joinPoint.getSignature()).getMethod(), method -> builder(method, "none").register(registry))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            builder(((MethodSignature) joinPoint.getSignature()).getMethod(), e.getClass().getSimpleName()).register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private static Timer.Builder builder(Method method, String exception) {
+        return Timer.builder("canteen.service.calls")
+                .description("Service method latency")
+                .tag("class", method.getDeclaringClass().getSimpleName())
+                .tag("method", method.getName())
+                .tag("exception", exception);
+    }
+}
+
+
+package com.example.canteenapp.config;                       //指标配置类：注册 MongoDB 命令监听器、服务计时切面，以及缓存和工作队列的指标
+
+import com.example.canteenapp.cache.CatalogCache;
+import com.example.canteenapp.cache.CatalogCaches;
+import com.example.canteenapp.image.ThumbnailGenerator;
+import com.example.canteenapp.metrics.MongoCommandMetrics;
+import com.example.canteenapp.metrics.ServiceMetricsAspect;
+import com.example.canteenapp.security.PasswordHashExecutor;
+import com.example.canteenapp.service.ReviewIngestionService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration                                               //@Configuration: 标识该类为配置类。
+public class MetricsConfig {
+
+    @Bean
+    public MongoCommandMetrics mongoCommandMetrics(MeterRegistry registry) {
+        return new MongoCommandMetrics(registry);
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoCommandMetricsListener(MongoCommandMetrics mongoCommandMetrics) {
+        return builder -> builder.addCommandListener(mongoCommandMetrics);
+    }
+
+    @Bean
+    public ServiceMetricsAspect serviceMetricsAspect(MeterRegistry registry) {
+        return new ServiceMetricsAspect(registry);
+    }
+
+    @Bean
+    public MeterBinder catalogCacheMetrics(CatalogCaches catalogCaches) {      //命中率、淘汰数等指标直接读取 Caffeine 的统计。
+        return registry -> {
+            for (CatalogCache<?> cache : catalogCaches.all()) {
+                CaffeineCacheMetrics.monitor(registry, cache.getLocal(), cache.getName());
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder workQueueMetrics(PasswordHashExecutor passwordHashExecutor,
+                                       ReviewIngestionService reviewIngestionService,
+                                       ThumbnailGenerator thumbnailGenerator) {
+        return registry -> {
+            Gauge.builder("canteen.queue.depth", passwordHashExecutor, PasswordHashExecutor::getQueueDepth)
+                    .description("Tasks waiting in the work queue")
+                    .tag("queue", "passwordHash")
+                    .register(registry);
+            Gauge.builder("canteen.queue.depth", reviewIngestionService, ReviewIngestionService::getQueueDepth)
+                    .description("Tasks waiting in the work queue")
+                    .tag("queue", "reviewIngest")
+                    .register(registry);
+            Gauge.builder("canteen.queue.depth", thumbnailGenerator, ThumbnailGenerator::getQueueDepth)
+                    .description("Tasks waiting in the work queue")
+                    .tag("queue", "thumbnail")
+                    .register(registry);
+        };
+    }
+}
@@ -2,10 +2,13 @@
 //这段代码演示了使用 Spring Data MongoDB 连接和配置数据库的基本步骤，您可以根据自己的需求进行调整和扩展。
 
 spring.data.mongodb.uri=mongodb://localhost:27017/canteenApp
+app.mongo.index-reconcile=true
 //application.properties 配置文件
 //spring.data.mongodb.uri: 指定 MongoDB 数据库的连接 URI。
 //mongodb://localhost:27017: MongoDB 数据库的地址和端口号。
 //canteenApp: 要连接的数据库名称。
+//app.mongo.index-reconcile: 启动完成后在后台线程中创建实体类上声明但数据库中缺失的索引。
+//启动完成后 DishPriceMigration 把以字符串保存的旧菜品价格转换为 Decimal128，已转换的文档不会再被修改。
 
 
 package com.example.canteenapp.config;                                                                //配置类 
@@ -36,3 +39,265 @@ public class MongoConfig {
 
 //请确保您已经在项目中添加了 Spring Data MongoDB 的依赖。
 //您需要根据实际情况修改数据库连接信息。
+
+
+package com.example.canteenapp.config;                                                                //索引协调器
+
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.RatingSummary;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Component                                                                                           //标识该类为 Spring 组件，会被 Spring 容器管理。
+@ConditionalOnProperty(name = "app.mongo.index-reconcile", havingValue = "true", matchIfMissing = true)
+public class IndexReconciler {                                                                       //按实体类上的 @Indexed / @CompoundIndex 声明，补建数据库中缺失的索引。
+
+    private static final Logger log = LoggerFactory.getLogger(IndexReconciler.class);
+
+    private static final List<Class<?>> ENTITIES = Arrays.asList(
+            Canteen.class, Dish.class, Review.class, User.class, RatingSummary.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoMappingContext mongoMappingContext;
+
+    @EventListener(ApplicationReadyEvent.class)                                                      //在后台线程中执行，不阻塞应用启动。
+    public void reconcileInBackground() {
+        Thread thread = new Thread(this::reconcile, "index-reconciler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public Map<String, List<String>> reconcile() {                                                   //返回 集合名 -> 新建的索引名。
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoMappingContext);
+        Map<String, List<String>> created = new LinkedHashMap<>();
+        for (Class<?> type : ENTITIES) {
+            String collection = mongoTemplate.getCollectionName(type);
+            IndexOperations indexOps = mongoTemplate.indexOps(type);
+            Set<String> existing = indexOps.getIndexInfo().stream()
+                    .map(IndexInfo::getName)
+                    .collect(Collectors.toSet());
+            List<String> createdHere = new ArrayList<>();
+            resolver.resolveIndexFor(type).forEach(definition -> {
+                String name = definition.getIndexOptions().getString("name");
+                if (name != null && existing.contains(name)) {
+                    return;
+                }
+                try {
+                    createdHere.add(indexOps.ensureIndex(definition));
+                } catch (RuntimeException e) {                                                       //例如已有同键不同名的索引，或唯一索引遇到重复数据，记录后继续处理其他索引。
+                    log.warn("Could not create index {} on {}: {}", name, collection, e.getMessage());
+                }
+            });
+            if (!createdHere.isEmpty()) {
+                log.info("Created indexes {} on {}", createdHere, collection);
+                created.put(collection, createdHere);
+            }
+        }
+        return created;
+    }
+}
+
+
+package com.example.canteenapp.config;                                                                //菜品价格迁移：把字符串价格转换为 Decimal128
+
+import com.example.canteenapp.cache.CatalogCaches;
+import com.example.canteenapp.menu.MenuCompiler;
+import com.example.canteenapp.model.Dish;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Component                                                                                           //标识该类为 Spring 组件，会被 Spring 容器管理。
+public class DishPriceMigration {                                                                    //Dish.price 改为 Decimal128 之前，BigDecimal 以字符串保存，"10.00" < "9.50"。
+
+    private static final Logger log = LoggerFactory.getLogger(DishPriceMigration.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CatalogCaches catalogCaches;
+
+    @Autowired
+    private MenuCompiler menuCompiler;
+
+    @EventListener(ApplicationReadyEvent.class)                                                      //只匹配字符串类型的价格，一条 updateMany 在服务端完成转换，重复执行没有副作用。
+    public void migrate() {
+        Query legacy = new Query(Criteria.where("price").type(2));
+        legacy.fields().include("canteenId");
+        List<Dish> affected = mongoTemplate.find(legacy, Dish.class);                                //先记下要转换的菜品，转换后据此让缓存和 ETag 失效。
+        if (affected.isEmpty()) {
+            return;
+        }
+        long converted = mongoTemplate.updateMulti(new Query(Criteria.where("price").type(2)),
+                AggregationUpdate.update().set("price").toValue(context -> new Document("$toDecimal", "$price")),
+                Dish.class).getModifiedCount();
+        if (converted > 0) {
+            log.info("Converted {} dish prices from string to Decimal128", converted);
+        }
+
+        Set<String> canteenIds = new HashSet<>();                                                    //与导入相同：升级持久化的版本号，客户端持有的旧 ETag 不再命中 304。
+        for (Dish dish : affected) {
+            catalogCaches.dishes().invalidate(dish.getId());
+            if (dish.getCanteenId() != null) {
+                canteenIds.add(dish.getCanteenId());
+            }
+        }
+        for (String canteenId : canteenIds) {
+            catalogCaches.dishesByCanteen().invalidate(canteenId);
+            menuCompiler.markDirty(canteenId);
+        }
+        catalogCaches.dishes().invalidate(CatalogCaches.ALL);
+    }
+}
+
+
+package com.example.canteenapp.config;                                                                //查询计划检查配置类（仅 test 环境）
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@Profile("test")                                                                                     //只在 test 环境启用：每条查询都会额外执行一次 explain，不适合生产环境。
+public class QueryPlanConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public QueryPlanReporter queryPlanReporter(ObjectProvider<MongoTemplate> mongoTemplate) {
+        return new QueryPlanReporter(mongoTemplate);
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer queryPlanListener(QueryPlanReporter queryPlanReporter) {
+        return builder -> builder.addCommandListener(queryPlanReporter);
+    }
+
+    public static class QueryPlanReporter implements CommandListener {                              //对 find / aggregate / count 命令执行 explain，记录走全集合扫描 (COLLSCAN) 的查询。
+
+        private static final Logger log = LoggerFactory.getLogger(QueryPlanReporter.class);
+
+        private static final Set<String> EXPLAINED = new HashSet<>(Arrays.asList("find", "aggregate", "count"));
+
+        private final ObjectProvider<MongoTemplate> mongoTemplate;
+        private final Map<Integer, BsonDocument> started = new ConcurrentHashMap<>();
+        private final List<String> collectionScans = new CopyOnWriteArrayList<>();
+        private final ExecutorService explainer = Executors.newSingleThreadExecutor(r -> {     //守护线程，不阻止测试 JVM 退出；容器关闭时由 shutdown 停止。
+            Thread thread = new Thread(r, "query-plan-explainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        QueryPlanReporter(ObjectProvider<MongoTemplate> mongoTemplate) {
+            this.mongoTemplate = mongoTemplate;
+        }
+
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            if (EXPLAINED.contains(event.getCommandName())) {
+                started.put(event.getRequestId(), event.getCommand().clone());
+            }
+        }
+
+        @Override
+        public void commandSucceeded(CommandSucceededEvent event) {
+            BsonDocument command = started.remove(event.getRequestId());
+            if (command != null) {
+                long millis = event.getElapsedTime(TimeUnit.MILLISECONDS);
+                explainer.execute(() -> explain(command, millis));                                  //异步执行 explain，避免在驱动回调线程上发起新命令。
+            }
+        }
+
+        @Override
+        public void commandFailed(CommandFailedEvent event) {
+            started.remove(event.getRequestId());
+        }
+
+        private void explain(BsonDocument command, long millis) {
+            BsonDocument explainable = new BsonDocument();
+            command.forEach((key, value) -> {
+                if (!key.startsWith("$") && !key.equals("lsid") && !key.equals("txnNumber")) {
+                    explainable.put(key, value);
+                }
+            });
+            try {
+                Document plan = mongoTemplate.getObject().getDb().runCommand(
+                        new BsonDocument("explain", explainable).append("verbosity", new BsonString("queryPlanner")));
+                if (plan.toJson().contains("\"COLLSCAN\"")) {
+                    String report = explainable.toJson() + " (" + millis + " ms)";
+                    collectionScans.add(report);
+                    log.warn("Query without index: {}", report);
+                }
+            } catch (RuntimeException e) {
+                log.debug("Explain failed for {}", explainable.toJson(), e);
+            }
+        }
+
+        public List<String> getCollectionScans() {                                                  //供测试断言使用。
+            return collectionScans;
+        }
+
+        public void shutdown() {
+            explainer.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+//以下是分页与流式输出模块的代码示例，为列表接口提供游标分页和 NDJSON 流式响应：
+//这段代码演示了游标分页结果类、游标编解码工具和 NDJSON 输出工具。游标分页按索引键向后翻页，不使用 skip；流式输出逐条写出文档，内存占用与结果大小无关。
+package com.example.canteenapp.model;                        //游标分页结果类
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data                                                        //Lombok 注解，自动生成 getter、setter、toString 等方法。
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    private List<T> items;                                   //本页数据。
+    private String nextCursor;                               //下一页游标，作为 after 参数传回；为 null 表示没有更多数据。
+}
+
+
+package com.example.canteenapp.util;                         //游标编解码工具
+
+import com.example.canteenapp.exception.BadRequestException;
+import com.example.canteenapp.model.CursorPage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+public final class Cursors {
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    private Cursors() {
+    }
+
+    public static int clampLimit(Integer limit) {           //限制每页条数在 1 ~ MAX_LIMIT 之间。
+        if (limit == null || limit <= 0) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    //查询时多取一条 (limit + 1)，据此判断是否还有下一页，并用本页最后一条生成游标。
+    public static <T> CursorPage<T> page(List<T> fetched, int limit, Function<T, String> cursorOf) {
+        if (fetched.size() <= limit) {
+            return new CursorPage<>(fetched, null);
+        }
+        List<T> items = fetched.subList(0, limit);
+        return new CursorPage<>(items, cursorOf.apply(items.get(limit - 1)));
+    }
+
+    public static String encodeTimeCursor(LocalDateTime createdAt, String id) {   //评价游标：(createdAt, id) 组合，Base64URL 编码后对客户端不透明。
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static TimeCursor decodeTimeCursor(String cursor) {  //客户端传入的游标无法解析时返回 400，而不是 500。
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('|');
+            if (sep > 0 && sep < raw.length() - 1) {
+                return new TimeCursor(LocalDateTime.parse(raw.substring(0, sep)), raw.substring(sep + 1));
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // 落到下面统一抛出 BadRequestException
+        }
+        throw new BadRequestException("Invalid cursor: " + cursor);
+    }
+
+    public static final class TimeCursor {
+
+        private final LocalDateTime createdAt;
+        private final String id;
+
+        TimeCursor(LocalDateTime createdAt, String id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        public LocalDateTime getCreatedAt() {
+            return createdAt;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+}
+
+
+package com.example.canteenapp.util;                         //NDJSON 流式输出工具
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+public final class Ndjson {
+
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    private Ndjson() {
+    }
+
+    //items 通常来自 MongoTemplate.stream 打开的数据库游标；每个文档序列化为一行 JSON 后立即写出，不在内存中累积列表，写完或出错时关闭游标。
+    public static <T> StreamingResponseBody body(ObjectMapper objectMapper, Stream<T> items) {
+        ObjectWriter writer = objectMapper.writer();
+        return out -> {
+            try (Stream<T> stream = items) {
+                Iterator<T> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    out.write(writer.writeValueAsBytes(iterator.next()));
+                    out.write('\n');
+                }
+            }
+        };
+    }
+}
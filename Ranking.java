@@ -0,0 +1,641 @@
+//以下是菜品排行模块的代码示例，根据新写入的评价实时维护"本周好评"和"正在流行"榜单：
+//这段代码演示了滑动窗口计数器、排行引擎、排行结果类和 DishController 中新增的两个接口。每道菜按分钟 (最近 1 小时) 和小时 (最近 7 天) 两个环形缓冲区计数，
+//后台线程每隔几秒重新计算各食堂的榜单快照，查询只读内存中的快照；引擎状态定期写入本地检查点文件，重启后只需从数据库补读检查点之后的评价。
+
+ranking.refresh-seconds=5
+ranking.checkpoint-seconds=60
+ranking.checkpoint-file=data/ranking-checkpoint.bin
+ranking.replay-overlap-minutes=10
+ranking.prior-weight=10
+ranking.max-k=50
+//application.properties 配置文件
+//ranking.refresh-seconds: 榜单快照的重算间隔（秒），即新评价最多延迟多久出现在榜单中。
+//ranking.checkpoint-seconds: 写检查点的间隔（秒）。
+//ranking.checkpoint-file: 检查点文件路径，写入时先写临时文件再原子替换。
+//ranking.replay-overlap-minutes: 重启补读向检查点之前多读的时长。评价 ID 在接收时分配，异步写入或本地日志回放的评价可能在检查点之后才写入数据库，
+//                                但 ID 早于检查点；检查点同时保存这段时间内已计入的评价 ID，补读时按 ID 跳过。应大于评价从接收到写入数据库的最长耗时。
+//ranking.prior-weight: 贝叶斯平均的先验权重 C，评分 = (C × 全局平均分 + 评分总和) / (C + 评价数)，评价数少的菜品会被拉向全局平均分。
+//ranking.max-k: 每个榜单保留的最大条目数，也是接口 limit 参数的上限。
+
+
+package com.example.canteenapp.model;                        //排行结果类
+
+import lombok.Data;
+
+@Data
+public class RankedDish {
+    private String dishId;
+    private String canteenId;
+    private DishSnapshot dish;                               //菜品名称和图片，取自最近一条评价中的快照。
+    private long count;                                      //窗口内的评价数
+    private double average;                                  //窗口内的平均分
+    private double score;                                    //排序分数：好评榜为贝叶斯平均分，流行榜为相对过去一周基线的增幅
+}
+
+
+package com.example.canteenapp.ranking;                      //环形时间桶计数器：固定数量的等宽时间桶，新桶覆盖最旧的桶
+
+final class WindowedCounter {
+
+    private final int[] counts;
+    private final int[] sums;
+    private long head = Long.MIN_VALUE;                      //最新时间桶的编号（时间 / 桶宽），桶 head - length + 1 到 head 有效。
+
+    WindowedCounter(int buckets) {
+        this.counts = new int[buckets];
+        this.sums = new int[buckets];
+    }
+
+    void record(long bucket, int rating) {                   //早于窗口的记录直接丢弃；晚于 head 的记录先推进 head 并清空被覆盖的桶。
+        advance(bucket);
+        if (bucket <= head - counts.length) {
+            return;
+        }
+        int slot = slot(bucket);
+        counts[slot]++;
+        sums[slot] += rating;
+    }
+
+    void advance(long bucket) {
+        if (head == Long.MIN_VALUE) {
+            head = bucket;
+            return;
+        }
+        if (bucket <= head) {
+            return;
+        }
+        long cleared = Math.min(bucket - head, counts.length);
+        for (long b = bucket - cleared + 1; b <= bucket; b++) {
+            counts[slot(b)] = 0;
+            sums[slot(b)] = 0;
+        }
+        head = bucket;
+    }
+
+    long count(long now, int buckets) {                      //统计编号 now - buckets + 1 到 now 的桶。
+        long total = 0;
+        for (long b = Math.max(now - buckets + 1, head - counts.length + 1); b <= Math.min(now, head); b++) {
+            total += counts[slot(b)];
+        }
+        return total;
+    }
+
+    long sum(long now, int buckets) {
+        long total = 0;
+        for (long b = Math.max(now - buckets + 1, head - counts.length + 1); b <= Math.min(now, head); b++) {
+            total += sums[slot(b)];
+        }
+        return total;
+    }
+
+    boolean isEmpty(long now) {
+        return head == Long.MIN_VALUE || head <= now - counts.length;
+    }
+
+    long getHead() {
+        return head;
+    }
+
+    int[] getCounts() {
+        return counts;
+    }
+
+    int[] getSums() {
+        return sums;
+    }
+
+    void restore(long head, int[] counts, int[] sums) {
+        this.head = head;
+        System.arraycopy(counts, 0, this.counts, 0, this.counts.length);
+        System.arraycopy(sums, 0, this.sums, 0, this.sums.length);
+    }
+
+    private int slot(long bucket) {
+        return (int) Math.floorMod(bucket, (long) counts.length);
+    }
+}
+
+
+package com.example.canteenapp.ranking;                      //排行时间窗口
+
+import com.example.canteenapp.exception.BadRequestException;
+
+public enum RankingWindow {
+    HOUR, DAY, WEEK;
+
+    public static RankingWindow parse(String value) {
+        for (RankingWindow window : values()) {
+            if (window.name().equalsIgnoreCase(value)) {
+                return window;
+            }
+        }
+        throw new BadRequestException("Unknown ranking window: " + value + ", expected hour, day or week");
+    }
+}
+
+
+package com.example.canteenapp.ranking;                      //排行引擎：接收新评价，定期重算各食堂和全校的好评榜、流行榜快照
+
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishSnapshot;
+import com.example.canteenapp.model.RankedDish;
+import com.example.canteenapp.model.Review;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.BufferedInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+@Component
+public class DishRankingEngine {
+
+    public static final String ALL_CANTEENS = "*";           //全校榜单在快照中的 key。
+
+    private static final Logger log = LoggerFactory.getLogger(DishRankingEngine.class);
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final int MINUTE_BUCKETS = 60;
+    private static final int HOUR_BUCKETS = 7 * 24;
+    private static final int CHECKPOINT_VERSION = 2;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${ranking.refresh-seconds:5}")
+    private long refreshSeconds;
+
+    @Value("${ranking.checkpoint-seconds:60}")
+    private long checkpointSeconds;
+
+    @Value("${ranking.checkpoint-file:data/ranking-checkpoint.bin}")
+    private String checkpointFile;
+
+    @Value("${ranking.replay-overlap-minutes:10}")
+    private long replayOverlapMinutes;
+
+    @Value("${ranking.prior-weight:10}")
+    private double priorWeight;
+
+    @Value("${ranking.max-k:50}")
+    private int maxK;
+
+    private final Map<String, DishCounters> dishes = new ConcurrentHashMap<>();
+    private final Map<String, String> dishCanteens = new ConcurrentHashMap<>();
+    private volatile Map<String, Map<String, List<RankedDish>>> snapshot = Collections.emptyMap();
+    private final Map<String, Long> recentIds = new ConcurrentHashMap<>();   //最近计入的评价 ID 及其 ID 时间戳，实时路径、领域事件和补读按 ID 去重。
+    private final AtomicLong watermark = new AtomicLong();   //已计入的评价中最大的 ID 时间戳（毫秒，即接收顺序），写入检查点。
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();   //计入评价时持读锁，写检查点时持写锁，计数器、watermark 和 recentIds 一起保存。
+    private volatile boolean replaying = true;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dish-ranking");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::recover);
+        scheduler.scheduleWithFixedDelay(this::refresh, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::checkpoint, checkpointSeconds, checkpointSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        checkpoint();
+    }
+
+    //recordReviews 方法: 由 ReviewServiceImpl.saveReviews 在评价写入后调用；只针对菜品的评价，缺少归属食堂的旧评价一次批量查询补齐。
+    //启动补读期间实时评价照常计入，补读和实时路径都先把评价 ID 放入 recentIds，同一条评价只计一次。
+    public void recordReviews(List<Review> reviews) {
+        List<Review> live = new ArrayList<>(reviews.size());
+        for (Review review : reviews) {
+            if (review.getDishId() != null && review.getCreatedAt() != null) {
+                live.add(review);
+            }
+        }
+        record(live);
+    }
+
+    public List<RankedDish> topRated(String canteenId, RankingWindow window, int limit) {
+        return lookup(canteenId, "topRated:" + window, limit);
+    }
+
+    public List<RankedDish> trending(String canteenId, RankingWindow window, int limit) {
+        return lookup(canteenId, "trending:" + window, limit);
+    }
+
+    private List<RankedDish> lookup(String canteenId, String board, int limit) {
+        Map<String, List<RankedDish>> boards = snapshot.get(canteenId == null ? ALL_CANTEENS : canteenId);
+        List<RankedDish> ranked = boards == null ? null : boards.get(board);
+        if (ranked == null) {
+            return Collections.emptyList();
+        }
+        return ranked.subList(0, Math.min(Math.max(limit, 1), ranked.size()));
+    }
+
+    private void record(List<Review> reviews) {
+        if (reviews.isEmpty()) {
+            return;
+        }
+        resolveCanteens(reviews);
+        stateLock.readLock().lock();
+        try {
+            long latest = 0;
+            for (Review review : reviews) {
+                long accepted = acceptedAt(review);
+                if (review.getId() != null && recentIds.putIfAbsent(review.getId(), accepted) != null) {
+                    continue;
+                }
+                long time = millis(review.getCreatedAt());
+                String canteenId = review.getOwnerCanteenId() != null ? review.getOwnerCanteenId() : dishCanteens.get(review.getDishId());
+                boolean recorded = false;
+                while (!recorded) {                          //refresh 可能刚移除了取到的计数器（removed 标记），重新取一个新的计数器再计入。
+                    DishCounters counters = dishes.computeIfAbsent(review.getDishId(), id -> new DishCounters(id, canteenId));
+                    synchronized (counters) {
+                        if (!counters.removed) {
+                            counters.minutes.record(time / MINUTE, review.getRating());
+                            counters.hours.record(time / HOUR, review.getRating());
+                            if (review.getDish() != null) {
+                                counters.dish = review.getDish();
+                            }
+                            recorded = true;
+                        }
+                    }
+                }
+                latest = Math.max(latest, accepted);
+            }
+            watermark.accumulateAndGet(latest, Math::max);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    private static long acceptedAt(Review review) {          //评价 ID 是接收时分配的 ObjectId，其时间戳就是接收顺序；非 ObjectId 的旧数据退回 createdAt。
+        if (review.getId() != null && ObjectId.isValid(review.getId())) {
+            return new ObjectId(review.getId()).getDate().getTime();
+        }
+        return millis(review.getCreatedAt());
+    }
+
+    private void resolveCanteens(List<Review> reviews) {
+        Set<String> missing = new HashSet<>();
+        for (Review review : reviews) {
+            if (review.getOwnerCanteenId() == null && !dishCanteens.containsKey(review.getDishId())) {
+                missing.add(review.getDishId());
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        Query query = new Query(Criteria.where("id").in(missing));
+        query.fields().include("canteenId");
+        for (Dish dish : mongoTemplate.find(query, Dish.class)) {
+            if (dish.getCanteenId() != null) {
+                dishCanteens.put(dish.getId(), dish.getCanteenId());
+            }
+        }
+    }
+
+    //refresh 方法: 遍历所有有评价的菜品，为每个食堂和全校分别计算各窗口的好评榜和流行榜前 maxK 名，整体替换快照；
+    //             一周内没有评价的菜品在计数器锁内标记 removed 后移除，正在计入的 record 看到标记后改用新的计数器，评价不会丢失。
+    void refresh() {
+        try {
+            long now = System.currentTimeMillis();
+            long minute = now / MINUTE;
+            long hour = now / HOUR;
+            Map<String, List<Stats>> byCanteen = new HashMap<>();
+            long[] totalCount = new long[RankingWindow.values().length];
+            long[] totalSum = new long[RankingWindow.values().length];
+            for (DishCounters counters : dishes.values()) {
+                Stats stats = new Stats(counters);
+                synchronized (counters) {
+                    if (counters.hours.isEmpty(hour)) {
+                        counters.removed = true;
+                        dishes.remove(counters.dishId, counters);
+                        continue;
+                    }
+                    stats.dish = counters.dish;
+                    stats.count[0] = counters.minutes.count(minute, MINUTE_BUCKETS);
+                    stats.sum[0] = counters.minutes.sum(minute, MINUTE_BUCKETS);
+                    stats.count[1] = counters.hours.count(hour, 24);
+                    stats.sum[1] = counters.hours.sum(hour, 24);
+                    stats.count[2] = counters.hours.count(hour, HOUR_BUCKETS);
+                    stats.sum[2] = counters.hours.sum(hour, HOUR_BUCKETS);
+                }
+                for (int w = 0; w < totalCount.length; w++) {
+                    totalCount[w] += stats.count[w];
+                    totalSum[w] += stats.sum[w];
+                }
+                byCanteen.computeIfAbsent(ALL_CANTEENS, k -> new ArrayList<>()).add(stats);
+                if (counters.canteenId != null) {
+                    byCanteen.computeIfAbsent(counters.canteenId, k -> new ArrayList<>()).add(stats);
+                }
+            }
+            Map<String, Map<String, List<RankedDish>>> next = new HashMap<>();
+            for (Map.Entry<String, List<Stats>> entry : byCanteen.entrySet()) {
+                Map<String, List<RankedDish>> boards = new HashMap<>();
+                for (RankingWindow window : RankingWindow.values()) {
+                    int w = window.ordinal();
+                    double mean = totalCount[w] == 0 ? 0 : (double) totalSum[w] / totalCount[w];
+                    boards.put("topRated:" + window, top(entry.getValue(), w,
+                            s -> (priorWeight * mean + s.sum[w]) / (priorWeight + s.count[w])));
+                    boards.put("trending:" + window, top(entry.getValue(), w, s -> trendScore(s, window)));
+                }
+                next.put(entry.getKey(), boards);
+            }
+            snapshot = next;
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh dish rankings", e);
+        }
+    }
+
+    //trendScore 方法: 窗口内评价数相对过去一周同等时长平均值的增幅，用泊松标准差归一化，评价数少时不会因偶然波动排到前面；周窗口没有基线，等同于按评价数排序。
+    private static double trendScore(Stats stats, RankingWindow window) {
+        double recent = stats.count[window.ordinal()];
+        double baseline;
+        switch (window) {
+            case HOUR:
+                baseline = (stats.count[2] - recent) / (HOUR_BUCKETS - 1);
+                break;
+            case DAY:
+                baseline = (stats.count[2] - recent) / 6.0;
+                break;
+            default:
+                baseline = 0;
+        }
+        return (recent - baseline) / Math.sqrt(baseline + 1);
+    }
+
+    private List<RankedDish> top(List<Stats> candidates, int w, ToDoubleFunction<Stats> scorer) {
+        PriorityQueue<RankedDish> heap = new PriorityQueue<>(Comparator.comparingDouble(RankedDish::getScore));
+        for (Stats stats : candidates) {
+            if (stats.count[w] == 0) {
+                continue;
+            }
+            double score = scorer.applyAsDouble(stats);
+            if (heap.size() < maxK || score > heap.peek().getScore()) {
+                RankedDish ranked = new RankedDish();
+                ranked.setDishId(stats.counters.dishId);
+                ranked.setCanteenId(stats.counters.canteenId);
+                ranked.setDish(stats.dish);
+                ranked.setCount(stats.count[w]);
+                ranked.setAverage((double) stats.sum[w] / stats.count[w]);
+                ranked.setScore(score);
+                heap.add(ranked);
+                if (heap.size() > maxK) {
+                    heap.poll();
+                }
+            }
+        }
+        List<RankedDish> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingDouble(RankedDish::getScore).reversed());
+        return Collections.unmodifiableList(result);
+    }
+
+    //recover 方法: 先读取检查点，再按 _id（接收顺序）从数据库补读检查点前 replay-overlap-minutes（且不早于一周前）之后的全部评价，
+    //              不设上限：补读期间写入的评价可能同时出现在补读和实时路径中，由 recentIds 去重。
+    void recover() {
+        long since = System.currentTimeMillis() - HOUR_BUCKETS * HOUR;
+        try {
+            long saved = readCheckpoint();
+            if (saved > 0) {
+                since = Math.max(since, saved - TimeUnit.MINUTES.toMillis(replayOverlapMinutes));
+            }
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable ranking checkpoint {}", checkpointFile, e);
+            dishes.clear();
+            recentIds.clear();
+            watermark.set(0);
+        }
+        replay(since);
+    }
+
+    //resync 方法: 领域事件要求重建时调用（变更流历史丢失，中间的评价没有计入），在排行线程上清空计数器，从数据库重放最近一周的评价。
+    public void resync() {
+        scheduler.execute(() -> {
+            stateLock.writeLock().lock();
+            try {
+                replaying = true;
+                dishes.clear();
+                recentIds.clear();
+                watermark.set(0);
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+            replay(System.currentTimeMillis() - HOUR_BUCKETS * HOUR);
+        });
+    }
+
+    private void replay(long since) {
+        Query query = new Query(Criteria.where("dishId").ne(null).and("_id").gt(ObjectId.getSmallestWithDate(new Date(since))))
+                .with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.fields().include("dishId", "ownerCanteenId", "rating", "createdAt", "dish");
+        long replayed = 0;
+        List<Review> batch = new ArrayList<>(1_000);
+        try (Stream<Review> reviews = mongoTemplate.stream(query, Review.class)) {
+            for (Review review : (Iterable<Review>) reviews::iterator) {
+                batch.add(review);
+                if (batch.size() == 1_000) {
+                    record(batch);
+                    replayed += batch.size();
+                    batch.clear();
+                }
+            }
+            record(batch);
+            replayed += batch.size();
+            log.info("Dish rankings recovered, {} reviews replayed from the database", replayed);
+        } catch (RuntimeException e) {                       //补读失败时榜单只缺少部分历史数据，不影响继续接收新评价。
+            log.warn("Dish ranking replay stopped after {} reviews", replayed, e);
+        } finally {
+            replaying = false;
+        }
+        refresh();
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path path = Paths.get(checkpointFile);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != CHECKPOINT_VERSION) {
+                return 0;
+            }
+            long savedWatermark = in.readLong();
+            int ids = in.readInt();
+            for (int i = 0; i < ids; i++) {
+                recentIds.put(in.readUTF(), in.readLong());
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                DishCounters counters = new DishCounters(in.readUTF(), emptyToNull(in.readUTF()));
+                String name = emptyToNull(in.readUTF());
+                String image = emptyToNull(in.readUTF());
+                if (name != null || image != null) {
+                    counters.dish = new DishSnapshot();
+                    counters.dish.setName(name);
+                    counters.dish.setImage(image);
+                }
+                readCounter(in, counters.minutes, MINUTE_BUCKETS);
+                readCounter(in, counters.hours, HOUR_BUCKETS);
+                dishes.put(counters.dishId, counters);
+                if (counters.canteenId != null) {
+                    dishCanteens.put(counters.dishId, counters.canteenId);
+                }
+            }
+            watermark.set(savedWatermark);
+            return savedWatermark;
+        }
+    }
+
+    //checkpoint 方法: 在写锁内把计数器、watermark 和 recentIds 序列化到内存，三者对应同一组已计入的评价；写文件在锁外进行，不阻塞新评价。
+    void checkpoint() {
+        if (replaying) {                                     //补读完成前检查点之前的评价还没有全部计入，此时的状态不能作为检查点。
+            return;
+        }
+        Path path = Paths.get(checkpointFile);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            stateLock.writeLock().lock();
+            try (DataOutputStream out = new DataOutputStream(buffer)) {
+                long mark = watermark.get();
+                long keepAfter = mark - TimeUnit.MINUTES.toMillis(replayOverlapMinutes);
+                recentIds.values().removeIf(accepted -> accepted < keepAfter);
+                out.writeInt(CHECKPOINT_VERSION);
+                out.writeLong(mark);
+                out.writeInt(recentIds.size());
+                for (Map.Entry<String, Long> entry : recentIds.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+                List<DishCounters> all = new ArrayList<>(dishes.values());
+                out.writeInt(all.size());
+                for (DishCounters counters : all) {
+                    synchronized (counters) {
+                        out.writeUTF(counters.dishId);
+                        out.writeUTF(nullToEmpty(counters.canteenId));
+                        out.writeUTF(counters.dish == null ? "" : nullToEmpty(counters.dish.getName()));
+                        out.writeUTF(counters.dish == null ? "" : nullToEmpty(counters.dish.getImage()));
+                        writeCounter(out, counters.minutes);
+                        writeCounter(out, counters.hours);
+                    }
+                }
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.write(temp, buffer.toByteArray());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to write ranking checkpoint {}", checkpointFile, e);
+        }
+    }
+
+    private static void writeCounter(DataOutputStream out, WindowedCounter counter) throws IOException {
+        out.writeLong(counter.getHead());
+        for (int value : counter.getCounts()) {
+            out.writeInt(value);
+        }
+        for (int value : counter.getSums()) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void readCounter(DataInputStream in, WindowedCounter counter, int buckets) throws IOException {
+        long head = in.readLong();
+        int[] counts = new int[buckets];
+        int[] sums = new int[buckets];
+        for (int i = 0; i < buckets; i++) {
+            counts[i] = in.readInt();
+        }
+        for (int i = 0; i < buckets; i++) {
+            sums[i] = in.readInt();
+        }
+        counter.restore(head, counts, sums);
+    }
+
+    private static long millis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static final class DishCounters {
+
+        private final String dishId;
+        private final String canteenId;
+        private final WindowedCounter minutes = new WindowedCounter(MINUTE_BUCKETS);
+        private final WindowedCounter hours = new WindowedCounter(HOUR_BUCKETS);
+        private DishSnapshot dish;
+        private boolean removed;                             //已从 dishes 中移除，持有该对象的 record 需要重新取计数器。
+
+        DishCounters(String dishId, String canteenId) {
+            this.dishId = dishId;
+            this.canteenId = canteenId;
+        }
+    }
+
+    private static final class Stats {                       //一次重算中某道菜在 小时 / 天 / 周 三个窗口的计数，下标为 RankingWindow.ordinal()。
+
+        private final DishCounters counters;
+        private final long[] count = new long[3];
+        private final long[] sum = new long[3];
+        private DishSnapshot dish;
+
+        Stats(DishCounters counters) {
+            this.counters = counters;
+        }
+    }
+}
+
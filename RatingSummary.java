@@ -0,0 +1,403 @@
+//以下是评分汇总模块的代码示例，为菜品和食堂维护预聚合的评分计数器：
+//这段代码演示了评分汇总模块的基本功能，包括汇总实体类、服务接口、服务实现类和控制器。列表页只需一次按 ID 批量查询即可得到平均分和评价数，无需加载全部评价。
+package com.example.canteenapp.model;                        //评分汇总实体类
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data                                                        //Lombok 注解，自动生成 getter、setter、toString 等方法。
+@Document(collection = "rating_summaries")                   //指定该实体类映射到 MongoDB 中名为 "rating_summaries" 的集合。
+public class RatingSummary {
+
+    public static final String TARGET_DISH = "dish";
+    public static final String TARGET_CANTEEN = "canteen";
+
+    @Id                                                      //主键，格式为 "目标类型:目标 ID"，例如 "dish:64f0..."。
+    private String id;
+    private String targetType;                               //汇总对象类型：dish 或 canteen。
+    private String targetId;                                 //菜品或食堂的 ID。
+    private long count;                                      //评价总数。
+    private long sum;                                        //评分总和。
+    private Map<String, Long> histogram = new HashMap<>();   //1-5 星分布，键为星级 "1" ~ "5"。
+
+    public static String key(String targetType, String targetId) {
+        return targetType + ":" + targetId;
+    }
+
+    public static RatingSummary empty(String targetType, String targetId) {   //没有任何评价时返回的空汇总。
+        RatingSummary summary = new RatingSummary();
+        summary.setId(key(targetType, targetId));
+        summary.setTargetType(targetType);
+        summary.setTargetId(targetId);
+        return summary;
+    }
+
+    public double getAverage() {                             //平均分，由 sum / count 计算得到，不单独存储。
+        return count == 0 ? 0 : (double) sum / count;
+    }
+}
+
+
+package com.example.canteenapp.model;                        //带评分汇总的菜品
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DishWithRating {
+
+    private Dish dish;
+    private RatingSummary rating;
+}
+
+
+package com.example.canteenapp.model;                        //带评分汇总的食堂
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CanteenWithRating {
+
+    private Canteen canteen;
+    private RatingSummary rating;
+}
+
+
+package com.example.canteenapp.service;                      //评分汇总服务接口:定义了记录评分 (recordReview)、按 ID 批量获取汇总 (getDishSummaries / getCanteenSummaries)、为列表附加汇总 (attachToDishes / attachToCanteens) 和重建汇总 (rebuild) 的接口方法。
+
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.CanteenWithRating;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishWithRating;
+import com.example.canteenapp.model.RatingSummary;
+import com.example.canteenapp.model.Review;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface RatingSummaryService {
+
+    void recordReview(Review review);
+
+    Map<String, RatingSummary> getDishSummaries(Collection<String> dishIds);
+
+    Map<String, RatingSummary> getCanteenSummaries(Collection<String> canteenIds);
+
+    List<DishWithRating> attachToDishes(List<Dish> dishes);
+
+    List<CanteenWithRating> attachToCanteens(List<Canteen> canteens);
+
+    long rebuild();
+}
+
+
+package com.example.canteenapp.service.impl;                 //评分汇总服务实现类
+
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.CanteenWithRating;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishWithRating;
+import com.example.canteenapp.model.RatingSummary;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.service.RatingSummaryService;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.GroupOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service                                                     //标识该类为服务类，会被 Spring 容器管理。
+public class RatingSummaryServiceImpl implements RatingSummaryService {
+
+    private static final String REVIEWS = "reviews";
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    private static final long WATERMARK_GRACE_MILLIS = 5 * 60 * 1000L;   //评价 ID 在受理时分配，写入可能稍晚；水位线往前留出余量，保证水位线之前的评价在聚合时都已写入。
+
+    private static final Logger log = LoggerFactory.getLogger(RatingSummaryServiceImpl.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public void recordReview(Review review) {                //recordReview 方法: 对菜品和食堂的汇总文档执行 $inc upsert，单文档原子更新，无需先读后写。
+        if (review.getDishId() != null) {
+            increment(RatingSummary.TARGET_DISH, review.getDishId(), review.getRating());
+        }
+        if (review.getCanteenId() != null) {
+            increment(RatingSummary.TARGET_CANTEEN, review.getCanteenId(), review.getRating());
+        }
+    }
+
+    private void increment(String targetType, String targetId, int rating) {
+        Update update = new Update()
+                .setOnInsert("targetType", targetType)
+                .setOnInsert("targetId", targetId)
+                .inc("count", 1)
+                .inc("sum", rating);
+        if (rating >= 1 && rating <= 5) {
+            update.inc("histogram." + rating, 1);
+        }
+        Query query = Query.query(Criteria.where("_id").is(RatingSummary.key(targetType, targetId)));
+        mongoTemplate.upsert(query, update, RatingSummary.class);
+    }
+
+    @Override
+    public Map<String, RatingSummary> getDishSummaries(Collection<String> dishIds) {
+        return getSummaries(RatingSummary.TARGET_DISH, dishIds);
+    }
+
+    @Override
+    public Map<String, RatingSummary> getCanteenSummaries(Collection<String> canteenIds) {
+        return getSummaries(RatingSummary.TARGET_CANTEEN, canteenIds);
+    }
+
+    private Map<String, RatingSummary> getSummaries(String targetType, Collection<String> targetIds) {   //一次 $in 查询取回所有汇总，缺失的补为空汇总。
+        List<String> keys = targetIds.stream()
+                .map(targetId -> RatingSummary.key(targetType, targetId))
+                .collect(Collectors.toList());
+        Map<String, RatingSummary> result = new HashMap<>();
+        if (!keys.isEmpty()) {
+            Query query = Query.query(Criteria.where("_id").in(keys));
+            for (RatingSummary summary : mongoTemplate.find(query, RatingSummary.class)) {
+                result.put(summary.getTargetId(), summary);
+            }
+        }
+        for (String targetId : targetIds) {
+            result.computeIfAbsent(targetId, id -> RatingSummary.empty(targetType, id));
+        }
+        return result;
+    }
+
+    @Override
+    public List<DishWithRating> attachToDishes(List<Dish> dishes) {
+        Map<String, RatingSummary> summaries = getDishSummaries(
+                dishes.stream().map(Dish::getId).collect(Collectors.toList()));
+        List<DishWithRating> result = new ArrayList<>(dishes.size());
+        for (Dish dish : dishes) {
+            result.add(new DishWithRating(dish, summaries.get(dish.getId())));
+        }
+        return result;
+    }
+
+    @Override
+    public List<CanteenWithRating> attachToCanteens(List<Canteen> canteens) {
+        Map<String, RatingSummary> summaries = getCanteenSummaries(
+                canteens.stream().map(Canteen::getId).collect(Collectors.toList()));
+        List<CanteenWithRating> result = new ArrayList<>(canteens.size());
+        for (Canteen canteen : canteens) {
+            result.add(new CanteenWithRating(canteen, summaries.get(canteen.getId())));
+        }
+        return result;
+    }
+
+    //rebuild 方法: 以重建开始前 WATERMARK_GRACE_MILLIS 的 ObjectId 为水位线，水位线之前的评价用一次聚合统计，之后的评价在写回每批汇总前按 ID 重新统计；
+    //              写回时以读到的 count/sum 为条件（比较并交换），期间有 recordReview 的 $inc 落地则条件不成立，重新读取后再试，不会覆盖掉并发的计数。
+    //              结果为 0 的汇总同样带条件删除，重建期间新增第一条评价的对象会被统计进水位线之后的部分，不会被删除。
+    //              仍有一个极短的窗口：评价已插入但其 $inc 尚未执行时正好完成写回，该评价会被多计一次；下一次重建会纠正。
+    @Override
+    public long rebuild() {
+        ObjectId watermark = ObjectId.getSmallestWithDate(new Date(System.currentTimeMillis() - WATERMARK_GRACE_MILLIS));
+        return rebuild(RatingSummary.TARGET_DISH, "dishId", watermark)
+                + rebuild(RatingSummary.TARGET_CANTEEN, "canteenId", watermark);
+    }
+
+    private long rebuild(String targetType, String idField, ObjectId watermark) {
+        Map<String, RatingSummary> settled = aggregate(targetType, idField, Criteria.where(idField).ne(null).and("_id").lt(watermark));
+        Set<String> targetIds = new LinkedHashSet<>(settled.keySet());
+        Query existing = Query.query(Criteria.where("targetType").is(targetType));
+        existing.fields().include("targetId");
+        for (RatingSummary summary : mongoTemplate.find(existing, RatingSummary.class)) {   //已有但不在聚合结果中的汇总也要核对，可能需要删除。
+            targetIds.add(summary.getTargetId());
+        }
+
+        long rebuilt = 0;
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        for (String targetId : targetIds) {
+            batch.add(targetId);
+            if (batch.size() == BATCH_SIZE) {
+                rebuilt += reconcile(targetType, idField, batch, settled, watermark);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            rebuilt += reconcile(targetType, idField, batch, settled, watermark);
+        }
+        return rebuilt;
+    }
+
+    private long reconcile(String targetType, String idField, List<String> targetIds,
+                           Map<String, RatingSummary> settled, ObjectId watermark) {   //一批汇总：读取当前值，统计水位线之后的评价，带条件写回，冲突的重试。
+        long rebuilt = 0;
+        List<String> pending = targetIds;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            List<String> keys = pending.stream().map(id -> RatingSummary.key(targetType, id)).collect(Collectors.toList());
+            Map<String, RatingSummary> current = new HashMap<>();
+            for (RatingSummary summary : mongoTemplate.find(Query.query(Criteria.where("_id").in(keys)), RatingSummary.class)) {
+                current.put(summary.getTargetId(), summary);
+            }
+            Map<String, RatingSummary> recent = aggregate(targetType, idField, Criteria.where(idField).in(pending).and("_id").gte(watermark));
+
+            List<String> conflicts = new ArrayList<>();
+            for (String targetId : pending) {
+                RatingSummary target = RatingSummary.empty(targetType, targetId);
+                add(target, settled.get(targetId));
+                add(target, recent.get(targetId));
+                if (!apply(current.get(targetId), target)) {
+                    conflicts.add(targetId);
+                } else if (target.getCount() > 0) {
+                    rebuilt++;
+                }
+            }
+            pending = conflicts;
+        }
+        if (!pending.isEmpty()) {
+            log.warn("Rating summaries kept changing during rebuild, left as is: {} {}", targetType, pending);
+        }
+        return rebuilt;
+    }
+
+    private boolean apply(RatingSummary current, RatingSummary target) {   //比较并交换：只有汇总仍是刚读到的值时才写回或删除。
+        if (current == null) {
+            if (target.getCount() == 0) {
+                return true;
+            }
+            try {
+                mongoTemplate.insert(target);
+                return true;
+            } catch (DuplicateKeyException e) {                          //第一条评价的 $inc 刚好先创建了汇总。
+                return false;
+            }
+        }
+        if (current.getCount() == target.getCount() && current.getSum() == target.getSum()
+                && current.getHistogram().equals(target.getHistogram())) {
+            return true;
+        }
+        Query unchanged = Query.query(Criteria.where("_id").is(current.getId())
+                .and("count").is(current.getCount())
+                .and("sum").is(current.getSum()));
+        if (target.getCount() == 0) {
+            return mongoTemplate.remove(unchanged, RatingSummary.class).getDeletedCount() > 0;
+        }
+        return mongoTemplate.updateFirst(unchanged, new Update()
+                .set("targetType", target.getTargetType())
+                .set("targetId", target.getTargetId())
+                .set("count", target.getCount())
+                .set("sum", target.getSum())
+                .set("histogram", target.getHistogram()), RatingSummary.class).getMatchedCount() > 0;
+    }
+
+    private static void add(RatingSummary target, RatingSummary part) {
+        if (part == null) {
+            return;
+        }
+        target.setCount(target.getCount() + part.getCount());
+        target.setSum(target.getSum() + part.getSum());
+        part.getHistogram().forEach((star, n) -> target.getHistogram().merge(star, n, Long::sum));
+    }
+
+    private Map<String, RatingSummary> aggregate(String targetType, String idField, Criteria match) {
+        GroupOperation group = Aggregation.group(idField)
+                .count().as("count")
+                .sum("rating").as("sum");
+        for (int star = 1; star <= 5; star++) {
+            group = group.sum(ConditionalOperators.when(Criteria.where("rating").is(star)).then(1).otherwise(0))
+                    .as("star" + star);
+        }
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(match),
+                group);
+
+        Map<String, RatingSummary> result = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, REVIEWS, Document.class).getMappedResults()) {
+            String targetId = row.getString("_id");
+            RatingSummary summary = RatingSummary.empty(targetType, targetId);
+            summary.setCount(((Number) row.get("count")).longValue());
+            summary.setSum(((Number) row.get("sum")).longValue());
+            for (int star = 1; star <= 5; star++) {
+                long n = ((Number) row.get("star" + star)).longValue();
+                if (n > 0) {
+                    summary.getHistogram().put(String.valueOf(star), n);
+                }
+            }
+            result.put(targetId, summary);
+        }
+        return result;
+    }
+}
+//recordReview 方法: 每条新评价只产生两次单文档 $inc，汇总始终与评价同步增长。
+//getDishSummaries / getCanteenSummaries 方法: 读取列表时按 ID 批量取汇总，复杂度与评价数量无关。
+//rebuild 方法: 用于首次上线或数据修复，按菜品和食堂分组统计评价数、评分总和和星级分布，每 1000 个汇总读取、核对一次，可以在评价持续写入时执行。
+
+
+package com.example.canteenapp.controller;                   //评分汇总控制器
+
+import com.example.canteenapp.model.RatingSummary;
+import com.example.canteenapp.model.Role;
+import com.example.canteenapp.security.Authenticated;
+import com.example.canteenapp.service.RatingSummaryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController                                              //标识该类为 RESTful 风格的控制器。
+@RequestMapping("/api/ratings")                              //设置该控制器的根路径为 /api/ratings。
+public class RatingSummaryController {
+
+    @Autowired
+    private RatingSummaryService ratingSummaryService;
+
+    @GetMapping("/dishes")                                   //批量获取菜品评分汇总，请求路径为 /api/ratings/dishes?ids=a,b,c，请求方式为 GET。
+    public ResponseEntity<Map<String, RatingSummary>> getDishSummaries(@RequestParam List<String> ids) {
+        return new ResponseEntity<>(ratingSummaryService.getDishSummaries(ids), HttpStatus.OK);
+    }
+
+    @GetMapping("/canteens")                                 //批量获取食堂评分汇总，请求路径为 /api/ratings/canteens?ids=a,b,c，请求方式为 GET。
+    public ResponseEntity<Map<String, RatingSummary>> getCanteenSummaries(@RequestParam List<String> ids) {
+        return new ResponseEntity<>(ratingSummaryService.getCanteenSummaries(ids), HttpStatus.OK);
+    }
+
+    @Authenticated(Role.ADMIN)
+    @PostMapping("/rebuild")                                 //从 reviews 集合重建全部汇总，请求路径为 /api/ratings/rebuild，请求方式为 POST，只对管理员开放。
+    public ResponseEntity<Long> rebuild() {
+        return new ResponseEntity<>(ratingSummaryService.rebuild(), HttpStatus.OK);
+    }
+}
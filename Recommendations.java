@@ -0,0 +1,723 @@
+//以下是菜品推荐模块的代码示例，定期用全部菜品评价离线计算每个用户的推荐菜品列表：
+//这段代码演示了评分矩阵、Top-K 选择器、并行相似度计算、推荐组件、推荐服务方法和控制器。后台任务从 reviews 集合流式读取 用户-菜品-评分，
+//存成基本类型数组的稀疏矩阵（CSR 格式），用 ForkJoin 按菜品并行计算物品相似度（调整余弦），再按用户并行生成推荐列表；接口只读取内存中已计算好的结果。
+
+recommend.interval-hours=6
+recommend.initial-delay-seconds=60
+recommend.parallelism=0
+recommend.neighbors=50
+recommend.top-n=50
+recommend.min-common-users=3
+recommend.shrinkage=10
+recommend.max-user-items=500
+recommend.prior-weight=10
+//application.properties 配置文件
+//recommend.interval-hours: 重新计算的间隔（小时）；recommend.initial-delay-seconds: 启动后首次计算的延迟，计算完成前推荐接口返回热门菜品。
+//recommend.parallelism: 计算使用的线程数，0 表示等于 CPU 核数。
+//recommend.neighbors: 每道菜保留的最相似菜品数；recommend.top-n: 每个用户保存的推荐条数，也是推荐接口 limit 参数的上限。
+//recommend.min-common-users / recommend.shrinkage: 两道菜至少有多少共同评价用户才计算相似度，以及按共同用户数收缩相似度（n / (n + shrinkage)），避免少数用户造成的偶然高相似度。
+//recommend.max-user-items: 单个用户参与计算的最多评价数（按 createdAt 取最近的），计算量与每个用户评价数的平方成正比，防止个别账号拖慢整个任务。
+//recommend.prior-weight: 热门菜品（没有评价记录的新用户使用）按贝叶斯平均排序时的先验权重。
+
+//内存估算：每条评价在矩阵中按用户、按菜品各存一次（int + float），一百万条评价约 16MB；相似度每道菜 neighbors 条（int + float）。
+//读取评价使用 RawBsonDocument，按 user_createdAt 索引顺序读取，只解析 userId、dishId、rating 三个字段；每个不同的用户和菜品 ID 映射为一个 int 序号，评分本身不会装箱为对象。
+
+
+package com.example.canteenapp.recommend;                    //评分矩阵：CSR 格式，按用户和按菜品各存一份，评分已减去用户平均分
+
+import java.util.Arrays;
+
+public final class RatingMatrix {
+
+    final int userCount;
+    final int itemCount;
+    final int ratingCount;
+    final int[] userPtr;                                     //用户 u 的评价位于 [userPtr[u], userPtr[u + 1])。
+    final int[] userItems;
+    final float[] userValues;
+    final int[] itemPtr;                                     //菜品 i 的评价位于 [itemPtr[i], itemPtr[i + 1])。
+    final int[] itemUsers;
+    final float[] itemValues;
+    final float[] userMeans;
+    final int[] itemCounts;                                  //原始评分的次数和总和，用于热门菜品。
+    final long[] itemSums;
+
+    private RatingMatrix(int userCount, int itemCount, int[] userPtr, int[] userItems, float[] userValues,
+                         float[] userMeans, int[] itemCounts, long[] itemSums) {
+        this.userCount = userCount;
+        this.itemCount = itemCount;
+        this.ratingCount = userPtr[userCount];
+        this.userPtr = userPtr;
+        this.userItems = userItems;
+        this.userValues = userValues;
+        this.userMeans = userMeans;
+        this.itemCounts = itemCounts;
+        this.itemSums = itemSums;
+
+        itemPtr = new int[itemCount + 1];                    //按菜品转置：计数、前缀和、填充。
+        for (int k = 0; k < ratingCount; k++) {
+            itemPtr[userItems[k] + 1]++;
+        }
+        for (int i = 0; i < itemCount; i++) {
+            itemPtr[i + 1] += itemPtr[i];
+        }
+        itemUsers = new int[ratingCount];
+        itemValues = new float[ratingCount];
+        int[] next = Arrays.copyOf(itemPtr, itemCount);
+        for (int u = 0; u < userCount; u++) {
+            for (int k = userPtr[u]; k < userPtr[u + 1]; k++) {
+                int slot = next[userItems[k]]++;
+                itemUsers[slot] = u;
+                itemValues[slot] = userValues[k];
+            }
+        }
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public int getRatingCount() {
+        return ratingCount;
+    }
+
+    //Builder: 按读取顺序追加 (用户序号, 菜品序号, 评分) 三元组，三个基本类型数组按需扩容。
+    public static final class Builder {
+
+        private int[] users = new int[1 << 16];
+        private int[] items = new int[1 << 16];
+        private byte[] ratings = new byte[1 << 16];
+        private int size;
+        private int userCount;
+        private int itemCount;
+
+        public void add(int user, int item, int rating) {
+            if (size == users.length) {
+                int capacity = size * 2;
+                users = Arrays.copyOf(users, capacity);
+                items = Arrays.copyOf(items, capacity);
+                ratings = Arrays.copyOf(ratings, capacity);
+            }
+            users[size] = user;
+            items[size] = item;
+            ratings[size] = (byte) rating;
+            size++;
+            userCount = Math.max(userCount, user + 1);
+            itemCount = Math.max(itemCount, item + 1);
+        }
+
+        //build 方法: 按用户计数排序（保持读取顺序），同一用户对同一菜品的多条评价只保留最后一条，评价过多的用户只保留最近的 maxUserItems 条。
+        public RatingMatrix build(int maxUserItems) {
+            int[] rowStart = new int[userCount + 1];
+            for (int k = 0; k < size; k++) {
+                rowStart[users[k] + 1]++;
+            }
+            for (int u = 0; u < userCount; u++) {
+                rowStart[u + 1] += rowStart[u];
+            }
+            int[] order = new int[size];
+            int[] next = Arrays.copyOf(rowStart, userCount);
+            for (int k = 0; k < size; k++) {
+                order[next[users[k]]++] = k;
+            }
+
+            int[] userPtr = new int[userCount + 1];
+            int[] userItems = new int[size];
+            float[] userValues = new float[size];
+            float[] userMeans = new float[userCount];
+            int[] itemCounts = new int[itemCount];
+            long[] itemSums = new long[itemCount];
+            long[] keys = new long[16];
+            int out = 0;
+            for (int u = 0; u < userCount; u++) {
+                int length = rowStart[u + 1] - rowStart[u];
+                if (keys.length < length) {
+                    keys = new long[Math.max(length, keys.length * 2)];
+                }
+                for (int n = 0; n < length; n++) {           //高 32 位为菜品序号，低 32 位为行内顺序，排序后同一菜品相邻且最后一条在最后。
+                    keys[n] = ((long) items[order[rowStart[u] + n]] << 32) | n;
+                }
+                Arrays.sort(keys, 0, length);
+                int kept = 0;
+                for (int n = 0; n < length; n++) {
+                    if (n + 1 < length && (keys[n + 1] >>> 32) == (keys[n] >>> 32)) {
+                        continue;
+                    }
+                    keys[kept++] = keys[n];
+                }
+                if (kept > maxUserItems) {                   //按行内顺序（即读取顺序）保留最近的 maxUserItems 条，再恢复按菜品排序。
+                    for (int n = 0; n < kept; n++) {
+                        keys[n] = (keys[n] << 32) | (keys[n] >>> 32);
+                    }
+                    Arrays.sort(keys, 0, kept);
+                    System.arraycopy(keys, kept - maxUserItems, keys, 0, maxUserItems);
+                    kept = maxUserItems;
+                    for (int n = 0; n < kept; n++) {
+                        keys[n] = (keys[n] << 32) | (keys[n] >>> 32);
+                    }
+                    Arrays.sort(keys, 0, kept);
+                }
+                long sum = 0;
+                for (int n = 0; n < kept; n++) {
+                    int k = order[rowStart[u] + (int) keys[n]];
+                    userItems[out + n] = items[k];
+                    userValues[out + n] = ratings[k];
+                    sum += ratings[k];
+                    itemCounts[items[k]]++;
+                    itemSums[items[k]] += ratings[k];
+                }
+                float mean = kept == 0 ? 0f : (float) sum / kept;
+                for (int n = 0; n < kept; n++) {
+                    userValues[out + n] -= mean;
+                }
+                userMeans[u] = mean;
+                out += kept;
+                userPtr[u + 1] = out;
+            }
+            return new RatingMatrix(userCount, itemCount, userPtr, Arrays.copyOf(userItems, out),
+                    Arrays.copyOf(userValues, out), userMeans, itemCounts, itemSums);
+        }
+    }
+}
+
+
+package com.example.canteenapp.recommend;                    //Top-K 选择器：基本类型数组实现的小顶堆，分数相同时保留序号较小的
+
+final class TopK {
+
+    private final int[] ids;
+    private final double[] scores;
+    private int size;
+
+    TopK(int k) {
+        this.ids = new int[k];
+        this.scores = new double[k];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void offer(int id, double score) {
+        if (ids.length == 0) {
+            return;
+        }
+        if (size < ids.length) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    int[] sortedIds() {                                      //按分数从高到低输出，输出后堆被清空。
+        int[] result = new int[size];
+        sortInto(result, null);
+        return result;
+    }
+
+    void sortInto(int[] resultIds, float[] resultScores) {
+        for (int n = size - 1; n >= 0; n--) {
+            resultIds[n] = ids[0];
+            if (resultScores != null) {
+                resultScores[n] = (float) scores[0];
+            }
+            size--;
+            ids[0] = ids[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= scores[index]) {
+                return;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < size && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(smallest, index);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
+
+
+package com.example.canteenapp.recommend;                    //并行计算：菜品相似度和用户推荐列表，按序号区间拆分为 ForkJoin 任务
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public final class ItemSimilarity {
+
+    private static final int ITEM_LEAF = 32;
+    private static final int USER_LEAF = 512;
+
+    private final RatingMatrix matrix;
+    private final int neighbors;
+    private final int minCommonUsers;
+    private final double shrinkage;
+    private final float[] norms;
+    private final int[][] neighborIds;
+    private final float[][] neighborScores;
+
+    public ItemSimilarity(RatingMatrix matrix, int neighbors, int minCommonUsers, double shrinkage) {
+        this.matrix = matrix;
+        this.neighbors = neighbors;
+        this.minCommonUsers = minCommonUsers;
+        this.shrinkage = shrinkage;
+        this.norms = new float[matrix.itemCount];
+        this.neighborIds = new int[matrix.itemCount][];
+        this.neighborScores = new float[matrix.itemCount][];
+        for (int i = 0; i < matrix.itemCount; i++) {
+            double sum = 0;
+            for (int p = matrix.itemPtr[i]; p < matrix.itemPtr[i + 1]; p++) {
+                sum += (double) matrix.itemValues[p] * matrix.itemValues[p];
+            }
+            norms[i] = (float) Math.sqrt(sum);
+        }
+    }
+
+    public void compute(ForkJoinPool pool) {
+        pool.invoke(new SimilarityTask(0, matrix.itemCount));
+    }
+
+    //recommend 方法: 为每个用户汇总其评价过的菜品的相似菜品，预测分 = 用户平均分 + Σ 相似度 × 去均值评分 / (Σ 相似度 + 1)，
+    //               分母加 1 使只有少量相似依据的菜品向用户平均分收缩；预测分相同时相似度总和（支持度）较高的排在前面。
+    public int[][] recommend(ForkJoinPool pool, int topN) {
+        int[][] result = new int[matrix.userCount][];
+        pool.invoke(new RecommendTask(0, matrix.userCount, topN, result));
+        return result;
+    }
+
+    private final class SimilarityTask extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+
+        SimilarityTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ITEM_LEAF) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SimilarityTask(from, mid), new SimilarityTask(mid, to));
+                return;
+            }
+            float[] dot = new float[matrix.itemCount];       //稠密累加器加已触达列表，每个叶子任务分配一次，处理每道菜后只清零触达过的位置。
+            int[] common = new int[matrix.itemCount];
+            int[] touched = new int[matrix.itemCount];
+            TopK top = new TopK(neighbors);
+            for (int i = from; i < to; i++) {
+                int count = 0;
+                for (int p = matrix.itemPtr[i]; p < matrix.itemPtr[i + 1]; p++) {
+                    int u = matrix.itemUsers[p];
+                    float vi = matrix.itemValues[p];
+                    for (int q = matrix.userPtr[u]; q < matrix.userPtr[u + 1]; q++) {
+                        int j = matrix.userItems[q];
+                        if (j == i) {
+                            continue;
+                        }
+                        if (common[j]++ == 0) {
+                            touched[count++] = j;
+                        }
+                        dot[j] += vi * matrix.userValues[q];
+                    }
+                }
+                for (int n = 0; n < count; n++) {
+                    int j = touched[n];
+                    if (common[j] >= minCommonUsers && norms[i] > 0 && norms[j] > 0) {
+                        double similarity = dot[j] / ((double) norms[i] * norms[j]) * common[j] / (common[j] + shrinkage);
+                        if (similarity > 0) {
+                            top.offer(j, similarity);
+                        }
+                    }
+                    dot[j] = 0;
+                    common[j] = 0;
+                }
+                neighborIds[i] = new int[top.size()];
+                neighborScores[i] = new float[top.size()];
+                top.sortInto(neighborIds[i], neighborScores[i]);
+            }
+        }
+    }
+
+    private final class RecommendTask extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+        private final int topN;
+        private final int[][] result;
+
+        RecommendTask(int from, int to, int topN, int[][] result) {
+            this.from = from;
+            this.to = to;
+            this.topN = topN;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > USER_LEAF) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RecommendTask(from, mid, topN, result), new RecommendTask(mid, to, topN, result));
+                return;
+            }
+            double[] numerator = new double[matrix.itemCount];
+            double[] support = new double[matrix.itemCount];
+            int[] touched = new int[matrix.itemCount];
+            int[] ratedBy = new int[matrix.itemCount];       //ratedBy[j] == u + 1 表示用户 u 已评价过菜品 j，不必每个用户清零。
+            TopK top = new TopK(topN);
+            for (int u = from; u < to; u++) {
+                int start = matrix.userPtr[u];
+                int end = matrix.userPtr[u + 1];
+                if (start == end) {
+                    continue;
+                }
+                for (int q = start; q < end; q++) {
+                    ratedBy[matrix.userItems[q]] = u + 1;
+                }
+                int count = 0;
+                for (int q = start; q < end; q++) {
+                    int i = matrix.userItems[q];
+                    float value = matrix.userValues[q];
+                    int[] ids = neighborIds[i];
+                    float[] scores = neighborScores[i];
+                    for (int n = 0; n < ids.length; n++) {
+                        int j = ids[n];
+                        if (ratedBy[j] == u + 1) {
+                            continue;
+                        }
+                        if (support[j] == 0) {
+                            touched[count++] = j;
+                        }
+                        numerator[j] += scores[n] * value;
+                        support[j] += scores[n];
+                    }
+                }
+                for (int n = 0; n < count; n++) {
+                    int j = touched[n];
+                    double predicted = matrix.userMeans[u] + numerator[j] / (support[j] + 1);
+                    top.offer(j, predicted + support[j] * 1e-6);
+                    numerator[j] = 0;
+                    support[j] = 0;
+                }
+                result[u] = top.sortedIds();
+            }
+        }
+    }
+}
+
+
+package com.example.canteenapp.recommend;                    //推荐组件：定期离线计算，计算结果整体替换，读取只访问内存
+
+import com.example.canteenapp.data.DataTier;
+import com.example.canteenapp.data.MongoRouter;
+import com.example.canteenapp.model.Review;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Component
+public class DishRecommender {
+
+    private static final Logger log = LoggerFactory.getLogger(DishRecommender.class);
+
+    @Autowired
+    private MongoRouter mongoRouter;
+
+    @Value("${recommend.interval-hours:6}")
+    private long intervalHours;
+
+    @Value("${recommend.initial-delay-seconds:60}")
+    private long initialDelaySeconds;
+
+    @Value("${recommend.parallelism:0}")
+    private int parallelism;
+
+    @Value("${recommend.neighbors:50}")
+    private int neighbors;
+
+    @Value("${recommend.top-n:50}")
+    private int topN;
+
+    @Value("${recommend.min-common-users:3}")
+    private int minCommonUsers;
+
+    @Value("${recommend.shrinkage:10}")
+    private double shrinkage;
+
+    @Value("${recommend.max-user-items:500}")
+    private int maxUserItems;
+
+    @Value("${recommend.prior-weight:10}")
+    private double priorWeight;
+
+    private volatile Model model = Model.EMPTY;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dish-recommender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::rebuild, initialDelaySeconds, TimeUnit.HOURS.toSeconds(intervalHours), TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public void rebuildAsync() {                             //已有一次排队等待的重建时不再重复排队，连续多次请求只触发一次重建。
+        if (queued.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                queued.set(false);
+                rebuild();
+            });
+        }
+    }
+
+    //recommend 方法: 返回用户的推荐菜品 ID；没有评价记录的用户（或首次计算完成前）返回热门菜品。
+    public List<String> recommend(String userId, int limit) {
+        Model current = model;
+        int[] items = current.byUser.getOrDefault(userId, current.popular);
+        int count = Math.min(Math.max(limit, 1), items.length);
+        List<String> ids = new ArrayList<>(count);
+        for (int n = 0; n < count; n++) {
+            ids.add(current.dishIds[items[n]]);
+        }
+        return ids;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    public Map<String, Object> stats() {
+        Model current = model;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("builtAt", current.builtAt);
+        result.put("buildMillis", current.buildMillis);
+        result.put("users", current.byUser.size());
+        result.put("dishes", current.dishIds.length);
+        result.put("ratings", current.ratings);
+        result.put("running", running.get());
+        return result;
+    }
+
+    private void rebuild() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        ForkJoinPool pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        try {
+            Map<String, Integer> users = new HashMap<>();
+            Map<String, Integer> dishes = new HashMap<>();
+            RatingMatrix matrix = load(users, dishes);
+            long loaded = System.currentTimeMillis();
+            ItemSimilarity similarity = new ItemSimilarity(matrix, neighbors, minCommonUsers, shrinkage);
+            similarity.compute(pool);
+            int[][] lists = similarity.recommend(pool, topN);
+
+            String[] userIds = new String[matrix.userCount];
+            users.forEach((id, index) -> userIds[index] = id);
+            String[] dishIds = new String[matrix.itemCount];
+            dishes.forEach((id, index) -> dishIds[index] = id);
+            Map<String, int[]> byUser = new HashMap<>(userIds.length * 2);
+            for (int u = 0; u < userIds.length; u++) {
+                if (lists[u] != null && lists[u].length > 0) {
+                    byUser.put(userIds[u], lists[u]);
+                }
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            model = new Model(dishIds, byUser, popular(matrix), matrix.ratingCount, Instant.now(), elapsed);
+            log.info("Recommendations rebuilt from {} ratings ({} users, {} dishes) in {} ms, {} ms loading",
+                    matrix.ratingCount, matrix.userCount, matrix.itemCount, elapsed, loaded - start);
+        } catch (RuntimeException e) {
+            log.warn("Failed to rebuild recommendations, keeping previous model", e);
+        } finally {
+            pool.shutdown();
+            running.set(false);
+        }
+    }
+
+    //load 方法: 在评价层（默认从节点）上只取三个字段，用 RawBsonDocument 按需解析，每条评价只产生一个临时的原始字节文档。
+    //           按 userId、createdAt 排序读取，读取顺序即每个用户评价的时间顺序；索引缺失时 allowDiskUse 让服务端排序不超出内存上限。
+    private RatingMatrix load(Map<String, Integer> users, Map<String, Integer> dishes) {
+        MongoTemplate template = mongoRouter.forTier(DataTier.REVIEWS);
+        RatingMatrix.Builder builder = new RatingMatrix.Builder();
+        try (MongoCursor<RawBsonDocument> cursor = template.getCollection(template.getCollectionName(Review.class))
+                .withDocumentClass(RawBsonDocument.class)
+                .find(Filters.and(Filters.ne("dishId", null), Filters.ne("userId", null)))
+                .projection(Projections.include("userId", "dishId", "rating"))
+                .sort(Sorts.ascending("userId", "createdAt", "_id"))    //走 user_createdAt 索引，同一用户的评价按时间先后读出，build 才能保留最近的 maxUserItems 条。
+                .allowDiskUse(true)
+                .batchSize(10_000)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                RawBsonDocument document = cursor.next();
+                BsonValue rating = document.get("rating");
+                if (rating == null || !rating.isNumber()) {
+                    continue;
+                }
+                int value = rating.asNumber().intValue();
+                if (value < 1 || value > 5) {
+                    continue;
+                }
+                int user = users.computeIfAbsent(idOf(document.get("userId")), k -> users.size());
+                int dish = dishes.computeIfAbsent(idOf(document.get("dishId")), k -> dishes.size());
+                builder.add(user, dish, value);
+            }
+        }
+        return builder.build(maxUserItems);
+    }
+
+    private int[] popular(RatingMatrix matrix) {             //贝叶斯平均：评价少的菜品向全局平均分收缩。
+        long totalSum = 0;
+        long totalCount = 0;
+        for (int i = 0; i < matrix.itemCount; i++) {
+            totalSum += matrix.itemSums[i];
+            totalCount += matrix.itemCounts[i];
+        }
+        double globalMean = totalCount == 0 ? 0 : (double) totalSum / totalCount;
+        TopK top = new TopK(topN);
+        for (int i = 0; i < matrix.itemCount; i++) {
+            if (matrix.itemCounts[i] > 0) {
+                top.offer(i, (matrix.itemSums[i] + priorWeight * globalMean) / (matrix.itemCounts[i] + priorWeight));
+            }
+        }
+        return top.sortedIds();
+    }
+
+    private static String idOf(BsonValue value) {
+        return value.isObjectId() ? value.asObjectId().getValue().toHexString() : value.asString().getValue();
+    }
+
+    private static final class Model {
+
+        static final Model EMPTY = new Model(new String[0], Collections.emptyMap(), new int[0], 0, null, 0);
+
+        final String[] dishIds;
+        final Map<String, int[]> byUser;                     //用户 ID -> 推荐菜品序号（按预测分从高到低）
+        final int[] popular;
+        final long ratings;
+        final Instant builtAt;
+        final long buildMillis;
+
+        Model(String[] dishIds, Map<String, int[]> byUser, int[] popular, long ratings, Instant builtAt, long buildMillis) {
+            this.dishIds = dishIds;
+            this.byUser = byUser;
+            this.popular = popular;
+            this.ratings = ratings;
+            this.builtAt = builtAt;
+            this.buildMillis = buildMillis;
+        }
+    }
+}
+
+
+package com.example.canteenapp.controller;                   //推荐统计控制器
+
+import com.example.canteenapp.model.Role;
+import com.example.canteenapp.recommend.DishRecommender;
+import com.example.canteenapp.security.Authenticated;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController                                              //标识该类为 RESTful 风格的控制器。
+@RequestMapping("/api/admin/recommendations")                //设置该控制器的根路径为 /api/admin/recommendations。
+@Authenticated(Role.ADMIN)                                   //该控制器的全部接口只对管理员开放。
+public class RecommendationAdminController {
+
+    @Autowired
+    private DishRecommender dishRecommender;
+
+    @GetMapping("")                                          //获取最近一次计算的时间、耗时和规模，请求路径为 /api/admin/recommendations，请求方式为 GET。
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return new ResponseEntity<>(dishRecommender.stats(), HttpStatus.OK);
+    }
+
+    @PostMapping("/rebuild")                                 //立即在后台重新计算，请求路径为 /api/admin/recommendations/rebuild，请求方式为 POST，返回 202。
+    public ResponseEntity<Map<String, Object>> rebuild() {
+        dishRecommender.rebuildAsync();
+        return new ResponseEntity<>(dishRecommender.stats(), HttpStatus.ACCEPTED);
+    }
+}
@@ -0,0 +1,359 @@
+//以下是引用快照模块的代码示例，用 "ID + 内嵌快照" 取代 @DBRef：
+//这段代码演示了快照类、批量引用解析器和旧数据迁移。评价和菜品只保存被引用文档的 ID 和少量展示字段，读取列表时不再逐条解析 @DBRef，查询次数与列表长度无关。
+package com.example.canteenapp.model;                        //用户快照：评价中展示作者所需的字段
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data                                                        //Lombok 注解，自动生成 getter、setter、toString 等方法。
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSnapshot {
+
+    private String nickname;
+    private String avatar;
+
+    public static UserSnapshot of(User user) {
+        return new UserSnapshot(user.getNickname(), user.getAvatar());
+    }
+}
+
+
+package com.example.canteenapp.model;                        //食堂快照
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CanteenSnapshot {
+
+    private String name;
+    private String image;
+
+    public static CanteenSnapshot of(Canteen canteen) {
+        return new CanteenSnapshot(canteen.getName(), canteen.getImage());
+    }
+}
+
+
+package com.example.canteenapp.model;                        //菜品快照
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DishSnapshot {
+
+    private String name;
+    private String image;
+
+    public static DishSnapshot of(Dish dish) {
+        return new DishSnapshot(dish.getName(), dish.getImage());
+    }
+}
+
+
+package com.example.canteenapp.service;                      //引用解析服务接口:定义了为评价列表 (fillReviews) 和菜品列表 (fillDishes) 批量补齐快照，以及迁移旧 @DBRef 数据 (migrateLegacyReferences) 的接口方法。
+
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.Review;
+
+import java.util.List;
+import java.util.Map;
+
+public interface ReferenceResolver {
+
+    void fillReviews(List<Review> reviews);
+
+    void fillDishes(List<Dish> dishes);
+
+    Map<String, Long> migrateLegacyReferences();
+}
+
+
+package com.example.canteenapp.service.impl;                 //引用解析服务实现类
+
+import com.example.canteenapp.cache.CatalogCaches;
+import com.example.canteenapp.menu.MenuCompiler;
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.CanteenSnapshot;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishSnapshot;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.model.User;
+import com.example.canteenapp.model.UserSnapshot;
+import com.example.canteenapp.service.ReferenceResolver;
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+@Service                                                     //标识该类为服务类，会被 Spring 容器管理。
+public class ReferenceResolverImpl implements ReferenceResolver {
+
+    private static final int MIGRATION_BATCH_SIZE = 500;
+
+    private static final String DISHES = "dishes";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CatalogCaches catalogCaches;
+
+    @Autowired
+    @Lazy                                                    //MenuCompiler 经 DishService 间接依赖本类，延迟注入以避开循环依赖。
+    private MenuCompiler menuCompiler;
+
+    @Override
+    public void fillReviews(List<Review> reviews) {          //fillReviews 方法: 收集整页缺少快照的引用 ID，每个集合只用一次 $in 查询取回。
+        Set<String> userIds = new HashSet<>();
+        Set<String> canteenIds = new HashSet<>();
+        Set<String> dishIds = new HashSet<>();
+        for (Review review : reviews) {
+            if (review.getUserId() != null && review.getUser() == null) {
+                userIds.add(review.getUserId());
+            }
+            if (review.getCanteenId() != null && review.getCanteen() == null) {
+                canteenIds.add(review.getCanteenId());
+            }
+            if (review.getDishId() != null && review.getDish() == null) {
+                dishIds.add(review.getDishId());
+            }
+            if (review.getOwnerCanteenId() == null && review.getCanteenId() != null) {
+                review.setOwnerCanteenId(review.getCanteenId());
+            }
+        }
+        Map<String, User> users = findByIds(userIds, User.class, User::getId);
+        Map<String, Canteen> canteens = findByIds(canteenIds, Canteen.class, Canteen::getId);
+        Map<String, Dish> dishes = findByIds(dishIds, Dish.class, Dish::getId);
+        for (Review review : reviews) {
+            if (review.getUser() == null && users.containsKey(review.getUserId())) {
+                review.setUser(UserSnapshot.of(users.get(review.getUserId())));
+            }
+            if (review.getCanteen() == null && canteens.containsKey(review.getCanteenId())) {
+                review.setCanteen(CanteenSnapshot.of(canteens.get(review.getCanteenId())));
+            }
+            if (review.getDish() == null && dishes.containsKey(review.getDishId())) {
+                review.setDish(DishSnapshot.of(dishes.get(review.getDishId())));
+                if (review.getOwnerCanteenId() == null) {           //写入时快照为空，菜品必然被取回，顺带填充归属食堂。
+                    review.setOwnerCanteenId(dishes.get(review.getDishId()).getCanteenId());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void fillDishes(List<Dish> dishes) {
+        Set<String> canteenIds = new HashSet<>();
+        for (Dish dish : dishes) {
+            if (dish.getCanteenId() != null && dish.getCanteen() == null) {
+                canteenIds.add(dish.getCanteenId());
+            }
+        }
+        Map<String, Canteen> canteens = findByIds(canteenIds, Canteen.class, Canteen::getId);
+        for (Dish dish : dishes) {
+            if (dish.getCanteen() == null && canteens.containsKey(dish.getCanteenId())) {
+                dish.setCanteen(CanteenSnapshot.of(canteens.get(dish.getCanteenId())));
+            }
+        }
+    }
+
+    private <T> Map<String, T> findByIds(Collection<String> ids, Class<T> type, Function<T, String> idOf) {
+        Map<String, T> result = new HashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        for (T entity : mongoTemplate.find(Query.query(Criteria.where("id").in(ids)), type)) {
+            result.put(idOf.apply(entity), entity);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> migrateLegacyReferences() {     //migrateLegacyReferences 方法: 把旧文档中的 @DBRef 改写为 "xxxId + 快照"，可重复执行，已迁移的文档不会再被选中。
+        Map<String, Long> migrated = new LinkedHashMap<>();
+        migrated.put("reviews", migrate("reviews", Arrays.asList(
+                new RefField("user", "userId", "users", "nickname", "avatar"),
+                new RefField("canteen", "canteenId", "canteens", "name", "image"),
+                new RefField("dish", "dishId", "dishes", "name", "image"))));
+        migrated.put(DISHES, migrate(DISHES, Arrays.asList(
+                new RefField("canteen", "canteenId", "canteens", "name", "image"))));
+        return migrated;
+    }
+
+    private long migrate(String collection, List<RefField> fields) {
+        List<Criteria> legacy = new ArrayList<>();
+        for (RefField field : fields) {
+            legacy.add(Criteria.where(field.name + ".$ref").exists(true));
+        }
+        Document filter = Query.query(new Criteria().orOperator(legacy.toArray(new Criteria[0]))).getQueryObject();
+
+        long count = 0;
+        List<Document> batch = new ArrayList<>(MIGRATION_BATCH_SIZE);
+        for (Document doc : mongoTemplate.getCollection(collection).find(filter).batchSize(MIGRATION_BATCH_SIZE)) {
+            batch.add(doc);
+            if (batch.size() == MIGRATION_BATCH_SIZE) {
+                count += migrateBatch(collection, fields, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            count += migrateBatch(collection, fields, batch);
+        }
+        return count;
+    }
+
+    private int migrateBatch(String collection, List<RefField> fields, List<Document> batch) {
+        Map<RefField, Map<String, Document>> targets = new HashMap<>();
+        for (RefField field : fields) {
+            Set<Object> ids = new HashSet<>();
+            for (Document doc : batch) {
+                Object id = refId(doc.get(field.name));
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+            Map<String, Document> byId = new HashMap<>();
+            if (!ids.isEmpty()) {
+                Document projection = new Document();
+                for (String key : field.snapshotKeys) {
+                    projection.append(key, 1);
+                }
+                for (Document target : mongoTemplate.getCollection(field.targetCollection)
+                        .find(new Document("_id", new Document("$in", ids))).projection(projection)) {
+                    byId.put(target.get("_id").toString(), target);
+                }
+            }
+            targets.put(field, byId);
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+        for (Document doc : batch) {
+            Update update = new Update();
+            for (RefField field : fields) {
+                Object id = refId(doc.get(field.name));
+                if (id == null) {
+                    continue;
+                }
+                update.set(field.idField, id.toString());
+                Document target = targets.get(field).get(id.toString());
+                if (target == null) {
+                    update.unset(field.name);                //被引用的文档已不存在，只保留 ID。
+                    continue;
+                }
+                Document snapshot = new Document();
+                for (String key : field.snapshotKeys) {
+                    snapshot.append(key, target.get(key));
+                }
+                update.set(field.name, snapshot);
+            }
+            bulk.updateOne(Query.query(Criteria.where("_id").is(doc.get("_id"))), update);
+        }
+        bulk.execute();
+        if (DISHES.equals(collection)) {
+            invalidateDishes(batch);
+        }
+        return batch.size();
+    }
+
+    private void invalidateDishes(List<Document> batch) {     //菜品响应中带有食堂快照，改写后升级缓存版本号，客户端持有的旧 ETag 不再命中 304。
+        Set<String> canteenIds = new HashSet<>();
+        for (Document doc : batch) {
+            catalogCaches.dishes().invalidate(doc.get("_id").toString());
+            Object canteenId = refId(doc.get("canteen"));
+            if (canteenId == null) {
+                canteenId = doc.get("canteenId");
+            }
+            if (canteenId != null) {
+                canteenIds.add(canteenId.toString());
+            }
+        }
+        for (String canteenId : canteenIds) {
+            catalogCaches.dishesByCanteen().invalidate(canteenId);
+            menuCompiler.markDirty(canteenId);
+        }
+        catalogCaches.dishes().invalidate(CatalogCaches.ALL);
+    }
+
+    private static Object refId(Object ref) {                //驱动可能把 {$ref, $id} 解码为 DBRef，也可能保留为普通 Document。
+        if (ref instanceof DBRef) {
+            return ((DBRef) ref).getId();
+        }
+        if (ref instanceof Document && ((Document) ref).containsKey("$ref")) {
+            return ((Document) ref).get("$id");
+        }
+        return null;
+    }
+
+    private static final class RefField {
+
+        private final String name;
+        private final String idField;
+        private final String targetCollection;
+        private final String[] snapshotKeys;
+
+        RefField(String name, String idField, String targetCollection, String... snapshotKeys) {
+            this.name = name;
+            this.idField = idField;
+            this.targetCollection = targetCollection;
+            this.snapshotKeys = snapshotKeys;
+        }
+    }
+}
+//fillReviews / fillDishes 方法: 写入时快照已经填好，这里只补齐尚未迁移或快照缺失的旧文档，每页最多三次额外查询。
+//migrateLegacyReferences 方法: 分批读取仍含 $ref 的文档，按集合批量取回快照字段，再用无序批量更新写回；改写菜品后让对应的目录缓存和菜单失效。
+
+
+package com.example.canteenapp.controller;                   //迁移控制器
+
+import com.example.canteenapp.model.Role;
+import com.example.canteenapp.security.Authenticated;
+import com.example.canteenapp.service.ReferenceResolver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController                                              //标识该类为 RESTful 风格的控制器。
+@RequestMapping("/api/admin/migrations")                     //设置该控制器的根路径为 /api/admin/migrations。
+@Authenticated(Role.ADMIN)                                   //该控制器的全部接口只对管理员开放。
+public class MigrationController {
+
+    @Autowired
+    private ReferenceResolver referenceResolver;
+
+    @PostMapping("/references")                              //把旧的 @DBRef 文档迁移为 ID + 快照，请求路径为 /api/admin/migrations/references，请求方式为 POST。
+    public ResponseEntity<Map<String, Long>> migrateReferences() {
+        return new ResponseEntity<>(referenceResolver.migrateLegacyReferences(), HttpStatus.OK);
+    }
+}
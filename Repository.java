@@ -0,0 +1,50 @@
+//以下是数据访问层的代码示例，包含了各实体对应的 Spring Data MongoDB 仓库接口：
+//这段代码演示了仓库接口的定义方式。继承 MongoRepository 后即可获得基本的增删改查方法，按命名规则声明的方法会由 Spring Data 自动生成查询。
+package com.example.canteenapp.repository;                   //食堂仓库接口
+
+import com.example.canteenapp.model.Canteen;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface CanteenRepository extends MongoRepository<Canteen, String> {
+}
+
+
+package com.example.canteenapp.repository;                   //菜品仓库接口
+
+import com.example.canteenapp.model.Dish;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface DishRepository extends MongoRepository<Dish, String> {
+
+    List<Dish> findByCanteenId(String canteenId);            //按所属食堂 ID 查询菜品。
+}
+
+
+package com.example.canteenapp.repository;                   //评价仓库接口
+
+import com.example.canteenapp.model.Review;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface ReviewRepository extends MongoRepository<Review, String> {
+
+    List<Review> findByCanteenId(String canteenId);          //按食堂 ID 查询评价。
+
+    List<Review> findByDishId(String dishId);                //按菜品 ID 查询评价。
+}
+
+
+package com.example.canteenapp.repository;                   //用户仓库接口
+
+import com.example.canteenapp.model.User;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Optional;
+
+public interface UserRepository extends MongoRepository<User, String> {
+
+    Optional<User> findByUsername(String username);          //按用户名查询用户，用于登录。
+}
@@ -2,15 +2,24 @@
 //这段代码演示了评价模块的基本功能，包括评价实体类、服务接口、服务实现类和控制器。您可以根据自己的需求进行扩展，例如添加评价修改、删除、点赞等功能。
 package com.example.canteenapp.model;                        //评价实体类 
 
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.mapping.DBRef;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
 @Data                                                       //Lombok 注解，自动生成 getter、setter、toString 等方法。
 @Document(collection = "reviews")                           //指定该实体类映射到 MongoDB 中名为 "reviews" 的集合。
+@CompoundIndexes({
+        @CompoundIndex(name = "dish_createdAt", def = "{'dishId': 1, 'createdAt': -1, '_id': -1}"),        //按菜品查询评价并按时间倒序分页。
+        @CompoundIndex(name = "canteen_createdAt", def = "{'canteenId': 1, 'createdAt': -1, '_id': -1}"),  //按食堂查询评价并按时间倒序分页。
+        @CompoundIndex(name = "owner_createdAt", def = "{'ownerCanteenId': 1, 'createdAt': 1}"),           //分片键索引，见 DataRouting.java。
+        @CompoundIndex(name = "user_createdAt", def = "{'userId': 1, 'createdAt': 1, '_id': 1}")           //推荐任务按用户、按时间顺序读取评价，见 Recommendations.java。
+})
 
 public class Review {
 
@@ -18,16 +27,19 @@ public class Review {
     private String id;
 
     private String content;
+    @Min(1)
+    @Max(5)
     private int rating; // 评分，例如：1-5 星
 
-    @DBRef                                                //表示该字段引用了另一个文档，这里表示评价所属的用户、食堂或菜品。
-    private User user;
+    private String userId;                                //评价所属用户的 ID。
+    private UserSnapshot user;                            //写入时内嵌的用户快照（昵称、头像），读取列表时无需再查 users 集合。
 
     // 可以选择对食堂或菜品进行评价，但不能同时评价两者
-    @DBRef
-    private Canteen canteen;                              //可以为空，表示对食堂的评价。
-    @DBRef
-    private Dish dish;                                    //可以为空，表示对菜品的评价。
+    private String canteenId;                             //可以为空，表示对食堂的评价。
+    private CanteenSnapshot canteen;
+    private String dishId;                                //可以为空，表示对菜品的评价。
+    private DishSnapshot dish;
+    private String ownerCanteenId;                        //评价归属的食堂 ID：食堂评价为 canteenId，菜品评价为菜品所属食堂。写入时填充，用作分片键前缀。
 
     private LocalDateTime createdAt;                      //评价创建时间。
 }
@@ -35,78 +47,260 @@ public class Review {
 
 package com.example.canteenapp.service;                   //评价服务接口:定义了创建评价 (createReview)、根据食堂 ID 获取评价 (getReviewsByCanteenId) 和根据菜品 ID 获取评价 (getReviewsByDishId) 的接口方法。
 
+import com.example.canteenapp.model.CursorPage;
 import com.example.canteenapp.model.Review;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface ReviewService {
 
     Review createReview(Review review);
 
+    List<Review> saveReviews(List<Review> reviews);
+
     List<Review> getReviewsByCanteenId(String canteenId);
 
     List<Review> getReviewsByDishId(String dishId);
+
+    CursorPage<Review> getReviewsPageByCanteenId(String canteenId, String after, Integer limit);
+
+    CursorPage<Review> getReviewsPageByDishId(String dishId, String after, Integer limit);
+
+    Stream<Review> streamReviewsByCanteenId(String canteenId);
+
+    Stream<Review> streamReviewsByDishId(String dishId);
 }
 
 
 package com.example.canteenapp.service.impl;                            //评价服务实现类 
 
+import com.example.canteenapp.data.DataTier;
+import com.example.canteenapp.data.MongoRouter;
 import com.example.canteenapp.exception.ResourceNotFoundException;
-import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.feed.RecentReviewFeed;
+import com.example.canteenapp.menu.MenuCompiler;
+import com.example.canteenapp.model.CursorPage;
 import com.example.canteenapp.model.Dish;
 import com.example.canteenapp.model.Review;
+import com.example.canteenapp.ranking.DishRankingEngine;
 import com.example.canteenapp.repository.CanteenRepository;
-import com.example.canteenapp.repository.DishRepository;
-import com.example.canteenapp.repository.ReviewRepository;
+import com.example.canteenapp.service.RatingSummaryService;
+import com.example.canteenapp.service.ReferenceResolver;
 import com.example.canteenapp.service.ReviewService;
+import com.example.canteenapp.util.Cursors;
+import com.mongodb.bulk.BulkWriteError;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service                                                                //标识该类为服务类，会被 Spring 容器管理。
 public class ReviewServiceImpl implements ReviewService {
 
-    @Autowired                                                          //自动注入 ReviewRepository、CanteenRepository 和 DishRepository 实例。
-    private ReviewRepository reviewRepository;
+    @Autowired                                                          //自动注入 CanteenRepository 实例。
+    private CanteenRepository canteenRepository;
 
     @Autowired
-    private CanteenRepository canteenRepository;
+    private RatingSummaryService ratingSummaryService;
+
+    @Autowired
+    private ReferenceResolver referenceResolver;
 
     @Autowired
-    private DishRepository dishRepository;
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DishRankingEngine dishRankingEngine;
+
+    @Autowired
+    private MongoRouter mongoRouter;
+
+    @Autowired
+    private RecentReviewFeed recentReviewFeed;
+
+    @Autowired
+    private MenuCompiler menuCompiler;
+
+    @Value("${app.mongo.sharding.enabled:false}")
+    private boolean sharded;
+
+    @Value("${events.change-streams.enabled:false}")
+    private boolean changeStreamEvents;
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
+    private static final int DUPLICATE_KEY = 11000;
 
     @Override
-    public Review createReview(Review review) {                         //createReview 方法: 设置评价创建时间后，将评价数据保存到数据库。
+    public Review createReview(Review review) {                         //createReview 方法: 设置评价创建时间并填充用户、食堂、菜品快照后，将评价数据保存到数据库，并同步累加评分汇总。
         review.setCreatedAt(LocalDateTime.now());
-        return reviewRepository.save(review);
+        review.setUser(null);                                           //快照一律以数据库为准，忽略客户端传入的内容。
+        review.setCanteen(null);
+        review.setDish(null);
+        review.setOwnerCanteenId(null);
+        saveReviews(Collections.singletonList(review));
+        return review;
+    }
+
+    @Override
+    public List<Review> saveReviews(List<Review> reviews) {            //saveReviews 方法: 一批评价只做一次快照批量补齐和一次无序批量插入，返回实际新插入的评价并为其累加评分汇总。
+        referenceResolver.fillReviews(reviews);
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Review.class);
+        bulk.insert(reviews);
+        List<Review> inserted = reviews;
+        BulkOperationException failure = null;
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {                           //ID 重复说明该评价已写入过（例如日志回放），跳过；其他错误在累加成功部分后抛出。
+            Set<Integer> failed = new HashSet<>();
+            for (BulkWriteError error : e.getErrors()) {
+                failed.add(error.getIndex());
+                if (error.getCode() != DUPLICATE_KEY) {
+                    failure = e;
+                }
+            }
+            inserted = new ArrayList<>(reviews.size());
+            for (int i = 0; i < reviews.size(); i++) {
+                if (!failed.contains(i)) {
+                    inserted.add(reviews.get(i));
+                }
+            }
+        }
+        for (Review review : inserted) {
+            ratingSummaryService.recordReview(review);
+        }
+        if (!changeStreamEvents) {                                      //启用领域事件后，排行榜计数只通过事件计入（见 Events.java），避免本节点的评价被计入两次。
+            dishRankingEngine.recordReviews(inserted);
+        }
+        recentReviewFeed.publish(inserted);
+        inserted.stream().map(Review::getOwnerCanteenId).distinct().forEach(menuCompiler::markDirty);   //菜单快照中的评分汇总已变化。
+        if (failure != null) {
+            throw failure;
+        }
+        return inserted;
     }
 
     @Override
     public List<Review> getReviewsByCanteenId(String canteenId) {       //getReviewsByCanteenId 方法: 根据食堂 ID 获取评价列表。
-        Canteen canteen = canteenRepository.findById(canteenId)
-                .orElseThrow(() -> new ResourceNotFoundException("Canteen not found with id: " + canteenId));
-        return reviewRepository.findByCanteen(canteen);
+        requireCanteen(canteenId);
+        List<Review> reviews = mongoTemplate.find(new Query(byCanteen(canteenId)), Review.class);
+        referenceResolver.fillReviews(reviews);
+        return reviews;
     }
 
     @Override
     public List<Review> getReviewsByDishId(String dishId) {            //getReviewsByDishId 方法: 根据菜品 ID 获取评价列表。
-        Dish dish = dishRepository.findById(dishId)
-                .orElseThrow(() -> new ResourceNotFoundException("Dish not found with id: " + dishId));
-        return reviewRepository.findByDish(dish);
+        List<Review> reviews = mongoTemplate.find(new Query(byDish(requireDish(dishId))), Review.class);
+        referenceResolver.fillReviews(reviews);
+        return reviews;
+    }
+
+    @Override
+    public CursorPage<Review> getReviewsPageByCanteenId(String canteenId, String after, Integer limit) {
+        requireCanteen(canteenId);
+        return pageReviews(byCanteen(canteenId), after, limit);
+    }
+
+    @Override
+    public CursorPage<Review> getReviewsPageByDishId(String dishId, String after, Integer limit) {
+        return pageReviews(byDish(requireDish(dishId)), after, limit);
+    }
+
+    @Override
+    public Stream<Review> streamReviewsByCanteenId(String canteenId) {  //streamReviewsByCanteenId 方法: 先校验食堂存在，再返回基于数据库游标的评价流，调用方用完后必须关闭。
+        requireCanteen(canteenId);
+        return reviews().stream(new Query(byCanteen(canteenId)).with(NEWEST_FIRST), Review.class);
+    }
+
+    @Override
+    public Stream<Review> streamReviewsByDishId(String dishId) {
+        return reviews().stream(new Query(byDish(requireDish(dishId))).with(NEWEST_FIRST), Review.class);
+    }
+
+    private void requireCanteen(String canteenId) {
+        if (!canteenRepository.existsById(canteenId)) {
+            throw new ResourceNotFoundException("Canteen not found with id: " + canteenId);
+        }
+    }
+
+    private Dish requireDish(String dishId) {                          //只取回 canteenId，与 existsById 同样是一次主键查询，分片时用于定位评价所在的分片。
+        Query query = new Query(Criteria.where("id").is(dishId));
+        query.fields().include("canteenId");
+        Dish dish = mongoTemplate.findOne(query, Dish.class);
+        if (dish == null) {
+            throw new ResourceNotFoundException("Dish not found with id: " + dishId);
+        }
+        return dish;
+    }
+
+    private MongoTemplate reviews() {                                  //只有导出用的流式读取走评价层；列表和分页读主节点，用户提交评价后立即刷新列表也能看到自己的评价。
+        return mongoRouter.forTier(DataTier.REVIEWS);
+    }
+
+    //byCanteen / byDish 方法: 启用分片后查询条件带上分片键前缀 ownerCanteenId，mongos 只把查询发往持有该食堂数据的分片；未启用时保持原条件，兼容尚未回填的旧评价。
+    private Criteria byCanteen(String canteenId) {
+        Criteria criteria = Criteria.where("canteenId").is(canteenId);
+        return sharded ? criteria.and("ownerCanteenId").is(canteenId) : criteria;
+    }
+
+    private Criteria byDish(Dish dish) {
+        Criteria criteria = Criteria.where("dishId").is(dish.getId());
+        return sharded && dish.getCanteenId() != null ? criteria.and("ownerCanteenId").is(dish.getCanteenId()) : criteria;
+    }
+
+    //pageReviews 方法: 按 (createdAt, id) 降序的键集分页，游标之后的条件为 createdAt < c 或 (createdAt = c 且 id < i)。
+    private CursorPage<Review> pageReviews(Criteria owner, String after, Integer limit) {
+        int pageSize = Cursors.clampLimit(limit);
+        Query query = new Query(owner).with(NEWEST_FIRST).limit(pageSize + 1);
+        if (after != null && !after.isEmpty()) {
+            Cursors.TimeCursor cursor = Cursors.decodeTimeCursor(after);
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where("createdAt").lt(cursor.getCreatedAt()),
+                    Criteria.where("createdAt").is(cursor.getCreatedAt()).and("id").lt(cursor.getId())));
+        }
+        List<Review> reviews = mongoTemplate.find(query, Review.class);
+        referenceResolver.fillReviews(reviews);
+        return Cursors.page(reviews, pageSize,
+                review -> Cursors.encodeTimeCursor(review.getCreatedAt(), review.getId()));
     }
 }
 
 
 package com.example.canteenapp.controller;                                                               //评价控制器
 
+import com.example.canteenapp.feed.RecentReviewFeed;
+import com.example.canteenapp.governor.RequestGovernor;
+import com.example.canteenapp.model.CursorPage;
 import com.example.canteenapp.model.Review;
+import com.example.canteenapp.security.Authenticated;
+import com.example.canteenapp.security.TokenAuthInterceptor;
+import com.example.canteenapp.service.ReviewIngestionService;
 import com.example.canteenapp.service.ReviewService;
+import com.example.canteenapp.util.Ndjson;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -118,10 +312,39 @@ public class ReviewController {
     @Autowired
     private ReviewService reviewService;
 
+    @Autowired
+    private ReviewIngestionService reviewIngestionService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RecentReviewFeed recentReviewFeed;
+
+    @Autowired
+    private RequestGovernor requestGovernor;
+
+    @Value("${review.ingest.async:true}")
+    private boolean asyncIngest;
+
+    @Authenticated
     @PostMapping("")
-    public ResponseEntity<Review> createReview(@RequestBody Review review) {                             //createReview 方法: 处理创建评价请求，请求路径为 /api/reviews，请求方式为 POST。
-        Review createdReview = reviewService.createReview(review);
-        return new ResponseEntity<>(createdReview, HttpStatus.CREATED);
+    public ResponseEntity<Review> createReview(@RequestBody Review review,                               //createReview 方法: 处理创建评价请求，请求路径为 /api/reviews，请求方式为 POST，需要登录令牌。异步模式下入队后返回 202 和已分配 ID 的评价，队列满时返回 429。
+                                               @RequestAttribute(TokenAuthInterceptor.USER_ID) String userId,
+                                               HttpServletRequest request) {
+        review.setUserId(userId);                                                                        //评价作者以令牌为准，忽略请求体中的 userId。
+        requestGovernor.checkReview(review, request.getRemoteAddr());                                   //频率超限返回 429，窗口内重复评价同一对象返回 409，均在入队和写库之前拒绝。
+        try {
+            if (asyncIngest) {
+                Review acceptedReview = reviewIngestionService.submit(review);
+                return new ResponseEntity<>(acceptedReview, HttpStatus.ACCEPTED);
+            }
+            Review createdReview = reviewService.createReview(review);
+            return new ResponseEntity<>(createdReview, HttpStatus.CREATED);
+        } catch (RuntimeException e) {
+            requestGovernor.releaseReview(review);
+            throw e;
+        }
     }
 
     @GetMapping("/canteen/{canteenId}")
@@ -130,9 +353,48 @@ public class ReviewController {
         return new ResponseEntity<>(reviews, HttpStatus.OK);
     }
 
+    @GetMapping("/canteen/{canteenId}/latest")
+    public ResponseEntity<List<Review>> getLatestReviewsByCanteenId(@PathVariable String canteenId,       //获取食堂最新评价（最新在前，包括该食堂菜品的评价），请求路径为 /api/reviews/canteen/{canteenId}/latest?limit={limit}，从内存缓冲区读取。
+                                                                    @RequestParam(required = false) Integer limit) {
+        List<Review> reviews = recentReviewFeed.latest(canteenId, limit);
+        return new ResponseEntity<>(reviews, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/canteen/{canteenId}/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeReviewsByCanteenId(@PathVariable String canteenId,                           //订阅食堂新评价 (SSE)，请求路径为 /api/reviews/canteen/{canteenId}/subscribe，每条评价为一个 review 事件。
+                                                  @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return recentReviewFeed.subscribe(canteenId, lastEventId);
+    }
+
     @GetMapping("/dish/{dishId}")
     public ResponseEntity<List<Review>> getReviewsByDishId(@PathVariable String dishId) {              //getReviewsByDishId 方法: 处理根据菜品 ID 获取评价请求，请求路径为 /api/reviews/dish/{dishId}，请求方式为 GET。
         List<Review> reviews = reviewService.getReviewsByDishId(dishId);
         return new ResponseEntity<>(reviews, HttpStatus.OK);
     }
+
+    @GetMapping("/canteen/{canteenId}/page")
+    public ResponseEntity<CursorPage<Review>> getReviewsPageByCanteenId(@PathVariable String canteenId,   //游标分页获取食堂评价（最新在前），请求路径为 /api/reviews/canteen/{canteenId}/page?limit={limit}&after={cursor}。
+                                                                        @RequestParam(required = false) String after,
+                                                                        @RequestParam(required = false) Integer limit) {
+        CursorPage<Review> page = reviewService.getReviewsPageByCanteenId(canteenId, after, limit);
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
+    @GetMapping("/dish/{dishId}/page")
+    public ResponseEntity<CursorPage<Review>> getReviewsPageByDishId(@PathVariable String dishId,         //游标分页获取菜品评价（最新在前），请求路径为 /api/reviews/dish/{dishId}/page?limit={limit}&after={cursor}。
+                                                                     @RequestParam(required = false) String after,
+                                                                     @RequestParam(required = false) Integer limit) {
+        CursorPage<Review> page = reviewService.getReviewsPageByDishId(dishId, after, limit);
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/canteen/{canteenId}/stream", produces = Ndjson.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> streamReviewsByCanteenId(@PathVariable String canteenId) {   //以 NDJSON 流式输出食堂评价，请求路径为 /api/reviews/canteen/{canteenId}/stream。
+        return new ResponseEntity<>(Ndjson.body(objectMapper, reviewService.streamReviewsByCanteenId(canteenId)), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/dish/{dishId}/stream", produces = Ndjson.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> streamReviewsByDishId(@PathVariable String dishId) {        //以 NDJSON 流式输出菜品评价，请求路径为 /api/reviews/dish/{dishId}/stream。
+        return new ResponseEntity<>(Ndjson.body(objectMapper, reviewService.streamReviewsByDishId(dishId)), HttpStatus.OK);
+    }
 }
@@ -0,0 +1,424 @@
+//以下是搜索模块的代码示例，为菜品和食堂提供进程内倒排索引搜索：
+//这段代码演示了分词器、倒排索引和目录索引组件。中文按单字、双字和拼音（全拼、首字母）分词，支持前缀自动补全、一次拼写错误容忍和相关度排序；用户输入不再拼进正则表达式，也不会触发全集合扫描。
+package com.example.canteenapp.search;                       //分词器
+
+import net.sourceforge.pinyin4j.PinyinHelper;
+import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
+import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinVCharType;
+import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+public final class Tokenizer {
+
+    private static final int MAX_PINYIN_RUN = 16;           //超过该长度的中文片段不再生成拼音后缀，避免词项膨胀。
+
+    private static final HanyuPinyinOutputFormat PINYIN_FORMAT = new HanyuPinyinOutputFormat();
+
+    static {
+        PINYIN_FORMAT.setCaseType(HanyuPinyinCaseType.LOWERCASE);
+        PINYIN_FORMAT.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
+        PINYIN_FORMAT.setVCharType(HanyuPinyinVCharType.WITH_V);
+    }
+
+    private Tokenizer() {
+    }
+
+    //建索引用：英文/数字按词切分并转小写；中文片段生成单字、双字、全拼后缀和拼音首字母，例如 "宫保鸡丁" -> 宫、宫保、gongbaojiding、jiding、gbjd 等。
+    public static Set<String> indexTerms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String run : runs(text)) {
+            if (!isCjk(run.charAt(0))) {
+                terms.add(run);
+                continue;
+            }
+            for (int i = 0; i < run.length(); i++) {
+                terms.add(run.substring(i, i + 1));
+                if (i + 1 < run.length()) {
+                    terms.add(run.substring(i, i + 2));
+                }
+            }
+            if (run.length() <= MAX_PINYIN_RUN) {
+                List<String> syllables = pinyin(run);
+                StringBuilder initials = new StringBuilder();
+                for (int i = 0; i < syllables.size(); i++) {
+                    terms.add(String.join("", syllables.subList(i, syllables.size())));
+                    initials.append(syllables.get(i).charAt(0));
+                }
+                if (syllables.size() > 1) {
+                    terms.add(initials.toString());
+                }
+            }
+        }
+        return terms;
+    }
+
+    //查询用：英文/拼音按词切分；中文片段切成双字（单字片段保留单字），与索引词项对齐。
+    public static List<String> queryTerms(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String run : runs(text)) {
+            if (!isCjk(run.charAt(0)) || run.length() == 1) {
+                terms.add(run);
+                continue;
+            }
+            for (int i = 0; i + 1 < run.length(); i++) {
+                terms.add(run.substring(i, i + 2));
+            }
+        }
+        return terms;
+    }
+
+    //把文本切成连续的中文片段和连续的字母数字片段，其他字符（空格、标点、正则元字符等）一律作为分隔符丢弃。
+    private static List<String> runs(String text) {
+        List<String> runs = new ArrayList<>();
+        if (text == null) {
+            return runs;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT);
+        StringBuilder current = new StringBuilder();
+        boolean currentCjk = false;
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            boolean cjk = isCjk(c);
+            if (!cjk && !Character.isLetterOrDigit(c)) {
+                flush(runs, current);
+                continue;
+            }
+            if (current.length() > 0 && cjk != currentCjk) {
+                flush(runs, current);
+            }
+            current.append(c);
+            currentCjk = cjk;
+        }
+        flush(runs, current);
+        return runs;
+    }
+
+    private static void flush(List<String> runs, StringBuilder current) {
+        if (current.length() > 0) {
+            runs.add(current.toString());
+            current.setLength(0);
+        }
+    }
+
+    private static boolean isCjk(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+
+    private static List<String> pinyin(String run) {         //多音字取第一个读音。
+        List<String> syllables = new ArrayList<>(run.length());
+        for (int i = 0; i < run.length(); i++) {
+            try {
+                String[] readings = PinyinHelper.toHanyuPinyinStringArray(run.charAt(i), PINYIN_FORMAT);
+                if (readings != null && readings.length > 0) {
+                    syllables.add(readings[0]);
+                }
+            } catch (BadHanyuPinyinOutputFormatCombination e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return syllables;
+    }
+}
+
+
+package com.example.canteenapp.search;                       //倒排索引
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class SearchIndex {
+
+    public static final int MAX_QUERY_LENGTH = 64;           //超长输入直接截断，避免构造代价高的查询。
+
+    private static final float PREFIX_FACTOR = 0.7f;
+    private static final float FUZZY_FACTOR = 0.5f;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private final TreeMap<String, Map<String, Float>> postings = new TreeMap<>();   //词项 -> (文档 ID -> 字段权重)，有序以支持前缀范围查找。
+    private final Map<String, Set<String>> documentTerms = new HashMap<>();         //文档 ID -> 词项，用于更新时删除旧词项。
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public static final class Field {
+
+        private final String text;
+        private final float weight;
+
+        private Field(String text, float weight) {
+            this.text = text;
+            this.weight = weight;
+        }
+
+        public static Field of(String text, float weight) {
+            return new Field(text, weight);
+        }
+
+        public static Field of(Collection<String> texts, float weight) {
+            return new Field(texts == null ? null : String.join(" ", texts), weight);
+        }
+    }
+
+    public void put(String id, Field... fields) {            //put 方法: 新增或替换一个文档，同一词项出现在多个字段时取最高权重。
+        Map<String, Float> weights = new HashMap<>();
+        for (Field field : fields) {
+            for (String term : Tokenizer.indexTerms(field.text)) {
+                weights.merge(term, field.weight, Math::max);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            for (Map.Entry<String, Float> entry : weights.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), term -> new HashMap<>()).put(id, entry.getValue());
+            }
+            documentTerms.put(id, weights.keySet());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(String id) {
+        Set<String> terms = documentTerms.remove(id);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<String, Float> docs = postings.get(term);
+            if (docs != null) {
+                docs.remove(id);
+                if (docs.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    //search 方法: 每个查询词依次尝试精确匹配、前缀匹配（自动补全）和编辑距离匹配（容错），按 字段权重 × 匹配系数 × idf 累加得分，返回得分最高的 limit 个文档 ID。
+    public List<String> search(String query, int limit) {
+        if (query == null) {
+            return new ArrayList<>();
+        }
+        String bounded = query.length() > MAX_QUERY_LENGTH ? query.substring(0, MAX_QUERY_LENGTH) : query;
+        List<String> queryTerms = Tokenizer.queryTerms(bounded);
+
+        Map<String, Float> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            int totalDocs = Math.max(documentTerms.size(), 1);
+            for (String queryTerm : queryTerms) {
+                Map<String, Float> termScores = new HashMap<>();
+                for (Map.Entry<String, Float> match : expand(queryTerm).entrySet()) {
+                    Map<String, Float> docs = postings.get(match.getKey());
+                    float idf = (float) Math.log(1 + (double) totalDocs / docs.size());
+                    for (Map.Entry<String, Float> doc : docs.entrySet()) {
+                        termScores.merge(doc.getKey(), doc.getValue() * match.getValue() * idf, Math::max);
+                    }
+                }
+                termScores.forEach((id, score) -> scores.merge(id, score, Float::sum));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Map.Entry<String, Float>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort((a, b) -> {
+            int byScore = Float.compare(b.getValue(), a.getValue());
+            return byScore != 0 ? byScore : a.getKey().compareTo(b.getKey());
+        });
+        List<String> ids = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            ids.add(ranked.get(i).getKey());
+        }
+        return ids;
+    }
+
+    private Map<String, Float> expand(String queryTerm) {   //返回 匹配到的索引词项 -> 匹配系数。
+        Map<String, Float> matches = new HashMap<>();
+        if (postings.containsKey(queryTerm)) {
+            matches.put(queryTerm, 1f);
+        }
+        for (String term : postings.subMap(queryTerm, false, queryTerm + Character.MAX_VALUE, false).keySet()) {
+            if (matches.size() >= MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+            matches.put(term, PREFIX_FACTOR);
+        }
+        if (!matches.isEmpty() || queryTerm.length() < 4) {
+            return matches;
+        }
+        int maxDistance = queryTerm.length() >= 8 ? 2 : 1;
+        String first = queryTerm.substring(0, 1);
+        for (String term : postings.subMap(first, true, first + Character.MAX_VALUE, false).keySet()) {
+            if (Math.abs(term.length() - queryTerm.length()) <= maxDistance
+                    && distance(queryTerm, term, maxDistance) <= maxDistance) {
+                matches.put(term, FUZZY_FACTOR);
+            }
+        }
+        return matches;
+    }
+
+    //distance 方法: 带相邻字符交换的编辑距离（OSA），超过 max 时提前返回。
+    static int distance(String a, String b, int max) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int rowMin = Integer.MAX_VALUE;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, d[i][j]);
+            }
+            if (rowMin > max) {
+                return rowMin;
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentTerms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
+
+
+package com.example.canteenapp.search;                       //目录搜索索引组件：启动时从数据库加载，写入时增量更新
+
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.Dish;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+@Component                                                   //标识该类为 Spring 组件，会被 Spring 容器管理。
+public class CatalogSearchIndex {
+
+    private static final float NAME_WEIGHT = 3f;
+    private static final float TAG_WEIGHT = 2f;
+    private static final float DETAIL_WEIGHT = 1f;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final Object swapLock = new Object();            //保护索引替换和 pending，增量更新与替换互斥。
+    private volatile SearchIndex dishes = new SearchIndex();
+    private volatile SearchIndex canteens = new SearchIndex();
+    private List<BiConsumer<SearchIndex, SearchIndex>> pending;   //全量构建期间的增量更新（参数为新的菜品索引和食堂索引），不在构建时为 null。
+
+    //rebuild 方法: 应用启动完成后（以及领域事件要求重建时）用数据库游标全量构建新索引，构建期间查询和增量更新仍作用在旧索引上；
+    //             增量更新同时记入 pending，游标读完后在替换前按顺序应用到新索引，游标读到的旧版本会被覆盖，构建期间的写入不会丢失。
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        synchronized (swapLock) {
+            pending = new ArrayList<>();
+        }
+        try {
+            SearchIndex dishIndex = new SearchIndex();
+            try (Stream<Dish> stream = mongoTemplate.stream(new Query(), Dish.class)) {
+                stream.forEach(dish -> putDish(dishIndex, dish));
+            }
+            SearchIndex canteenIndex = new SearchIndex();
+            try (Stream<Canteen> stream = mongoTemplate.stream(new Query(), Canteen.class)) {
+                stream.forEach(canteen -> putCanteen(canteenIndex, canteen));
+            }
+            synchronized (swapLock) {
+                pending.forEach(update -> update.accept(dishIndex, canteenIndex));
+                dishes = dishIndex;
+                canteens = canteenIndex;
+            }
+        } finally {
+            synchronized (swapLock) {
+                pending = null;
+            }
+        }
+    }
+
+    public void indexDish(Dish dish) {
+        apply((dishIndex, canteenIndex) -> putDish(dishIndex, dish));
+    }
+
+    public void indexCanteen(Canteen canteen) {
+        apply((dishIndex, canteenIndex) -> putCanteen(canteenIndex, canteen));
+    }
+
+    public void removeDish(String dishId) {
+        apply((dishIndex, canteenIndex) -> dishIndex.remove(dishId));
+    }
+
+    public void removeCanteen(String canteenId) {
+        apply((dishIndex, canteenIndex) -> canteenIndex.remove(canteenId));
+    }
+
+    private void apply(BiConsumer<SearchIndex, SearchIndex> update) {
+        synchronized (swapLock) {
+            update.accept(dishes, canteens);
+            if (pending != null) {
+                pending.add(update);
+            }
+        }
+    }
+
+    public List<String> searchDishes(String keyword, int limit) {
+        return dishes.search(keyword, limit);
+    }
+
+    public List<String> searchCanteens(String keyword, int limit) {
+        return canteens.search(keyword, limit);
+    }
+
+    private static void putDish(SearchIndex index, Dish dish) {
+        index.put(dish.getId(),
+                SearchIndex.Field.of(dish.getName(), NAME_WEIGHT),
+                SearchIndex.Field.of(dish.getTags(), TAG_WEIGHT),
+                SearchIndex.Field.of(dish.getCanteen() == null ? null : dish.getCanteen().getName(), DETAIL_WEIGHT));
+    }
+
+    private static void putCanteen(SearchIndex index, Canteen canteen) {
+        index.put(canteen.getId(),
+                SearchIndex.Field.of(canteen.getName(), NAME_WEIGHT),
+                SearchIndex.Field.of(canteen.getLocation(), DETAIL_WEIGHT),
+                SearchIndex.Field.of(canteen.getDescription(), DETAIL_WEIGHT));
+    }
+}
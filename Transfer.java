@@ -0,0 +1,690 @@
+//以下是批量导入导出模块的代码示例，用于每学期批量更新菜单，以及为数据分析导出菜品和评价：
+//这段代码演示了 CSV 读写工具、导入结果类、导入导出服务、控制器和命令行导入入口。导入逐行流式读取并校验，每批只查询一次食堂、执行一次无序批量 upsert；导出基于数据库游标逐条写出，内存占用与数据量无关。
+
+import.batch-size=1000
+import.max-errors=1000
+//application.properties 配置文件
+//import.batch-size: 每批处理的行数，每批对应一次食堂查询和一次批量写入。
+//import.max-errors: 导入结果中最多返回的错误行数，超出部分只计数。
+//命令行导入: java -jar canteen-app.jar --spring.main.web-application-type=none --import.file=menu.csv [--import.format=csv|ndjson]
+//          导入完成后在日志中输出导入结果并关闭应用，有失败行时退出码为 1。
+//导入文件格式（CSV 首行为表头，列顺序不限）: name,price,canteen,tags,image
+//canteen 为食堂名称或食堂 ID；tags 用 | 分隔；image 可为空。NDJSON 每行一个对象，字段相同，tags 为数组。
+//同一食堂中名称相同的菜品视为同一道菜：已存在时更新价格、标签和图片，不存在时新建。
+
+
+package com.example.canteenapp.model;                        //导入结果类
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ImportReport {
+    private long total;                                      //读取的数据行数（不含表头）
+    private long inserted;                                   //新建的菜品数
+    private long updated;                                    //已存在并被更新的菜品数
+    private long failed;                                     //出错的行数
+    private List<ImportRowError> errors = new ArrayList<>(); //出错的行，最多 import.max-errors 条
+}
+
+
+package com.example.canteenapp.model;                        //导入错误行
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportRowError {
+    private long line;                                       //在输入中的行号，从 1 开始（CSV 表头为第 1 行）
+    private String message;
+}
+
+
+package com.example.canteenapp.util;                         //CSV 工具类：按 RFC 4180 逐条读取记录（支持引号内的逗号、换行和转义引号），以及流式写出 CSV 响应
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+public final class Csv {
+
+    public static final String MEDIA_TYPE = "text/csv";
+
+    private Csv() {
+    }
+
+    public static final class RecordReader {
+
+        private final Reader reader;
+        private long line = 1;
+        private long recordLine;
+        private int peeked = -2;
+
+        public RecordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        public long getRecordLine() {                        //最近一条记录起始处的行号。
+            return recordLine;
+        }
+
+        //next 方法: 读取下一条记录，输入结束时返回 null；引号未闭合时抛出 IOException。
+        public List<String> next() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            recordLine = line;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("Unterminated quoted field starting at line " + recordLine);
+                    }
+                    if (c == '"') {
+                        if (peek() == '"') {
+                            read();
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n' || c == -1) {
+                    if (c == '\r' && peek() == '\n') {
+                        read();
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            int c = peeked != -2 ? peeked : reader.read();
+            peeked = -2;
+            if (c == '\n') {
+                line++;
+            }
+            return c;
+        }
+
+        private int peek() throws IOException {
+            if (peeked == -2) {
+                peeked = reader.read();
+            }
+            return peeked;
+        }
+    }
+
+    public static String escape(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    //与 Ndjson.body 相同，逐条写出游标中的文档，写完或出错时关闭游标。
+    public static <T> StreamingResponseBody body(List<String> header, Stream<T> items, Function<T, List<?>> columns) {
+        return out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            try (Stream<T> stream = items) {
+                writeRow(writer, header);
+                Iterator<T> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    writeRow(writer, columns.apply(iterator.next()));
+                }
+            }
+            writer.flush();
+        };
+    }
+
+    private static void writeRow(Writer writer, List<?> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escape(values.get(i)));
+        }
+        writer.write("\r\n");
+    }
+}
+
+
+package com.example.canteenapp.service;                      //导入导出服务接口:定义了导入菜品 (importDishes)、导出菜品 (exportDishes) 和导出评价 (exportReviews) 的接口方法。
+
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.ImportReport;
+import com.example.canteenapp.model.Review;
+
+import java.io.InputStream;
+import java.util.stream.Stream;
+
+public interface CatalogTransferService {
+
+    String FORMAT_CSV = "csv";
+    String FORMAT_NDJSON = "ndjson";
+
+    ImportReport importDishes(InputStream input, String format);
+
+    Stream<Dish> exportDishes();
+
+    Stream<Review> exportReviews();
+}
+
+
+package com.example.canteenapp.service.impl;                 //导入导出服务实现类
+
+import com.example.canteenapp.cache.CatalogCaches;
+import com.example.canteenapp.data.DataTier;
+import com.example.canteenapp.data.MongoRouter;
+import com.example.canteenapp.exception.BadRequestException;
+import com.example.canteenapp.filter.DishFacetIndex;
+import com.example.canteenapp.menu.MenuCompiler;
+import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.model.CanteenSnapshot;
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.ImportReport;
+import com.example.canteenapp.model.ImportRowError;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.search.CatalogSearchIndex;
+import com.example.canteenapp.service.CatalogTransferService;
+import com.example.canteenapp.util.Csv;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+public class CatalogTransferServiceImpl implements CatalogTransferService {
+
+    private static final List<String> DISH_COLUMNS = Arrays.asList("name", "price", "canteen", "tags", "image");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CatalogSearchIndex catalogSearchIndex;
+
+    @Autowired
+    private DishFacetIndex dishFacetIndex;
+
+    @Autowired
+    private MenuCompiler menuCompiler;
+
+    @Autowired
+    private CatalogCaches catalogCaches;
+
+    @Autowired
+    private MongoRouter mongoRouter;
+
+    @Value("${import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${import.max-errors:1000}")
+    private int maxErrors;
+
+    //importDishes 方法: 逐行读取并校验，攒满一批后写入；单行错误只记入结果，不影响其他行。输入本身无法解析（如引号未闭合）时停止读取，已写入的批次保留。
+    @Override
+    public ImportReport importDishes(InputStream input, String format) {
+        ImportReport report = new ImportReport();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        RowSource rows = FORMAT_NDJSON.equalsIgnoreCase(format) ? new NdjsonRows(reader) : csvRows(reader, format);
+        List<DishRow> batch = new ArrayList<>(batchSize);
+        try {
+            DishRow row;
+            while ((row = rows.next()) != null) {
+                report.setTotal(report.getTotal() + 1);
+                String error = row.error != null ? row.error : validate(row);
+                if (error != null) {
+                    addError(report, row.line, error);
+                    continue;
+                }
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    writeBatch(batch, report);
+                    batch.clear();
+                }
+            }
+        } catch (IOException e) {
+            addError(report, rows.line(), "Unreadable input: " + e.getMessage());
+        }
+        writeBatch(batch, report);
+        return report;
+    }
+
+    @Override
+    public Stream<Dish> exportDishes() {                                    //全量导出走目录层（默认从节点），不占用主节点。
+        return mongoRouter.forTier(DataTier.CATALOG).stream(new Query().with(Sort.by(Sort.Direction.ASC, "id")), Dish.class);
+    }
+
+    @Override
+    public Stream<Review> exportReviews() {                                 //与 ReviewServiceImpl 的流式导出一样走评价层。
+        return mongoRouter.forTier(DataTier.REVIEWS).stream(new Query().with(Sort.by(Sort.Direction.ASC, "id")), Review.class);
+    }
+
+    private RowSource csvRows(BufferedReader reader, String format) {
+        if (format != null && !FORMAT_CSV.equalsIgnoreCase(format)) {
+            throw new BadRequestException("Unsupported import format: " + format + ", expected csv or ndjson");
+        }
+        return new CsvRows(new Csv.RecordReader(reader));
+    }
+
+    private static String validate(DishRow row) {
+        if (row.name == null || row.name.trim().isEmpty()) {
+            return "name is required";
+        }
+        if (row.canteen == null || row.canteen.trim().isEmpty()) {
+            return "canteen is required";
+        }
+        if (row.price == null || row.price.signum() < 0) {
+            return "price must be a non-negative number";
+        }
+        return null;
+    }
+
+    //writeBatch 方法: 一次查询解析本批所有食堂名称或 ID，同一食堂同名菜品以最后一行为准，然后执行一次无序批量 upsert；写入后刷新受影响菜品的搜索索引和缓存。
+    private void writeBatch(List<DishRow> batch, ImportReport report) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Set<String> refs = batch.stream().map(row -> row.canteen.trim()).collect(Collectors.toSet());
+        Map<String, Canteen> canteens = new HashMap<>();
+        for (Canteen canteen : mongoTemplate.find(new Query(new Criteria().orOperator(
+                Criteria.where("name").in(refs), Criteria.where("id").in(refs))), Canteen.class)) {
+            canteens.put(canteen.getName(), canteen);
+            canteens.put(canteen.getId(), canteen);
+        }
+
+        Map<String, DishRow> unique = new LinkedHashMap<>();
+        for (DishRow row : batch) {
+            Canteen canteen = canteens.get(row.canteen.trim());
+            if (canteen == null) {
+                addError(report, row.line, "Canteen not found: " + row.canteen);
+                continue;
+            }
+            row.canteenId = canteen.getId();
+            row.snapshot = CanteenSnapshot.of(canteen);
+            unique.put(row.canteenId + '\u0000' + row.name.trim(), row);
+        }
+        if (unique.isEmpty()) {
+            return;
+        }
+
+        List<DishRow> queued = new ArrayList<>(unique.values());
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Dish.class);
+        for (DishRow row : queued) {
+            Update update = new Update()
+                    .set("price", row.price)
+                    .set("tags", row.tags)
+                    .set("canteen", row.snapshot);
+            if (row.image != null && !row.image.isEmpty()) {
+                update.set("image", row.image);
+            }
+            bulk.upsert(new Query(Criteria.where("canteenId").is(row.canteenId).and("name").is(row.name.trim())), update);
+        }
+        BulkWriteResult result;
+        try {
+            result = bulk.execute();
+        } catch (BulkOperationException e) {
+            result = e.getResult();
+            for (BulkWriteError error : e.getErrors()) {
+                addError(report, queued.get(error.getIndex()).line, error.getMessage());
+            }
+        }
+        report.setInserted(report.getInserted() + result.getUpserts().size());
+        report.setUpdated(report.getUpdated() + result.getMatchedCount());
+
+        Set<String> canteenIds = new HashSet<>();
+        List<Criteria> written = new ArrayList<>(queued.size());   //按 (canteenId, name) 精确匹配取回本批写入的菜品；canteenId in X 且 name in Y 会匹配两个列表的笛卡尔积。
+        for (DishRow row : queued) {
+            canteenIds.add(row.canteenId);
+            written.add(Criteria.where("canteenId").is(row.canteenId).and("name").is(row.name.trim()));
+        }
+        for (Dish dish : mongoTemplate.find(new Query(new Criteria().orOperator(written)), Dish.class)) {
+            catalogSearchIndex.indexDish(dish);
+            dishFacetIndex.indexDish(dish);
+            catalogCaches.dishes().invalidate(dish.getId());
+        }
+        for (String canteenId : canteenIds) {
+            catalogCaches.dishesByCanteen().invalidate(canteenId);
+            menuCompiler.markDirty(canteenId);
+        }
+        catalogCaches.dishes().invalidate(CatalogCaches.ALL);
+    }
+
+    private void addError(ImportReport report, long line, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < maxErrors) {
+            report.getErrors().add(new ImportRowError(line, message));
+        }
+    }
+
+    private static BigDecimal parsePrice(String value) {
+        try {
+            return value == null || value.trim().isEmpty() ? null : new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            return BigDecimal.valueOf(-1);                   //交给 validate 报告为无效价格。
+        }
+    }
+
+    private static final class DishRow {
+
+        private long line;
+        private String error;                                //行本身无法解析时的错误信息
+        private String name;
+        private BigDecimal price;
+        private String canteen;
+        private List<String> tags = new ArrayList<>();
+        private String image;
+        private String canteenId;
+        private CanteenSnapshot snapshot;
+    }
+
+    private interface RowSource {
+
+        DishRow next() throws IOException;
+
+        long line();
+    }
+
+    private static final class CsvRows implements RowSource {
+
+        private final Csv.RecordReader records;
+        private Map<String, Integer> columns;
+
+        CsvRows(Csv.RecordReader records) {
+            this.records = records;
+        }
+
+        @Override
+        public DishRow next() throws IOException {
+            if (columns == null) {
+                List<String> header = records.next();
+                if (header == null) {
+                    return null;
+                }
+                columns = new HashMap<>();
+                for (int i = 0; i < header.size(); i++) {
+                    columns.put(header.get(i).trim().toLowerCase().replace("\uFEFF", ""), i);
+                }
+                if (!columns.keySet().containsAll(DISH_COLUMNS.subList(0, 3))) {
+                    throw new BadRequestException("CSV header must contain name, price and canteen columns");
+                }
+            }
+            List<String> record;
+            do {
+                record = records.next();
+            } while (record != null && record.size() == 1 && record.get(0).trim().isEmpty());   //跳过空行
+            if (record == null) {
+                return null;
+            }
+            DishRow row = new DishRow();
+            row.line = records.getRecordLine();
+            row.name = column(record, "name");
+            row.price = parsePrice(column(record, "price"));
+            row.canteen = column(record, "canteen");
+            row.image = column(record, "image");
+            String tags = column(record, "tags");
+            if (tags != null) {
+                for (String tag : tags.split("\\|")) {
+                    if (!tag.trim().isEmpty()) {
+                        row.tags.add(tag.trim());
+                    }
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public long line() {
+            return records.getRecordLine();
+        }
+
+        private String column(List<String> record, String name) {
+            Integer index = columns.get(name);
+            return index == null || index >= record.size() ? null : record.get(index);
+        }
+    }
+
+    private final class NdjsonRows implements RowSource {
+
+        private final BufferedReader reader;
+        private long line;
+
+        NdjsonRows(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public DishRow next() throws IOException {
+            String text;
+            do {
+                text = reader.readLine();
+                line++;
+            } while (text != null && text.trim().isEmpty());
+            if (text == null) {
+                return null;
+            }
+            DishRow row = new DishRow();
+            row.line = line;
+            try {
+                JsonNode node = objectMapper.readTree(text);
+                row.name = node.path("name").asText(null);
+                row.price = parsePrice(node.path("price").asText(null));
+                row.canteen = node.path("canteen").asText(null);
+                row.image = node.path("image").asText(null);
+                for (JsonNode tag : node.path("tags")) {
+                    row.tags.add(tag.asText());
+                }
+            } catch (IOException e) {
+                row.error = "Invalid JSON: " + e.getOriginalMessage();
+            }
+            return row;
+        }
+
+        @Override
+        public long line() {
+            return line;
+        }
+    }
+}
+
+
+package com.example.canteenapp.controller;                   //导入导出控制器
+
+import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.ImportReport;
+import com.example.canteenapp.model.Review;
+import com.example.canteenapp.model.Role;
+import com.example.canteenapp.security.Authenticated;
+import com.example.canteenapp.service.CatalogTransferService;
+import com.example.canteenapp.util.Csv;
+import com.example.canteenapp.util.Ndjson;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+@RestController                                              //标识该类为 RESTful 风格的控制器。
+@RequestMapping("/api/admin/transfer")                       //设置该控制器的根路径为 /api/admin/transfer。
+@Authenticated(Role.ADMIN)                                   //该控制器的全部接口只对管理员开放。
+public class CatalogTransferController {
+
+    private static final List<String> DISH_HEADER = Arrays.asList("id", "name", "price", "canteenId", "canteen", "tags", "image");
+    private static final List<String> REVIEW_HEADER = Arrays.asList("id", "dishId", "canteenId", "userId", "rating", "content", "createdAt");
+
+    @Autowired
+    private CatalogTransferService catalogTransferService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PostMapping("/dishes")                                  //批量导入菜品，请求路径为 /api/admin/transfer/dishes?format={csv|ndjson}，请求体为原始文件内容，边读边处理。
+    public ResponseEntity<ImportReport> importDishes(@RequestParam(defaultValue = CatalogTransferService.FORMAT_CSV) String format,
+                                                     InputStream body) {
+        ImportReport report = catalogTransferService.importDishes(body, format);
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
+    @GetMapping("/dishes")                                   //导出全部菜品，请求路径为 /api/admin/transfer/dishes?format={csv|ndjson}。
+    public ResponseEntity<StreamingResponseBody> exportDishes(@RequestParam(defaultValue = CatalogTransferService.FORMAT_CSV) String format) {
+        if (CatalogTransferService.FORMAT_NDJSON.equalsIgnoreCase(format)) {
+            return download("dishes.ndjson", Ndjson.MEDIA_TYPE, Ndjson.body(objectMapper, catalogTransferService.exportDishes()));
+        }
+        return download("dishes.csv", Csv.MEDIA_TYPE, Csv.body(DISH_HEADER, catalogTransferService.exportDishes(), (Dish dish) -> Arrays.asList(
+                dish.getId(), dish.getName(), dish.getPrice(), dish.getCanteenId(),
+                dish.getCanteen() == null ? null : dish.getCanteen().getName(),
+                dish.getTags() == null ? null : String.join("|", dish.getTags()), dish.getImage())));
+    }
+
+    @GetMapping("/reviews")                                  //导出全部评价，请求路径为 /api/admin/transfer/reviews?format={csv|ndjson}。
+    public ResponseEntity<StreamingResponseBody> exportReviews(@RequestParam(defaultValue = CatalogTransferService.FORMAT_CSV) String format) {
+        if (CatalogTransferService.FORMAT_NDJSON.equalsIgnoreCase(format)) {
+            return download("reviews.ndjson", Ndjson.MEDIA_TYPE, Ndjson.body(objectMapper, catalogTransferService.exportReviews()));
+        }
+        return download("reviews.csv", Csv.MEDIA_TYPE, Csv.body(REVIEW_HEADER, catalogTransferService.exportReviews(), (Review review) -> Arrays.asList(
+                review.getId(), review.getDishId(), review.getCanteenId(), review.getUserId(),
+                review.getRating(), review.getContent(), review.getCreatedAt())));
+    }
+
+    private static ResponseEntity<StreamingResponseBody> download(String filename, String mediaType, StreamingResponseBody body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(mediaType + ";charset=UTF-8"));
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+}
+
+
+package com.example.canteenapp.cli;                          //命令行导入入口：设置 import.file 时在启动后导入指定文件，记录结果后关闭应用
+
+import com.example.canteenapp.model.ImportReport;
+import com.example.canteenapp.service.CatalogTransferService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Component
+@ConditionalOnProperty(name = "import.file")
+public class CatalogImportRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogImportRunner.class);
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private CatalogTransferService catalogTransferService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${import.file}")
+    private String file;
+
+    @Value("${import.format:}")
+    private String format;
+
+    //run 方法: 未指定格式时按扩展名判断，.ndjson / .jsonl 为 NDJSON，其他为 CSV。
+    //导入完成后关闭 Spring 上下文（评价写入线程等后台组件随之停止）并退出进程，否则命令行导入不会结束。
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        Path path = Paths.get(file);
+        String resolved = !format.isEmpty() ? format
+                : path.toString().endsWith(".ndjson") || path.toString().endsWith(".jsonl")
+                ? CatalogTransferService.FORMAT_NDJSON : CatalogTransferService.FORMAT_CSV;
+        ImportReport report;
+        try (InputStream in = Files.newInputStream(path)) {
+            report = catalogTransferService.importDishes(in, resolved);
+        }
+        log.info("Imported {}:\n{}", path, objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        int exitCode = report.getFailed() > 0 ? 1 : 0;
+        System.exit(SpringApplication.exit(applicationContext, () -> exitCode));
+    }
+}
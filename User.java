@@ -2,21 +2,31 @@
 //演示了用户模块的基本功能，包括用户实体类、服务接口、服务实现类和控制器。您可以根据自己的需求进行扩展，例如添加密码重置、用户信息修改等功能。
 package com.example.canteenapp.model;                                //用户实体类 
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.List;
+
 @Data                                                               //Lombok 注解，自动生成 getter、setter、toString 等方法。
 @Document(collection = "users")                                     //指定该实体类映射到 MongoDB 中名为 "users" 的集合。
 public class User {
 
     @Id                                                             //标识该字段为主键。
     private String id;
+    @Indexed(name = "username_unique", unique = true)                //用户名唯一索引，登录时按用户名查询。
     private String username;
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)           //只在请求中读取，密码哈希不会出现在任何响应中。
     private String password;
     private String nickname;
-    private String avatar;                                          // 可选，头像 URL
+    private String avatar;                                          // 可选，头像图片内容哈希（见 Images.java），旧数据为图片 URL
     private String email;                                           // 可选，邮箱地址
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)            //角色只能由管理员在数据库中指定，请求体中的 role 会被忽略。
+    private Role role;                                              //为空时按 STUDENT 处理（旧数据）。
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private List<String> managedCanteenIds;                         //CANTEEN_MANAGER 负责的食堂 ID，同样只能在数据库中指定。
 }
 
 
@@ -34,11 +44,16 @@ public interface UserService {
 
 package com.example.canteenapp.service.impl;                       //用户服务实现类 
 
+import com.example.canteenapp.exception.ConflictException;
 import com.example.canteenapp.exception.ResourceNotFoundException;
+import com.example.canteenapp.exception.UnauthorizedException;
+import com.example.canteenapp.model.Role;
 import com.example.canteenapp.model.User;
 import com.example.canteenapp.repository.UserRepository;
+import com.example.canteenapp.security.PasswordHashExecutor;
 import com.example.canteenapp.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -51,11 +66,20 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private PasswordHashExecutor passwordHashExecutor;
+
     @Override
     public User register(User user) {
-        // 对密码进行加密
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
-        return userRepository.save(user);
+        // 对密码进行加密（在密码哈希线程池中执行）
+        String rawPassword = user.getPassword();
+        user.setRole(Role.STUDENT);                               // 注册只能创建普通学生账号
+        user.setPassword(passwordHashExecutor.run(() -> passwordEncoder.encode(rawPassword)));
+        try {
+            return userRepository.save(user);
+        } catch (DuplicateKeyException e) {                       // 用户名唯一索引冲突，返回 409 而不是 500
+            throw new ConflictException("Username already taken: " + user.getUsername());
+        }
     }
 
     @Override
@@ -63,23 +87,35 @@ public class UserServiceImpl implements UserService {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found with username: " + username));
 
-        // 验证密码
-        if (!passwordEncoder.matches(password, user.getPassword())) {
-            throw new RuntimeException("Invalid username or password");
+        // 验证密码（在密码哈希线程池中执行）
+        String encodedPassword = user.getPassword();
+        if (!passwordHashExecutor.run(() -> passwordEncoder.matches(password, encodedPassword))) {
+            throw new UnauthorizedException("Invalid username or password");
+        }
+
+        // 旧哈希强度低于当前配置时，借本次登录用明文密码重新哈希
+        if (passwordEncoder.upgradeEncoding(encodedPassword)) {
+            user.setPassword(passwordHashExecutor.run(() -> passwordEncoder.encode(password)));
+            userRepository.save(user);
         }
 
         return user;
     }
 }
-//register 方法: 对用户密码进行加密后，调用 UserRepository 的 save 方法将用户数据保存到数据库。
+//register 方法: 对用户密码进行加密后，调用 UserRepository 的 save 方法将用户数据保存到数据库，用户名已被占用时抛出 ConflictException（409）。
 //login 方法:根据用户名查询用户，如果用户不存在则抛出异常。
-//           使用 PasswordEncoder 验证密码是否正确。
+//           使用 PasswordEncoder 验证密码是否正确，哈希运算在有界的密码哈希线程池中执行。
+//           登录成功后由控制器签发令牌，之后的受保护请求只校验令牌，不再重复登录。
 
 
 package com.example.canteenapp.controller;                              //用户控制器 
 
+import com.example.canteenapp.governor.RequestGovernor;
+import com.example.canteenapp.model.LoginResponse;
 import com.example.canteenapp.model.User;
+import com.example.canteenapp.service.TokenService;
 import com.example.canteenapp.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -95,15 +131,23 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private RequestGovernor requestGovernor;
+
     @PostMapping("/register")                                         //处理用户注册请求，请求路径为 /api/users/register，请求方式为 POST。
     public ResponseEntity<User> register(@RequestBody User user) {
         User registeredUser = userService.register(user);
         return new ResponseEntity<>(registeredUser, HttpStatus.CREATED);
     }
 
-    @PostMapping("/login")                                           //处理用户登录请求，请求路径为 /api/users/login，请求方式为 POST。
-    public ResponseEntity<User> login(@RequestBody User user) {
+    @PostMapping("/login")                                           //处理用户登录请求，请求路径为 /api/users/login，请求方式为 POST。返回签名令牌和用户信息。
+    public ResponseEntity<LoginResponse> login(@RequestBody User user, HttpServletRequest request) {
+        requestGovernor.checkLogin(user.getUsername(), request.getRemoteAddr());                     //尝试次数超限时返回 429，不执行密码校验。
         User loggedInUser = userService.login(user.getUsername(), user.getPassword());
-        return new ResponseEntity<>(loggedInUser, HttpStatus.OK);
+        requestGovernor.loginSucceeded(user.getUsername());
+        return new ResponseEntity<>(tokenService.issue(loggedInUser), HttpStatus.OK);
     }
 }
@@ -3,32 +3,44 @@ package com.example.canteenapp.model;  //菜品实体类
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.mapping.DBRef;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
 
 import java.math.BigDecimal;
 import java.util.List;
 
 @Data                                 //Lombok 注解，自动生成 getter、setter、toString 等方法。
 @Document(collection = "dishes")      //指定该实体类映射到 MongoDB 中名为 "dishes" 的集合。
+@CompoundIndexes({
+        @CompoundIndex(name = "canteen_price", def = "{'canteenId': 1, 'price': 1}"),   //按食堂查询菜品，并支持按价格排序或筛选。
+        @CompoundIndex(name = "canteen_name", def = "{'canteenId': 1, 'name': 1}")      //批量导入时按 食堂 + 菜品名称 匹配已有菜品。
+})
 public class Dish {
 
     @Id                               //标识该字段为主键。
     private String id;
     private String name;
-    private String image;            // 可选，菜品图片 URL
+    private String image;            // 可选，菜品图片内容哈希（见 Images.java），旧数据为图片 URL
+    @Field(targetType = FieldType.DECIMAL128)   //按 Decimal128 保存（默认是字符串），canteen_price 索引和价格范围查询、排序按数值比较；旧数据由 DishPriceMigration 转换。
     private BigDecimal price;
-    @DBRef                           //表示该字段引用了另一个文档，这里表示菜品所属的食堂。
-    private Canteen canteen;         // 所属食堂
+    private String canteenId;        // 所属食堂 ID
+    private CanteenSnapshot canteen; // 所属食堂快照（名称、图片），写入时填充
     private List<String> tags;       // 菜品标签，例如：辣、甜、素食
 }
 
 
 package com.example.canteenapp.service;//菜品服务接口:定义了获取所有菜品 (getAllDishes)、根据 ID 获取菜品 (getDishById)、根据食堂 ID 获取菜品 (getDishesByCanteenId)、搜索菜品 (searchDishes) 和创建菜品 (createDish) 的接口方法。
 
+import com.example.canteenapp.model.CursorPage;
 import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishFilter;
+import com.example.canteenapp.model.FacetResult;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface DishService {
 
@@ -38,80 +50,199 @@ public interface DishService {
 
     List<Dish> getDishesByCanteenId(String canteenId);
 
-    List<Dish> searchDishes(String keyword);
+    List<Dish> searchDishes(String keyword, Integer limit);
+
+    FacetResult filterDishes(DishFilter filter);
+
+    List<Dish> getRecommendedDishes(String userId, Integer limit);
 
     Dish createDish(Dish dish);
+
+    CursorPage<Dish> getDishesPage(String after, Integer limit);
+
+    Stream<Dish> streamAllDishes();
 }
 
 
 package com.example.canteenapp.service.impl;                              //菜品服务实现类:各方法实现对应接口定义的功能，例如根据食堂 ID 查询菜品、模糊搜索菜品等。
 
+import com.example.canteenapp.cache.CatalogCaches;
+import com.example.canteenapp.data.DataTier;
+import com.example.canteenapp.data.MongoRouter;
+import com.example.canteenapp.exception.BadRequestException;
 import com.example.canteenapp.exception.ResourceNotFoundException;
-import com.example.canteenapp.model.Canteen;
+import com.example.canteenapp.filter.DishFacetIndex;
+import com.example.canteenapp.menu.MenuCompiler;
+import com.example.canteenapp.model.CursorPage;
 import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishFilter;
+import com.example.canteenapp.model.FacetResult;
+import com.example.canteenapp.recommend.DishRecommender;
 import com.example.canteenapp.repository.CanteenRepository;
 import com.example.canteenapp.repository.DishRepository;
+import com.example.canteenapp.search.CatalogSearchIndex;
 import com.example.canteenapp.service.DishService;
+import com.example.canteenapp.service.ReferenceResolver;
+import com.example.canteenapp.util.Cursors;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Service                                                                  //标识该类为服务类，会被 Spring 容器管理。
 public class DishServiceImpl implements DishService {
 
-    @Autowired                                                           //自动注入 DishRepository、CanteenRepository 和 MongoTemplate 实例。
+    @Autowired                                                           //自动注入 DishRepository、CanteenRepository 和数据路由组件。
     private DishRepository dishRepository;
 
     @Autowired
     private CanteenRepository canteenRepository;
 
     @Autowired
-    private MongoTemplate mongoTemplate;
+    private MongoRouter mongoRouter;
+
+    @Autowired
+    private ReferenceResolver referenceResolver;
+
+    @Autowired
+    private CatalogSearchIndex catalogSearchIndex;
+
+    @Autowired
+    private DishFacetIndex dishFacetIndex;
+
+    @Autowired
+    private DishRecommender dishRecommender;
+
+    @Autowired
+    private MenuCompiler menuCompiler;
+
+    @Autowired
+    private CatalogCaches catalogCaches;
 
     @Override
-    public List<Dish> getAllDishes() {
+    public List<Dish> getAllDishes() {                                    //getAllDishes 方法: 响应带有目录缓存的版本号（ETag），必须读主节点，否则新版本号会配上从节点上的旧列表。
         return dishRepository.findAll();
     }
 
     @Override
     public Dish getDishById(String id) {
-        return dishRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Dish not found with id: " + id));
+        return catalogCaches.dishes().get(id, () -> dishRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Dish not found with id: " + id)));
     }
 
     @Override
-    public List<Dish> getDishesByCanteenId(String canteenId) {
-        Canteen canteen = canteenRepository.findById(canteenId)
-                .orElseThrow(() -> new ResourceNotFoundException("Canteen not found with id: " + canteenId));
-        return dishRepository.findByCanteen(canteen);
+    public List<Dish> getDishesByCanteenId(String canteenId) {              //getDishesByCanteenId 方法: 经目录缓存读穿透，未命中时校验食堂存在并查询菜品。
+        return catalogCaches.dishesByCanteen().get(canteenId, () -> {
+            if (!canteenRepository.existsById(canteenId)) {
+                throw new ResourceNotFoundException("Canteen not found with id: " + canteenId);
+            }
+            List<Dish> dishes = dishRepository.findByCanteenId(canteenId);
+            referenceResolver.fillDishes(dishes);
+            return dishes;
+        });
     }
 
     @Override
-    public List<Dish> searchDishes(String keyword) {
-        Query query = new Query();
-        query.addCriteria(Criteria.where("name").regex(keyword, "i"));
-        return mongoTemplate.find(query, Dish.class);
+    public List<Dish> searchDishes(String keyword, Integer limit) {      //searchDishes 方法: 在内存倒排索引中按名称、标签和所属食堂检索并排序，再按 ID 一次取回菜品。
+        List<String> ids = catalogSearchIndex.searchDishes(keyword, Cursors.clampLimit(limit));
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Dish> dishes = catalog().find(Query.query(Criteria.where("id").in(ids)), Dish.class);
+        dishes.sort(Comparator.comparingInt(dish -> ids.indexOf(dish.getId())));
+        return dishes;
+    }
+
+    @Override
+    public FacetResult filterDishes(DishFilter filter) {                //filterDishes 方法: 在内存分面索引中按价格、标签、食堂和评分筛选，返回当前页和各筛选项的计数，不访问数据库。
+        if (filter.getMinPrice() != null && filter.getMaxPrice() != null && filter.getMinPrice().compareTo(filter.getMaxPrice()) > 0) {
+            throw new BadRequestException("minPrice must not be greater than maxPrice");
+        }
+        return dishFacetIndex.filter(filter);
+    }
+
+    @Override
+    public List<Dish> getRecommendedDishes(String userId, Integer limit) {   //getRecommendedDishes 方法: 从内存中取出离线计算好的推荐菜品 ID，再按 ID 一次取回，已删除的菜品自然被跳过。
+        List<String> ids = dishRecommender.recommend(userId, limit == null ? 10 : Math.min(limit, dishRecommender.getTopN()));
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Dish> dishes = catalog().find(Query.query(Criteria.where("id").in(ids)), Dish.class);
+        dishes.sort(Comparator.comparingInt(dish -> ids.indexOf(dish.getId())));
+        return dishes;
     }
 
     @Override
     public Dish createDish(Dish dish) {
-        return dishRepository.save(dish);
+        dish.setCanteen(null);                                               //食堂快照以数据库为准，忽略客户端传入的内容。
+        referenceResolver.fillDishes(Collections.singletonList(dish));
+        Dish saved = dishRepository.save(dish);
+        catalogSearchIndex.indexDish(saved);
+        dishFacetIndex.indexDish(saved);
+        catalogCaches.dishes().invalidate(saved.getId());
+        catalogCaches.dishes().invalidate(CatalogCaches.ALL);               //全部菜品列表没有缓存，失效只用于更新它的版本号。
+        if (saved.getCanteenId() != null) {
+            catalogCaches.dishesByCanteen().invalidate(saved.getCanteenId());   //新增菜品后让所属食堂的菜品列表缓存失效。
+        }
+        menuCompiler.markDirty(saved.getCanteenId());
+        return saved;
+    }
+
+    @Override
+    public CursorPage<Dish> getDishesPage(String after, Integer limit) {   //getDishesPage 方法: 按 _id 升序的游标分页，after 为上一页最后一道菜品的 ID。
+        int pageSize = Cursors.clampLimit(limit);
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "id")).limit(pageSize + 1);
+        if (after != null && !after.isEmpty()) {
+            query.addCriteria(Criteria.where("id").gt(after));
+        }
+        return Cursors.page(catalog().find(query, Dish.class), pageSize, Dish::getId);
+    }
+
+    @Override
+    public Stream<Dish> streamAllDishes() {                                 //streamAllDishes 方法: 返回基于数据库游标的流，调用方用完后必须关闭。
+        return catalog().stream(new Query().with(Sort.by(Sort.Direction.ASC, "id")), Dish.class);
+    }
+
+    private MongoTemplate catalog() {                                       //与 CanteenServiceImpl 相同，只有不经过缓存、也不带版本号的读取走目录层。
+        return mongoRouter.forTier(DataTier.CATALOG);
     }
 }
 
 
 package com.example.canteenapp.controller;//菜品控制器:各方法实现对应接口定义的功能，例如获取所有菜品、根据食堂 ID 获取菜品、模糊搜索菜品等。
 
+import com.example.canteenapp.cache.CatalogCaches;
+import com.example.canteenapp.config.HttpCachePolicies;
+import com.example.canteenapp.model.CursorPage;
 import com.example.canteenapp.model.Dish;
+import com.example.canteenapp.model.DishFilter;
+import com.example.canteenapp.model.DishWithRating;
+import com.example.canteenapp.model.FacetResult;
+import com.example.canteenapp.model.RankedDish;
+import com.example.canteenapp.model.Role;
+import com.example.canteenapp.ranking.DishRankingEngine;
+import com.example.canteenapp.ranking.RankingWindow;
+import com.example.canteenapp.security.Authenticated;
+import com.example.canteenapp.security.CanteenAccessPolicy;
+import com.example.canteenapp.security.TokenAuthInterceptor;
 import com.example.canteenapp.service.DishService;
+import com.example.canteenapp.service.RatingSummaryService;
+import com.example.canteenapp.util.ConditionalResponses;
+import com.example.canteenapp.util.Ndjson;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -122,32 +253,109 @@ public class DishController {
     @Autowired
     private DishService dishService;
 
-    @GetMapping("")
-    public ResponseEntity<List<Dish>> getAllDishes() {
+    @Autowired
+    private RatingSummaryService ratingSummaryService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DishRankingEngine dishRankingEngine;
+
+    @Autowired
+    private CatalogCaches catalogCaches;
+
+    @Autowired
+    private HttpCachePolicies httpCachePolicies;
+
+    @Autowired
+    private CanteenAccessPolicy canteenAccessPolicy;
+
+    @GetMapping("")                                                 //获取所有菜品，支持条件请求，未修改时返回 304。
+    public ResponseEntity<List<Dish>> getAllDishes(WebRequest request) {
+        long version = catalogCaches.dishes().version(CatalogCaches.ALL);
+        return ConditionalResponses.ofVersion(request, version, httpCachePolicies.revalidate(), dishService::getAllDishes);
+    }
+
+    @GetMapping("/page")                                            //游标分页获取菜品，请求路径为 /api/dishes/page?limit={limit}&after={cursor}。
+    public ResponseEntity<CursorPage<Dish>> getDishesPage(@RequestParam(required = false) String after,
+                                                          @RequestParam(required = false) Integer limit) {
+        CursorPage<Dish> page = dishService.getDishesPage(after, limit);
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/stream", produces = Ndjson.MEDIA_TYPE)    //以 NDJSON 流式输出所有菜品，请求路径为 /api/dishes/stream。
+    public ResponseEntity<StreamingResponseBody> streamAllDishes() {
+        return new ResponseEntity<>(Ndjson.body(objectMapper, dishService.streamAllDishes()), HttpStatus.OK);
+    }
+
+    @GetMapping("/with-rating")                                     //获取所有菜品及其评分汇总，请求路径为 /api/dishes/with-rating。
+    public ResponseEntity<List<DishWithRating>> getAllDishesWithRating() {
         List<Dish> dishes = dishService.getAllDishes();
-        return new ResponseEntity<>(dishes, HttpStatus.OK);
+        return new ResponseEntity<>(ratingSummaryService.attachToDishes(dishes), HttpStatus.OK);
+    }
+
+    @GetMapping("/{id}")                                            //获取菜品详情，支持条件请求。
+    public ResponseEntity<Dish> getDishById(@PathVariable String id, WebRequest request) {
+        long version = catalogCaches.dishes().version(id);
+        return ConditionalResponses.ofVersion(request, version, httpCachePolicies.catalog(), () -> dishService.getDishById(id));
     }
 
-    @GetMapping("/{id}")
-    public ResponseEntity<Dish> getDishById(@PathVariable String id) {
-        Dish dish = dishService.getDishById(id);
-        return new ResponseEntity<>(dish, HttpStatus.OK);
+    @GetMapping("/canteen/{canteenId}")                             //获取食堂菜单，支持条件请求。
+    public ResponseEntity<List<Dish>> getDishesByCanteenId(@PathVariable String canteenId, WebRequest request) {
+        long version = catalogCaches.dishesByCanteen().version(canteenId);
+        return ConditionalResponses.ofVersion(request, version, httpCachePolicies.menu(), () -> dishService.getDishesByCanteenId(canteenId));
     }
 
-    @GetMapping("/canteen/{canteenId}")
-    public ResponseEntity<List<Dish>> getDishesByCanteenId(@PathVariable String canteenId) {
+    @GetMapping("/canteen/{canteenId}/with-rating")                 //获取指定食堂的菜品及其评分汇总，请求路径为 /api/dishes/canteen/{canteenId}/with-rating。
+    public ResponseEntity<List<DishWithRating>> getDishesByCanteenIdWithRating(@PathVariable String canteenId) {
         List<Dish> dishes = dishService.getDishesByCanteenId(canteenId);
+        return new ResponseEntity<>(ratingSummaryService.attachToDishes(dishes), HttpStatus.OK);
+    }
+
+    @GetMapping("/top-rated")                                       //好评榜，请求路径为 /api/dishes/top-rated?canteenId={canteenId}&window={hour|day|week}&limit={limit}，不传 canteenId 时为全校榜单。
+    public ResponseEntity<List<RankedDish>> getTopRatedDishes(@RequestParam(required = false) String canteenId,
+                                                              @RequestParam(defaultValue = "week") String window,
+                                                              @RequestParam(defaultValue = "10") int limit) {
+        List<RankedDish> dishes = dishRankingEngine.topRated(canteenId, RankingWindow.parse(window), limit);
+        return new ResponseEntity<>(dishes, HttpStatus.OK);
+    }
+
+    @GetMapping("/trending")                                        //流行榜，请求路径为 /api/dishes/trending?canteenId={canteenId}&window={hour|day|week}&limit={limit}。
+    public ResponseEntity<List<RankedDish>> getTrendingDishes(@RequestParam(required = false) String canteenId,
+                                                              @RequestParam(defaultValue = "hour") String window,
+                                                              @RequestParam(defaultValue = "10") int limit) {
+        List<RankedDish> dishes = dishRankingEngine.trending(canteenId, RankingWindow.parse(window), limit);
+        return new ResponseEntity<>(dishes, HttpStatus.OK);
+    }
+
+    @GetMapping("/filter")                                          //筛选菜品，请求路径为 /api/dishes/filter?minPrice=&maxPrice=&tags=辣,素食&excludeTags=&canteenIds=&minRating=&sort=&offset=&limit=。
+    public ResponseEntity<FacetResult> filterDishes(@ModelAttribute DishFilter filter) {
+        FacetResult result = dishService.filterDishes(filter);
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    @Authenticated
+    @GetMapping("/recommended")                                     //当前用户的推荐菜品，请求路径为 /api/dishes/recommended?limit={limit}，需要登录令牌。
+    public ResponseEntity<List<Dish>> getRecommendedDishes(@RequestAttribute(TokenAuthInterceptor.USER_ID) String userId,
+                                                           @RequestParam(required = false) Integer limit) {
+        List<Dish> dishes = dishService.getRecommendedDishes(userId, limit);
         return new ResponseEntity<>(dishes, HttpStatus.OK);
     }
 
     @GetMapping("/search")
-    public ResponseEntity<List<Dish>> searchDishes(@RequestParam String keyword) {
-        List<Dish> dishes = dishService.searchDishes(keyword);
+    public ResponseEntity<List<Dish>> searchDishes(@RequestParam String keyword,
+                                                   @RequestParam(required = false) Integer limit) {
+        List<Dish> dishes = dishService.searchDishes(keyword, limit);
         return new ResponseEntity<>(dishes, HttpStatus.OK);
     }
 
-    @PostMapping("")
-    public ResponseEntity<Dish> createDish(@RequestBody Dish dish) {
+    @Authenticated(Role.CANTEEN_MANAGER)
+    @PostMapping("")                                                //新增菜品，需要管理员或 dish.canteenId 所属食堂的管理员。
+    public ResponseEntity<Dish> createDish(@RequestBody Dish dish,
+                                           @RequestAttribute(TokenAuthInterceptor.USER_ID) String userId,
+                                           @RequestAttribute(TokenAuthInterceptor.USER_ROLE) Role role) {
+        canteenAccessPolicy.checkCanteen(userId, role, dish.getCanteenId());
         Dish createdDish = dishService.createDish(dish);
         return new ResponseEntity<>(createdDish, HttpStatus.CREATED);
     }